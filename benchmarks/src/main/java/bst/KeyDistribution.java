@@ -0,0 +1,102 @@
+package bst;
+
+/**
+ * The orders in which the benchmarks insert and look up keys. The trees always
+ * hold the keys 0 to n-1.
+ *
+ * - RANDOM: inserted in a random order, looked up uniformly at random
+ * - SORTED: inserted and looked up in increasing order
+ * - REVERSE: inserted and looked up in decreasing order
+ * - ZIPFIAN: inserted in a random order, looked up with a Zipfian skew (theta
+ * 0.99, as in YCSB), so a few hot keys take most of the lookups; which keys are
+ * hot is random, so they are spread all over the tree
+ *
+ * Everything is drawn from a fixed seed, so every run sees the same keys.
+ */
+public enum KeyDistribution {
+    RANDOM, SORTED, REVERSE, ZIPFIAN;
+
+    private static final long SEED = 0x5EEDL;
+    private static final double THETA = 0.99;
+
+    /**
+     * Returns the keys 0 to n-1 in the order they are inserted.
+     *
+     * @param int n - the number of keys.
+     *
+     * @return the keys in insertion order
+     */
+    public int[] insertOrder(int n) {
+        int[] keys = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = (this == REVERSE) ? n - 1 - i : i;
+        }
+        if (this == RANDOM || this == ZIPFIAN) {
+            java.util.Random random = new java.util.Random(SEED);
+            for (int i = n - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int k = keys[i];
+                keys[i] = keys[j];
+                keys[j] = k;
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Returns a run of keys to look up, all of them in the tree.
+     *
+     * @param int   n - the number of keys in the tree.
+     * @param int   count - how many lookups to return.
+     * @param int[] insertOrder - the keys as returned by insertOrder(n), which
+     *              rank the keys from hottest to coldest for ZIPFIAN.
+     *
+     * @return the keys in lookup order
+     */
+    public int[] lookups(int n, int count, int[] insertOrder) {
+        int[] keys = new int[count];
+        java.util.Random random = new java.util.Random(SEED + 1);
+        if (this == ZIPFIAN) {
+            // Gray et al., "Quickly generating billion-record synthetic databases"
+            double zetaN = zeta(n);
+            double alpha = 1.0 / (1.0 - THETA);
+            double eta = (1.0 - Math.pow(2.0 / n, 1.0 - THETA)) / (1.0 - zeta(2) / zetaN);
+            for (int i = 0; i < count; i++) {
+                double u = random.nextDouble();
+                double uz = u * zetaN;
+                int rank;
+                if (uz < 1.0) {
+                    rank = 0;
+                }
+                else if (uz < 1.0 + Math.pow(0.5, THETA)) {
+                    rank = 1;
+                }
+                else {
+                    rank = (int) (n * Math.pow(eta * u - eta + 1.0, alpha));
+                }
+                keys[i] = insertOrder[Math.min(rank, n - 1)];
+            }
+            return keys;
+        }
+        for (int i = 0; i < count; i++) {
+            if (this == RANDOM) {
+                keys[i] = random.nextInt(n);
+            }
+            else if (this == SORTED) {
+                keys[i] = i % n;
+            }
+            else {
+                keys[i] = n - 1 - i % n;
+            }
+        }
+        return keys;
+    }
+
+    private static double zeta(int n) {
+        double sum = 0;
+        for (int i = 1; i <= n; i++) {
+            sum += 1.0 / Math.pow(i, THETA);
+        }
+        return sum;
+    }
+}
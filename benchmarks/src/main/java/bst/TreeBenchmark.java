@@ -0,0 +1,185 @@
+package bst;
+
+/**
+ * Times the operations of vural_BinarySearchTree and of its red-black and AVL
+ * variants, for trees of 10^3 to 10^7 keys inserted and looked up in each
+ * KeyDistribution. TreeMapBenchmark times the same operations on
+ * java.util.TreeMap.
+ *
+ * Lookups, successor / predecessor, getHeight and the walks are timed one call
+ * per operation on a tree built once per trial. insertNode and deleteNode are
+ * timed a whole tree at a time, building it from empty or emptying it, and
+ * report their rate per key as the "inserts" and "deletes" counters.
+ *
+ * A plain BST of sorted keys is a list, so building it is quadratic and its
+ * recursive getHeight needs a stack as deep as the tree; those runs are refused
+ * above DEGENERATE_LIMIT keys.
+ */
+@org.openjdk.jmh.annotations.BenchmarkMode(org.openjdk.jmh.annotations.Mode.Throughput)
+@org.openjdk.jmh.annotations.OutputTimeUnit(java.util.concurrent.TimeUnit.SECONDS)
+@org.openjdk.jmh.annotations.Warmup(iterations = 3, time = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5, time = 1)
+@org.openjdk.jmh.annotations.Fork(value = 1, jvmArgsAppend = { "-Xmx8g", "-Xss64m" })
+@org.openjdk.jmh.annotations.State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class TreeBenchmark {
+    static final int DEGENERATE_LIMIT = 10000;
+    static final int LOOKUPS = 1 << 20; // a power of two, cycled through with a mask
+
+    @org.openjdk.jmh.annotations.Param({ "1000", "10000", "100000", "1000000", "10000000" })
+    public int size;
+
+    @org.openjdk.jmh.annotations.Param({ "RANDOM", "SORTED", "REVERSE", "ZIPFIAN" })
+    public KeyDistribution keys;
+
+    @org.openjdk.jmh.annotations.Param({ "bst", "rb", "avl" })
+    public String tree;
+
+    int[] insertOrder;
+    int[] lookups;
+    private int next;
+
+    @org.openjdk.jmh.annotations.Setup(org.openjdk.jmh.annotations.Level.Trial)
+    public void setUp() {
+        if (tree.equals("bst") && keys != KeyDistribution.RANDOM && keys != KeyDistribution.ZIPFIAN
+                && size > DEGENERATE_LIMIT) {
+            throw new IllegalStateException("a plain BST of " + size + " " + keys
+                    + " keys is a list, only timed up to " + DEGENERATE_LIMIT + " keys");
+        }
+        insertOrder = keys.insertOrder(size);
+        lookups = keys.lookups(size, LOOKUPS, insertOrder);
+    }
+
+    /**
+     * Builds a new tree of the kind benchmarked, inserting the keys in order.
+     *
+     * @return the tree
+     */
+    vural_BinarySearchTree build() {
+        vural_BinarySearchTree t = newTree();
+        for (int key : insertOrder) {
+            t.insertNode(new Node(key));
+        }
+        return t;
+    }
+
+    vural_BinarySearchTree newTree() {
+        if (tree.equals("rb")) {
+            return new RedBlackBinarySearchTree();
+        }
+        if (tree.equals("avl")) {
+            return new AVLBinarySearchTree();
+        }
+        return new vural_BinarySearchTree();
+    }
+
+    /**
+     * A tree built once per trial, and the Nodes of the keys to look up.
+     */
+    @org.openjdk.jmh.annotations.State(org.openjdk.jmh.annotations.Scope.Benchmark)
+    public static class Built {
+        vural_BinarySearchTree t;
+        Node[] nodes;
+
+        @org.openjdk.jmh.annotations.Setup(org.openjdk.jmh.annotations.Level.Trial)
+        public void setUp(TreeBenchmark b) {
+            t = b.build();
+            nodes = new Node[LOOKUPS];
+            for (int i = 0; i < LOOKUPS; i++) {
+                nodes[i] = t.getNode(t.getRoot(), b.lookups[i]);
+            }
+        }
+    }
+
+    /**
+     * A tree built again before every call, for deleteNode.
+     */
+    @org.openjdk.jmh.annotations.State(org.openjdk.jmh.annotations.Scope.Thread)
+    public static class Fresh {
+        vural_BinarySearchTree t;
+
+        @org.openjdk.jmh.annotations.Setup(org.openjdk.jmh.annotations.Level.Invocation)
+        public void setUp(TreeBenchmark b) {
+            t = b.build();
+        }
+    }
+
+    /**
+     * Keys inserted, reported by JMH as a rate next to the calls.
+     */
+    @org.openjdk.jmh.annotations.AuxCounters(org.openjdk.jmh.annotations.AuxCounters.Type.OPERATIONS)
+    @org.openjdk.jmh.annotations.State(org.openjdk.jmh.annotations.Scope.Thread)
+    public static class Inserted {
+        public long inserts;
+
+        @org.openjdk.jmh.annotations.Setup(org.openjdk.jmh.annotations.Level.Iteration)
+        public void reset() {
+            inserts = 0;
+        }
+    }
+
+    /**
+     * Keys deleted, reported by JMH as a rate next to the calls.
+     */
+    @org.openjdk.jmh.annotations.AuxCounters(org.openjdk.jmh.annotations.AuxCounters.Type.OPERATIONS)
+    @org.openjdk.jmh.annotations.State(org.openjdk.jmh.annotations.Scope.Thread)
+    public static class Deleted {
+        public long deletes;
+
+        @org.openjdk.jmh.annotations.Setup(org.openjdk.jmh.annotations.Level.Iteration)
+        public void reset() {
+            deletes = 0;
+        }
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public vural_BinarySearchTree insertNode(Inserted counters) {
+        vural_BinarySearchTree t = build();
+        counters.inserts += size;
+        return t;
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public vural_BinarySearchTree deleteNode(Fresh fresh, Deleted counters) {
+        vural_BinarySearchTree t = fresh.t;
+        for (int key : insertOrder) {
+            t.deleteNode(t.getNode(t.getRoot(), key)); // as a caller has to, deleteNode takes the Node
+        }
+        counters.deletes += size;
+        return t;
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public Node getNode(Built built) {
+        return built.t.getNode(built.t.getRoot(), lookups[next++ & (LOOKUPS - 1)]);
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public Node getSuccessor(Built built) {
+        return built.t.getSuccessor(built.nodes[next++ & (LOOKUPS - 1)]);
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public Node getPredecessor(Built built) {
+        return built.t.getPredecessor(built.nodes[next++ & (LOOKUPS - 1)]);
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public int getHeight(Built built) {
+        return built.t.getHeight(built.t.getRoot());
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public void preOrderWalk(Built built, org.openjdk.jmh.infra.Blackhole blackhole) {
+        built.t.preOrderWalk(built.t.getRoot(), (key, x, depth) -> blackhole.consume(key));
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public void inOrderWalk(Built built, org.openjdk.jmh.infra.Blackhole blackhole) {
+        built.t.inOrderWalk(built.t.getRoot(), (key, x, depth) -> blackhole.consume(key));
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public void postOrderWalk(Built built, org.openjdk.jmh.infra.Blackhole blackhole) {
+        built.t.postOrderWalk(built.t.getRoot(), (key, x, depth) -> blackhole.consume(key));
+    }
+}
@@ -0,0 +1,122 @@
+package bst;
+
+/**
+ * Times java.util.TreeMap (a red-black tree) on the same operations, sizes and
+ * KeyDistributions as TreeBenchmark, as a baseline:
+ * put / remove for insertNode / deleteNode, get for getNode, higherKey /
+ * lowerKey for getSuccessor / getPredecessor (which search from the root, as
+ * TreeMap has no way to start from an entry) and iterating the keys for the
+ * in-order walk. TreeMap has nothing like getHeight, nor pre- or post-order
+ * walks.
+ *
+ * Keys are boxed up front, so that boxing is not timed.
+ */
+@org.openjdk.jmh.annotations.BenchmarkMode(org.openjdk.jmh.annotations.Mode.Throughput)
+@org.openjdk.jmh.annotations.OutputTimeUnit(java.util.concurrent.TimeUnit.SECONDS)
+@org.openjdk.jmh.annotations.Warmup(iterations = 3, time = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5, time = 1)
+@org.openjdk.jmh.annotations.Fork(value = 1, jvmArgsAppend = { "-Xmx8g" })
+@org.openjdk.jmh.annotations.State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class TreeMapBenchmark {
+    @org.openjdk.jmh.annotations.Param({ "1000", "10000", "100000", "1000000", "10000000" })
+    public int size;
+
+    @org.openjdk.jmh.annotations.Param({ "RANDOM", "SORTED", "REVERSE", "ZIPFIAN" })
+    public KeyDistribution keys;
+
+    Integer[] insertOrder;
+    Integer[] lookups;
+    private int next;
+
+    @org.openjdk.jmh.annotations.Setup(org.openjdk.jmh.annotations.Level.Trial)
+    public void setUp() {
+        int[] order = keys.insertOrder(size);
+        int[] probes = keys.lookups(size, TreeBenchmark.LOOKUPS, order);
+        // boxed once per key, so that lookups hit the same Integers the map holds
+        Integer[] boxed = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            boxed[i] = i;
+        }
+        insertOrder = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            insertOrder[i] = boxed[order[i]];
+        }
+        lookups = new Integer[probes.length];
+        for (int i = 0; i < probes.length; i++) {
+            lookups[i] = boxed[probes[i]];
+        }
+    }
+
+    java.util.TreeMap<Integer, Integer> build() {
+        java.util.TreeMap<Integer, Integer> map = new java.util.TreeMap<>();
+        for (Integer key : insertOrder) {
+            map.put(key, key);
+        }
+        return map;
+    }
+
+    /**
+     * A map built once per trial.
+     */
+    @org.openjdk.jmh.annotations.State(org.openjdk.jmh.annotations.Scope.Benchmark)
+    public static class Built {
+        java.util.TreeMap<Integer, Integer> map;
+
+        @org.openjdk.jmh.annotations.Setup(org.openjdk.jmh.annotations.Level.Trial)
+        public void setUp(TreeMapBenchmark b) {
+            map = b.build();
+        }
+    }
+
+    /**
+     * A map built again before every call, for remove.
+     */
+    @org.openjdk.jmh.annotations.State(org.openjdk.jmh.annotations.Scope.Thread)
+    public static class Fresh {
+        java.util.TreeMap<Integer, Integer> map;
+
+        @org.openjdk.jmh.annotations.Setup(org.openjdk.jmh.annotations.Level.Invocation)
+        public void setUp(TreeMapBenchmark b) {
+            map = b.build();
+        }
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public java.util.TreeMap<Integer, Integer> put(TreeBenchmark.Inserted counters) {
+        java.util.TreeMap<Integer, Integer> map = build();
+        counters.inserts += size;
+        return map;
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public java.util.TreeMap<Integer, Integer> remove(Fresh fresh, TreeBenchmark.Deleted counters) {
+        java.util.TreeMap<Integer, Integer> map = fresh.map;
+        for (Integer key : insertOrder) {
+            map.remove(key);
+        }
+        counters.deletes += size;
+        return map;
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public Integer get(Built built) {
+        return built.map.get(lookups[next++ & (TreeBenchmark.LOOKUPS - 1)]);
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public Integer higherKey(Built built) {
+        return built.map.higherKey(lookups[next++ & (TreeBenchmark.LOOKUPS - 1)]);
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public Integer lowerKey(Built built) {
+        return built.map.lowerKey(lookups[next++ & (TreeBenchmark.LOOKUPS - 1)]);
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public void iterate(Built built, org.openjdk.jmh.infra.Blackhole blackhole) {
+        for (Integer key : built.map.keySet()) {
+            blackhole.consume(key);
+        }
+    }
+}
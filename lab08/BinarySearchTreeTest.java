@@ -406,6 +406,24 @@ class BinarySearchTreeTest
 		assertArrayEquals(checkInOrderWalkInsertSevenNodesArray, inOrderWalkArray);
 	}
 	
+	@Test
+	void testBulkLoadSevenNodes() 
+	{
+		// load the seven keys in one go, out of order and with a repeat, the result 
+		// should be the same balanced tree as inserting 20, 10, 30, 5, 15, 25, 35
+		int[] keys = new int[] {35, 5, 25, 15, 20, 10, 30, 20};
+		tree.bulkLoadUnsorted(keys, null);
+		
+		// get an in order walk to verify the nodes are in the proper locations
+		java.util.ArrayList<String> inOrderWalk = new java.util.ArrayList<>();
+		tree.inOrderWalk(tree.getRoot(), inOrderWalk);
+		
+		// get an array of the in order walk to compare with the expected result
+		String[] inOrderWalkArray = inOrderWalk.toArray(new String[0]);
+				
+		assertArrayEquals(checkInOrderWalkInsertSevenNodesArray, inOrderWalkArray);
+	}
+	
 	@Test
 	void testGetHeightForSevenNodesTree() 
 	{
@@ -522,6 +540,262 @@ class BinarySearchTreeTest
 		assertNull(t.getNode(t.getRoot(), 99));
 	}
 	
+	@Test
+	void testRankAndSelect() 
+	{
+		// the 31 key tree has 16 keys smaller than 50, so 50 is at rank 16
+		assertEquals(31, t.size());
+		assertEquals(16, t.rank(50));
+		assertEquals("(50,,25,75)", t.select(16).toString());
+		
+		// 25, 27, 28, 29, 30, 40, 45, 50, 53, 54, 55, 56, 57, 58, 60
+		assertEquals(15, t.countRange(25, 60));
+		assertNull(t.select(31));
+	}
+	
+	@Test
+	void testRangeWalk() 
+	{
+		// collect the keys of the 31 key tree within [25, 45], in both directions
+		java.util.ArrayList<Integer> ascending = new java.util.ArrayList<>();
+		t.rangeWalk(25, 45, n -> ascending.add(n.getKey()));
+		assertEquals(java.util.Arrays.asList(25, 27, 28, 29, 30, 40, 45), ascending);
+		
+		// same range, but leaving out both ends
+		java.util.ArrayList<Integer> descending = new java.util.ArrayList<>();
+		t.descendingRangeWalk(25, false, 45, false, n -> descending.add(n.getKey()));
+		assertEquals(java.util.Arrays.asList(40, 30, 29, 28, 27), descending);
+	}
+
+	@Test
+	void testSplitAndJoin()
+	{
+		// split the 31 key tree at 50, there are 16 keys below it
+		vural_BinarySearchTree[] parts = t.split(50);
+		assertNull(t.getRoot());
+		assertEquals(16, parts[0].size());
+		assertEquals(15, parts[1].size());
+		assertEquals(45, parts[0].getMax(parts[0].getRoot()).getKey());
+		assertEquals("(50,,,75)", parts[1].getMin(parts[1].getRoot()).toString());
+
+		// joining them back gives all 31 keys in order again
+		vural_BinarySearchTree joined = vural_BinarySearchTree.join(parts[0], parts[1]);
+		assertEquals(31, joined.size());
+		assertEquals(16, joined.rank(50));
+		assertNull(parts[1].getRoot());
+	}
+
+	@Test
+	void testSnapshotRoundTrip() throws Exception
+	{
+		// save the 31 key tree in the compact format and load it into a new tree
+		java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+		BinarySearchTreeSnapshot.write(t, out, false);
+		vural_BinarySearchTree loaded = new vural_BinarySearchTree();
+		BinarySearchTreeSnapshot.read(new java.io.ByteArrayInputStream(out.toByteArray()), loaded);
+		
+		// the loaded tree should have exactly the same shape
+		java.util.ArrayList<String> inOrderWalk = new java.util.ArrayList<>();
+		loaded.inOrderWalk(loaded.getRoot(), inOrderWalk);
+		assertArrayEquals(checkInOrderWalkInsertThirtyOneNodesArray, inOrderWalk.toArray(new String[0]));
+		assertEquals(16, loaded.rank(50));
+	}
+
+	@Test
+	void testSnapshotData() throws Exception
+	{
+		// every data type written comes back as it was
+		tree.insertNode(new Node(20, "twenty"));
+		tree.insertNode(new Node(10, 10));
+		tree.insertNode(new Node(30, 30L));
+		tree.insertNode(new Node(5, 0.5));
+		tree.insertNode(new Node(15, true));
+		tree.insertNode(new Node(25, new byte[] {2, 5}));
+		tree.insertNode(new Node(35));
+		java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+		BinarySearchTreeSnapshot.write(tree, out, true);
+		vural_BinarySearchTree loaded = new vural_BinarySearchTree();
+		BinarySearchTreeSnapshot.read(new java.io.ByteArrayInputStream(out.toByteArray()), loaded);
+
+		assertEquals("twenty", loaded.getNode(loaded.getRoot(), 20).getData());
+		assertEquals(10, loaded.getNode(loaded.getRoot(), 10).getData());
+		assertEquals(30L, loaded.getNode(loaded.getRoot(), 30).getData());
+		assertEquals(0.5, loaded.getNode(loaded.getRoot(), 5).getData());
+		assertEquals(true, loaded.getNode(loaded.getRoot(), 15).getData());
+		assertArrayEquals(new byte[] {2, 5}, (byte[]) loaded.getNode(loaded.getRoot(), 25).getData());
+		assertNull(loaded.getNode(loaded.getRoot(), 35).getData());
+
+		// other objects are not written with Java serialization
+		tree.updateNode(new Node(35, new java.util.ArrayList<String>()));
+		assertThrows(IllegalArgumentException.class, () -> BinarySearchTreeSnapshot.write(tree, new java.io.ByteArrayOutputStream(), true));
+	}
+
+	@Test
+	void testSnapshotRefusesBadTrees() throws Exception
+	{
+		// 30 as the left child of 20 is out of search tree order
+		Node root = new Node(20);
+		Node left = new Node(30);
+		root.setLeft(left);
+		left.setParent(root);
+		root.setSize(2);
+		tree.setRoot(root);
+		java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+		BinarySearchTreeSnapshot.write(tree, out, false);
+		assertThrows(java.io.IOException.class, () -> BinarySearchTreeSnapshot.read(new java.io.ByteArrayInputStream(out.toByteArray()), new vural_BinarySearchTree()));
+
+		// a stale subtree size is refused when writing
+		root.setSize(1);
+		assertThrows(java.io.IOException.class, () -> BinarySearchTreeSnapshot.write(tree, new java.io.ByteArrayOutputStream(), false));
+	}
+
+	@Test
+	void testWriteTreeInfo() throws Exception
+	{
+		// the streamed lines should match the ones collected by the String walk
+		java.util.ArrayList<String> treeInfo = new java.util.ArrayList<>();
+		t.preOrderWalk(t.getRoot(), "", treeInfo);
+		StringBuilder expected = new StringBuilder();
+		for( String line : treeInfo )
+		{
+			expected.append(line).append(System.lineSeparator());
+		}
+
+		java.io.StringWriter out = new java.io.StringWriter();
+		t.writeTreeInfo(t.getRoot(), out);
+		assertEquals(expected.toString(), out.toString());
+	}
+
+	@Test
+	void testTreeListener()
+	{
+		// only changes which really happen are reported, in order
+		java.util.ArrayList<String> events = new java.util.ArrayList<>();
+		TreeListener listener = new TreeListener()
+		{
+			public void nodeInserted(int key)
+			{
+				events.add("+" + key);
+			}
+
+			public void nodeDeleted(int key)
+			{
+				events.add("-" + key);
+			}
+		};
+		t.addTreeListener(listener);
+		t.insertNode(new Node(46));
+		t.insertNode(new Node(45));
+		t.deleteNode(t.getNode(t.getRoot(), 60));
+		t.deleteNode(t.getNode(t.getRoot(), 61));
+		t.removeTreeListener(listener);
+		t.insertNode(new Node(47));
+
+		assertEquals(java.util.Arrays.asList("+46", "-60"), events);
+	}
+
+	@Test
+	void testInstrumentedTree()
+	{
+		InstrumentedBinarySearchTree instrumented = new InstrumentedBinarySearchTree(t);
+		assertEquals(31, instrumented.getSize());
+		assertTrue(instrumented.snapshot().startsWith("size 31, height not measured yet"));
+		assertEquals(5, instrumented.measureHeight());
+		assertTrue(instrumented.snapshot().startsWith("size 31, height 5 (measured "));
+
+		// 54 is found after 50, 75, 60, 55, 53 and 54, 100 is missed after 50, 75, 90 and 95
+		assertEquals(54, instrumented.getNode(instrumented.getRoot(), 54).getKey());
+		assertNull(instrumented.getNode(instrumented.getRoot(), 100));
+		assertEquals(2, instrumented.getCount("getNode"));
+		assertEquals(5.0, instrumented.getMeanNodesVisited("getNode"));
+		assertTrue(instrumented.getPercentileNanos("getNode", 50) <= instrumented.getMaxNanos("getNode"));
+
+		// nothing is measured while disabled, but the tree still changes
+		instrumented.setEnabled(false);
+		instrumented.insertNode(new Node(100));
+		instrumented.setEnabled(true);
+		instrumented.insertNode(new Node(101));
+		assertEquals(0, instrumented.getCount("getSuccessor"));
+		assertEquals(1, instrumented.getCount("insertNode"));
+		assertEquals(33, instrumented.getSize());
+		assertTrue(instrumented.snapshot().contains("insertNode"));
+
+		instrumented.reset();
+		assertEquals(0, instrumented.getCount("getNode"));
+	}
+
+	@Test
+	void testInstrumentedTreeHeightOverJMX() throws Exception
+	{
+		// a plain tree of sorted keys is a list, far deeper than a recursive walk could
+		// go; it is linked by hand, inserting would take quadratic time
+		int n = 200000;
+		vural_BinarySearchTree list = new vural_BinarySearchTree();
+		Node last = null;
+		for( int i = 0; i < n; i++ )
+		{
+			Node x = new Node(i);
+			x.setSize(n - i);
+			if( last == null )
+			{
+				list.setRoot(x);
+			}
+			else
+			{
+				last.setRight(x);
+				x.setParent(last);
+			}
+			last = x;
+		}
+		InstrumentedBinarySearchTree instrumented = new InstrumentedBinarySearchTree(list);
+
+		// the height is an operation, so consoles do not poll it as an attribute,
+		// and the Snapshot attribute only shows the last one measured
+		javax.management.ObjectName name = instrumented.register("testInstrumentedTreeHeightOverJMX");
+		try
+		{
+			javax.management.MBeanServer server = java.lang.management.ManagementFactory.getPlatformMBeanServer();
+			for( javax.management.MBeanAttributeInfo attribute : server.getMBeanInfo(name).getAttributes() )
+			{
+				assertNotEquals("Height", attribute.getName());
+			}
+			assertEquals(n, server.getAttribute(name, "Size"));
+			assertTrue(((String) server.getAttribute(name, "Snapshot")).contains("height not measured yet"));
+			assertEquals(n - 1, server.invoke(name, "measureHeight", new Object[0], new String[0]));
+			assertTrue(((String) server.getAttribute(name, "Snapshot")).contains("height " + (n - 1) + " "));
+		}
+		finally
+		{
+			instrumented.unregister("testInstrumentedTreeHeightOverJMX");
+		}
+	}
+
+	@Test
+	void testPersistentSnapshot()
+	{
+		int[] keys = new int[] {20, 10, 30, 5, 15, 25, 35};
+		PersistentBinarySearchTree p = new PersistentBinarySearchTree();
+		for( int i = 0; i < keys.length; i++ )
+		{
+			p.insertNode(keys[i], null);
+		}
+
+		// change the tree after taking a snapshot, the snapshot should not see it
+		PersistentBinarySearchTree snapshot = p.snapshot();
+		p.deleteNode(20);
+		p.insertNode(40, null);
+
+		java.util.ArrayList<String> before = new java.util.ArrayList<>();
+		snapshot.inOrderWalk(before);
+		assertArrayEquals(new String[] {"(5,,)", "(10,5,15)", "(15,,)", "(20,10,30)", "(25,,)", "(30,25,35)", "(35,,)"},
+				before.toArray(new String[0]));
+
+		// 20 is gone, so its successor (25) took its place
+		assertEquals("(25,10,35)", p.getRoot().toString());
+		assertEquals("(40,,)", p.getSuccessor(35).toString());
+		assertEquals("(15,,)", p.getPredecessor(20).toString());
+	}
+
 	@Test
 	void testPredecessorWithNoLeftChild() 
 	{	
@@ -653,4 +927,1684 @@ class BinarySearchTreeTest
 				
 		assertArrayEquals(checkInOrderWalkPostDelete45And95And60And50Array, inOrderWalkArray);
 	}
+
+	@Test
+	void testRedBlackWalks()
+	{
+		// the seven keys arrive in an order which needs no rotation, so the red-black
+		// tree has the same shape as the plain one
+		RedBlackBinarySearchTree rb = new RedBlackBinarySearchTree();
+		int[] keys = new int[] {20, 10, 30, 5, 15, 25, 35};
+		for( int i = 0; i < keys.length; i++ )
+		{
+			rb.insertNode(new Node(keys[i]));
+		}
+
+		java.util.ArrayList<String> inOrderWalk = new java.util.ArrayList<>();
+		rb.inOrderWalk(rb.getRoot(), inOrderWalk);
+		assertArrayEquals(checkInOrderWalkInsertSevenNodesArray, inOrderWalk.toArray(new String[0]));
+
+		java.util.ArrayList<String> preOrderWalk = new java.util.ArrayList<>();
+		rb.preOrderWalk(rb.getRoot(), preOrderWalk);
+		assertArrayEquals(new String[] {"(20,,10,30)", "(10,20,5,15)", "(5,10,,)", "(15,10,,)", "(30,20,25,35)", "(25,30,,)", "(35,30,,)"},
+				preOrderWalk.toArray(new String[0]));
+
+		java.util.ArrayList<String> postOrderWalk = new java.util.ArrayList<>();
+		rb.postOrderWalk(rb.getRoot(), postOrderWalk);
+		assertArrayEquals(new String[] {"(5,10,,)", "(15,10,,)", "(10,20,5,15)", "(25,30,,)", "(35,30,,)", "(30,20,25,35)", "(20,,10,30)"},
+				postOrderWalk.toArray(new String[0]));
+		checkRedBlack(rb);
+	}
+
+	@Test
+	void testRedBlackSortedInsertsAndRandomDeletes()
+	{
+		// sorted keys would make the plain tree a list, the red-black rules keep it low
+		RedBlackBinarySearchTree rb = new RedBlackBinarySearchTree();
+		java.util.TreeSet<Integer> expected = new java.util.TreeSet<>();
+		for( int key = 0; key < 2000; key++ )
+		{
+			rb.insertNode(new Node(key));
+			expected.add(key);
+		}
+		checkRedBlack(rb);
+
+		java.util.Random random = new java.util.Random(1);
+		for( int i = 0; i < 1500; i++ )
+		{
+			int key = random.nextInt(2000);
+			rb.deleteNode(rb.getNode(rb.getRoot(), key));
+			expected.remove(key);
+			if( i % 100 == 0 )
+			{
+				checkRedBlack(rb);
+			}
+		}
+		checkRedBlack(rb);
+		assertEquals(new java.util.ArrayList<>(expected), keysOf(rb));
+	}
+
+	@Test
+	void testRedBlackSplitAndJoin()
+	{
+		RedBlackBinarySearchTree rb = new RedBlackBinarySearchTree();
+		for( int key = 0; key < 500; key++ )
+		{
+			rb.insertNode(new Node(key));
+		}
+
+		// both halves are red-black trees again
+		vural_BinarySearchTree[] parts = rb.split(123);
+		assertTrue(parts[0] instanceof RedBlackBinarySearchTree);
+		assertEquals(123, parts[0].size());
+		assertEquals(377, parts[1].size());
+		checkRedBlack(parts[0]);
+		checkRedBlack(parts[1]);
+
+		// a small tree joined to a large one keeps the rules too
+		vural_BinarySearchTree joined = vural_BinarySearchTree.join(parts[0], parts[1]);
+		assertEquals(500, joined.size());
+		checkRedBlack(joined);
+		assertEquals(123, joined.rank(123));
+	}
+
+	@Test
+	void testAVLWalks()
+	{
+		// the seven keys need no rotation, so the AVL tree has the same shape as the plain one
+		AVLBinarySearchTree avl = new AVLBinarySearchTree();
+		int[] keys = new int[] {20, 10, 30, 5, 15, 25, 35};
+		for( int i = 0; i < keys.length; i++ )
+		{
+			avl.insertNode(new Node(keys[i]));
+		}
+
+		java.util.ArrayList<String> inOrderWalk = new java.util.ArrayList<>();
+		avl.inOrderWalk(avl.getRoot(), inOrderWalk);
+		assertArrayEquals(checkInOrderWalkInsertSevenNodesArray, inOrderWalk.toArray(new String[0]));
+
+		java.util.ArrayList<String> preOrderWalk = new java.util.ArrayList<>();
+		avl.preOrderWalk(avl.getRoot(), preOrderWalk);
+		assertArrayEquals(new String[] {"(20,,10,30)", "(10,20,5,15)", "(5,10,,)", "(15,10,,)", "(30,20,25,35)", "(25,30,,)", "(35,30,,)"},
+				preOrderWalk.toArray(new String[0]));
+
+		java.util.ArrayList<String> postOrderWalk = new java.util.ArrayList<>();
+		avl.postOrderWalk(avl.getRoot(), postOrderWalk);
+		assertArrayEquals(new String[] {"(5,10,,)", "(15,10,,)", "(10,20,5,15)", "(25,30,,)", "(35,30,,)", "(30,20,25,35)", "(20,,10,30)"},
+				postOrderWalk.toArray(new String[0]));
+		checkAVL(avl.getRoot());
+	}
+
+	@Test
+	void testAVLSortedInsertsAndRandomDeletes()
+	{
+		AVLBinarySearchTree avl = new AVLBinarySearchTree();
+		java.util.TreeSet<Integer> expected = new java.util.TreeSet<>();
+		for( int key = 0; key < 2000; key++ )
+		{
+			avl.insertNode(new Node(key));
+			expected.add(key);
+		}
+		checkAVL(avl.getRoot());
+
+		java.util.Random random = new java.util.Random(2);
+		for( int i = 0; i < 1500; i++ )
+		{
+			int key = random.nextInt(2000);
+			avl.deleteNode(avl.getNode(avl.getRoot(), key));
+			expected.remove(key);
+			if( i % 100 == 0 )
+			{
+				checkAVL(avl.getRoot());
+			}
+		}
+		checkAVL(avl.getRoot());
+		assertEquals(new java.util.ArrayList<>(expected), keysOf(avl));
+	}
+
+	@Test
+	void testAVLGetHeight()
+	{
+		AVLBinarySearchTree avl = new AVLBinarySearchTree();
+		java.util.Random random = new java.util.Random(3);
+		for( int i = 0; i < 1000; i++ )
+		{
+			avl.insertNode(new Node(random.nextInt(5000)));
+		}
+		assertEquals(recursiveHeight(avl.getRoot()), avl.getHeight(avl.getRoot()));
+		assertEquals(-1, avl.getHeight(null));
+
+		// getHeight only reads the cached height, it does not walk the tree
+		avl.getRoot().setHeight(99);
+		assertEquals(99, avl.getHeight(avl.getRoot()));
+	}
+
+	@Test
+	void testAVLJoinVeryDifferentHeights()
+	{
+		// a tree of 3 keys joined below a tree of 4000 keys, on either side
+		AVLBinarySearchTree small = new AVLBinarySearchTree();
+		AVLBinarySearchTree large = new AVLBinarySearchTree();
+		for( int key = 0; key < 3; key++ )
+		{
+			small.insertNode(new Node(key));
+		}
+		for( int key = 10; key < 4010; key++ )
+		{
+			large.insertNode(new Node(key));
+		}
+		vural_BinarySearchTree joined = vural_BinarySearchTree.join(small, large);
+		assertEquals(4003, joined.size());
+		checkAVL(joined.getRoot());
+
+		AVLBinarySearchTree larger = new AVLBinarySearchTree();
+		larger.insertNode(new Node(5000));
+		vural_BinarySearchTree rejoined = vural_BinarySearchTree.join(joined, larger);
+		assertEquals(4004, rejoined.size());
+		checkAVL(rejoined.getRoot());
+
+		// joinRoots itself, with m between an empty subtree and a tall one
+		AVLBinarySearchTree avl = new AVLBinarySearchTree();
+		Node r = rejoined.getRoot();
+		rejoined.setRoot(null);
+		avl.joinRoots(null, new Node(-1), r);
+		assertEquals(4005, avl.size());
+		assertEquals(-1, avl.getMin(avl.getRoot()).getKey());
+		checkAVL(avl.getRoot());
+	}
+
+	@Test
+	void testParallelHeightAndFold()
+	{
+		// well above PARALLEL_THRESHOLD, so the work is split between fork-join tasks
+		java.util.Random random = new java.util.Random(4);
+		long sum = 0;
+		for( int i = 0; i < 4 * vural_BinarySearchTree.PARALLEL_THRESHOLD; i++ )
+		{
+			int key = random.nextInt(1 << 24);
+			if( tree.insertNode(new Node(key)) )
+			{
+				sum += key;
+			}
+		}
+		int n = tree.size();
+		assertTrue(n > vural_BinarySearchTree.PARALLEL_THRESHOLD);
+
+		int height = recursiveHeight(tree.getRoot());
+		assertEquals(height, tree.parallelGetHeight(tree.getRoot()));
+		assertEquals(height, tree.parallelGetHeight(tree.getRoot(), 64));
+
+		assertEquals(Long.valueOf(sum), tree.parallelFold(tree.getRoot(), 0L, (s, x) -> s + x.getKey(), Long::sum));
+		assertEquals(Integer.valueOf(n), tree.parallelFold(tree.getRoot(), 0, (c, x) -> c + 1, Integer::sum, 64));
+
+		// the combiner gets its partial results in key order
+		int[] sorted = tree.parallelFold(tree.getRoot(), new int[] {Integer.MAX_VALUE, Integer.MIN_VALUE, 1},
+				(r, x) -> new int[] {Math.min(r[0], x.getKey()), x.getKey(), r[2] == 1 && r[1] < x.getKey() ? 1 : 0},
+				(a, b) -> new int[] {Math.min(a[0], b[0]), Math.max(a[1], b[1]), a[2] == 1 && b[2] == 1 && a[1] < b[0] ? 1 : 0}, 64);
+		assertEquals(1, sorted[2]);
+		assertEquals(tree.getMax(tree.getRoot()).getKey(), sorted[1]);
+	}
+
+	@Test
+	void testStampedReadersSeeAConsistentTree() throws Exception
+	{
+		// the even keys stay put while a writer keeps inserting and deleting the odd ones
+		StampedBinarySearchTree stamped = new StampedBinarySearchTree(new RedBlackBinarySearchTree());
+		for( int key = 0; key <= 2000; key += 2 )
+		{
+			stamped.insertNode(new Node(key));
+		}
+
+		java.util.concurrent.atomic.AtomicBoolean done = new java.util.concurrent.atomic.AtomicBoolean();
+		java.util.concurrent.ConcurrentLinkedQueue<String> errors = new java.util.concurrent.ConcurrentLinkedQueue<>();
+		Thread writer = new Thread(() -> {
+			java.util.Random random = new java.util.Random(5);
+			for( int i = 0; i < 50000; i++ )
+			{
+				int key = 2 * random.nextInt(1000) + 1;
+				if( !stamped.insertNode(new Node(key)) )
+				{
+					stamped.deleteKey(key);
+				}
+			}
+			done.set(true);
+		});
+		Thread[] readers = new Thread[4];
+		for( int r = 0; r < readers.length; r++ )
+		{
+			int seed = r;
+			readers[r] = new Thread(() -> {
+				java.util.Random random = new java.util.Random(seed);
+				while( !done.get() )
+				{
+					int even = 2 * random.nextInt(1001);
+					Node x = stamped.getNode(even);
+					if( x == null || x.getKey() != even )
+					{
+						errors.add("lost " + even);
+						continue;
+					}
+					Node odd = stamped.getNode(stamped.getRoot(), even + 1);
+					if( odd != null && odd.getKey() != even + 1 )
+					{
+						errors.add("found " + odd.getKey() + " for " + (even + 1));
+					}
+					Node next = stamped.getSuccessor(x);
+					if( even < 2000 && (next == null || next.getKey() <= even || next.getKey() > even + 2) )
+					{
+						errors.add("successor of " + even + " is " + next);
+					}
+					if( stamped.getMin(stamped.getRoot()).getKey() != 0 || stamped.getMax(stamped.getRoot()).getKey() < 2000 )
+					{
+						errors.add("wrong min or max");
+					}
+				}
+			});
+		}
+		for( Thread reader : readers )
+		{
+			reader.start();
+		}
+		writer.start();
+		writer.join();
+		for( Thread reader : readers )
+		{
+			reader.join();
+		}
+		assertEquals("[]", errors.toString());
+
+		// the tree is still whole once the writer is done
+		java.util.ArrayList<String> inOrderWalk = new java.util.ArrayList<>();
+		stamped.inOrderWalk(stamped.getRoot(), inOrderWalk);
+		assertEquals(inOrderWalk.size(), stamped.getRoot().getSize());
+	}
+
+	@Test
+	void testLockFreeUpdateNode() throws Exception
+	{
+		LockFreeBinarySearchTree lockFree = new LockFreeBinarySearchTree();
+		lockFree.insertNode(new Node(10, "a"));
+		lockFree.updateNode(new Node(10, "b"));
+		assertEquals("b", lockFree.getNode(10).getData());
+
+		// an update never brings a key back
+		lockFree.updateNode(new Node(20, "c"));
+		assertNull(lockFree.getNode(20));
+		lockFree.deleteNode(10);
+		lockFree.updateNode(new Node(10, "d"));
+		assertNull(lockFree.getNode(10));
+
+		// updates of the even keys are never lost while their odd neighbours are
+		// inserted and deleted, which splices out the vertices above them
+		for( int key = 0; key < 64; key += 2 )
+		{
+			lockFree.insertNode(new Node(key, 0));
+		}
+		java.util.concurrent.atomic.AtomicBoolean done = new java.util.concurrent.atomic.AtomicBoolean();
+		java.util.concurrent.ConcurrentLinkedQueue<String> errors = new java.util.concurrent.ConcurrentLinkedQueue<>();
+		Thread churn = new Thread(() -> {
+			java.util.Random random = new java.util.Random(6);
+			while( !done.get() )
+			{
+				int key = 2 * random.nextInt(32) + 1;
+				if( !lockFree.insertNode(new Node(key)) )
+				{
+					lockFree.deleteNode(key);
+				}
+			}
+		});
+		Thread[] updaters = new Thread[4];
+		for( int u = 0; u < updaters.length; u++ )
+		{
+			int first = 2 * u;
+			updaters[u] = new Thread(() -> {
+				for( int i = 1; i <= 20000; i++ )
+				{
+					// each updater owns every 8th even key
+					int key = first + 8 * (i % 8);
+					lockFree.updateNode(new Node(key, i));
+					Node x = lockFree.getNode(key);
+					if( x == null || !Integer.valueOf(i).equals(x.getData()) )
+					{
+						errors.add("lost update " + i + " of " + key + ", found " + x);
+					}
+				}
+			});
+		}
+		churn.start();
+		for( Thread updater : updaters )
+		{
+			updater.start();
+		}
+		for( Thread updater : updaters )
+		{
+			updater.join();
+		}
+		done.set(true);
+		churn.join();
+		assertEquals("[]", errors.toString());
+	}
+
+	@Test
+	void testDurableRecovery() throws Exception
+	{
+		java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("durable");
+		try
+		{
+			String logFile = dir.resolve("tree.log").toString();
+			DurableBinarySearchTree durable = new DurableBinarySearchTree(logFile);
+			for( int key = 0; key < 100; key++ )
+			{
+				durable.insertNode(new Node(key, "v" + key));
+			}
+			durable.checkpoint();
+			// these only reach the log, on top of the checkpoint
+			durable.updateNode(new Node(10, "ten"));
+			durable.deleteNode(20);
+			durable.insertNode(new Node(150, 150L));
+			durable.close();
+
+			durable = new DurableBinarySearchTree(logFile);
+			assertEquals(100, durable.size());
+			assertEquals("ten", durable.getNode(10).getData());
+			assertNull(durable.getNode(20));
+			assertEquals(150L, durable.getNode(150).getData());
+			assertEquals("v99", durable.getNode(99).getData());
+			durable.close();
+		}
+		finally
+		{
+			deleteAll(dir);
+		}
+	}
+
+	@Test
+	void testDurableTruncatesTornTail() throws Exception
+	{
+		java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("durable");
+		try
+		{
+			java.nio.file.Path log = dir.resolve("tree.log");
+			DurableBinarySearchTree durable = new DurableBinarySearchTree(log.toString());
+			for( int key = 0; key < 10; key++ )
+			{
+				durable.insertNode(new Node(key, key));
+			}
+			durable.close();
+			long whole = java.nio.file.Files.size(log);
+
+			// a record cut short by the crash: its length promises more than is there
+			java.nio.file.Files.write(log, new byte[] {0, 0, 0, 40, 1, 0, 0}, java.nio.file.StandardOpenOption.APPEND);
+			durable = new DurableBinarySearchTree(log.toString());
+			assertEquals(10, durable.size());
+			assertEquals(whole, java.nio.file.Files.size(log));
+
+			// new records go after the last whole one and are recovered too
+			durable.insertNode(new Node(10, 10));
+			durable.close();
+			long grown = java.nio.file.Files.size(log);
+
+			// a whole record whose checksum is wrong is cut off as well
+			java.nio.file.Files.write(log, new byte[] {0, 0, 0, 6, 3, 0, 0, 0, 5, 0, 0, 0, 0, 0}, java.nio.file.StandardOpenOption.APPEND);
+			durable = new DurableBinarySearchTree(log.toString());
+			assertEquals(11, durable.size());
+			assertEquals(5, durable.getNode(5).getData());
+			assertEquals(grown, java.nio.file.Files.size(log));
+			durable.close();
+		}
+		finally
+		{
+			deleteAll(dir);
+		}
+	}
+
+	@Test
+	void testDurableGroupCommit() throws Exception
+	{
+		java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("durable");
+		try
+		{
+			// a small checkpoint size, so checkpoints run among the writers too
+			String logFile = dir.resolve("tree.log").toString();
+			DurableBinarySearchTree durable = new DurableBinarySearchTree(logFile, new RedBlackBinarySearchTree(), 1 << 12);
+			java.util.concurrent.ConcurrentLinkedQueue<String> errors = new java.util.concurrent.ConcurrentLinkedQueue<>();
+			Thread[] writers = new Thread[8];
+			for( int w = 0; w < writers.length; w++ )
+			{
+				int first = w;
+				writers[w] = new Thread(() -> {
+					try
+					{
+						for( int key = first; key < 4000; key += 8 )
+						{
+							if( !durable.insertNode(new Node(key, key)) )
+							{
+								errors.add("could not insert " + key);
+							}
+							if( key % 3 == 0 )
+							{
+								durable.deleteNode(key);
+							}
+						}
+					}
+					catch( java.io.IOException e )
+					{
+						errors.add(e.toString());
+					}
+				});
+			}
+			for( Thread writer : writers )
+			{
+				writer.start();
+			}
+			for( Thread writer : writers )
+			{
+				writer.join();
+			}
+			assertEquals("[]", errors.toString());
+			durable.close();
+
+			// every change which returned is there after reopening
+			DurableBinarySearchTree reopened = new DurableBinarySearchTree(logFile);
+			java.util.ArrayList<Integer> keys = new java.util.ArrayList<>();
+			reopened.inOrderWalk(x -> keys.add(x.getKey()));
+			java.util.ArrayList<Integer> expected = new java.util.ArrayList<>();
+			for( int key = 0; key < 4000; key++ )
+			{
+				if( key % 3 != 0 )
+				{
+					expected.add(key);
+				}
+			}
+			assertEquals(expected, keys);
+			reopened.close();
+		}
+		finally
+		{
+			deleteAll(dir);
+		}
+	}
+
+	@Test
+	void testDurableCheckpointFailureKeepsTheChange() throws Exception
+	{
+		java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("durable");
+		java.util.logging.Logger logger = java.util.logging.Logger.getLogger(DurableBinarySearchTree.class.getName());
+		java.util.logging.Level level = logger.getLevel();
+		logger.setLevel(java.util.logging.Level.OFF);
+		try
+		{
+			// a directory where the checkpoint's temporary file goes makes every checkpoint fail
+			java.nio.file.Path log = dir.resolve("tree.log");
+			java.nio.file.Path blocker = dir.resolve("tree.log.checkpoint.tmp");
+			java.nio.file.Files.createDirectory(blocker);
+			DurableBinarySearchTree durable = new DurableBinarySearchTree(log.toString(), new vural_BinarySearchTree(), 1);
+			assertTrue(durable.insertNode(new Node(1, "one")));
+			assertTrue(durable.insertNode(new Node(2, "two")));
+			assertThrows(java.io.IOException.class, () -> durable.checkpoint());
+			assertTrue(durable.deleteNode(1));
+
+			// once the checkpoint can be written again the next change takes one
+			java.nio.file.Files.delete(blocker);
+			assertTrue(durable.insertNode(new Node(3, "three")));
+			assertEquals(0, java.nio.file.Files.size(log));
+			durable.close();
+
+			DurableBinarySearchTree reopened = new DurableBinarySearchTree(log.toString());
+			assertEquals(2, reopened.size());
+			assertNull(reopened.getNode(1));
+			assertEquals("two", reopened.getNode(2).getData());
+			assertEquals("three", reopened.getNode(3).getData());
+			reopened.close();
+		}
+		finally
+		{
+			logger.setLevel(level);
+			deleteAll(dir);
+		}
+	}
+
+	@Test
+	void testDurableFailedFsyncFailsEveryWaiter() throws Exception
+	{
+		java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("durable");
+		try
+		{
+			// the first fsync waits until told to go on, every later one fails
+			java.nio.file.Path log = dir.resolve("tree.log");
+			java.util.concurrent.CountDownLatch inFirstFsync = new java.util.concurrent.CountDownLatch(1);
+			java.util.concurrent.CountDownLatch finishFirstFsync = new java.util.concurrent.CountDownLatch(1);
+			FailingChannel channel = new FailingChannel(java.nio.channels.FileChannel.open(log,
+					java.nio.file.StandardOpenOption.READ,
+					java.nio.file.StandardOpenOption.WRITE,
+					java.nio.file.StandardOpenOption.CREATE), inFirstFsync, finishFirstFsync);
+			DurableBinarySearchTree durable = new DurableBinarySearchTree(log.toString(), new vural_BinarySearchTree(),
+					DurableBinarySearchTree.DEFAULT_CHECKPOINT_BYTES, channel);
+
+			String[] results = new String[3];
+			Thread[] writers = new Thread[3];
+			for( int w = 0; w < writers.length; w++ )
+			{
+				int key = w;
+				writers[w] = new Thread(() -> {
+					try
+					{
+						results[key] = "returned " + durable.insertNode(new Node(key));
+					}
+					catch( java.io.IOException e )
+					{
+						results[key] = "threw";
+					}
+				});
+			}
+
+			// writer 0 leads the first batch, writers 1 and 2 queue up behind it and
+			// go out together in the second batch, whose fsync fails
+			writers[0].start();
+			inFirstFsync.await();
+			writers[1].start();
+			writers[2].start();
+			while( durable.size() < 3 )
+			{
+				Thread.sleep(1);
+			}
+			finishFirstFsync.countDown();
+			for( Thread writer : writers )
+			{
+				writer.join();
+			}
+			assertEquals("[returned true, threw, threw]", java.util.Arrays.toString(results));
+
+			// the log is failed for good
+			assertThrows(java.io.IOException.class, () -> durable.insertNode(new Node(3)));
+			assertThrows(java.io.IOException.class, () -> durable.close());
+
+			DurableBinarySearchTree reopened = new DurableBinarySearchTree(log.toString());
+			assertEquals(0, reopened.getNode(0).getKey());
+			assertNull(reopened.getNode(3));
+			reopened.close();
+		}
+		finally
+		{
+			deleteAll(dir);
+		}
+	}
+
+	@Test
+	void testMappedTreeReopen() throws Exception
+	{
+		java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("mapped");
+		try
+		{
+			// more keys than the initial capacity, so the file grows, then every
+			// third key deleted and some of the freed slots reused
+			String file = dir.resolve("tree.bst").toString();
+			MappedBinarySearchTree mapped = new MappedBinarySearchTree(file);
+			java.util.TreeSet<Integer> expected = new java.util.TreeSet<>();
+			java.util.Random random = new java.util.Random(7);
+			for( int i = 0; i < 3000; i++ )
+			{
+				int key = random.nextInt(100000);
+				assertEquals(expected.add(key), mapped.insertNode(key));
+			}
+			for( Integer key : new java.util.ArrayList<>(expected) )
+			{
+				if( key % 3 == 0 )
+				{
+					assertTrue(mapped.deleteNode(key));
+					expected.remove(key);
+				}
+			}
+			assertFalse(mapped.deleteNode(-1));
+			for( int key = -10; key < 0; key++ )
+			{
+				mapped.insertNode(key);
+				expected.add(key);
+			}
+			mapped.close();
+
+			mapped = new MappedBinarySearchTree(file);
+			assertEquals(expected.size(), mapped.size());
+			java.util.ArrayList<Integer> keys = new java.util.ArrayList<>();
+			for( int x = mapped.getMin(mapped.getRoot()); x != MappedBinarySearchTree.NIL; x = mapped.getSuccessor(x) )
+			{
+				keys.add(mapped.getKey(x));
+			}
+			assertEquals(new java.util.ArrayList<>(expected), keys);
+			mapped.close();
+		}
+		finally
+		{
+			deleteAll(dir);
+		}
+	}
+
+	@Test
+	void testMappedTreeRefusesBadFiles() throws Exception
+	{
+		java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("mapped");
+		try
+		{
+			java.nio.file.Path file = dir.resolve("tree.bst");
+			java.nio.file.Path copy = dir.resolve("crashed.bst");
+			MappedBinarySearchTree mapped = new MappedBinarySearchTree(file.toString());
+			mapped.insertNode(1);
+			mapped.force();
+			java.nio.file.Files.copy(file, copy);
+			MappedBinarySearchTree clean = new MappedBinarySearchTree(copy.toString());
+			assertEquals(1, clean.size());
+			clean.close();
+
+			// a copy taken in the middle of changes stands in for a crash
+			mapped.insertNode(2);
+			java.nio.file.Files.copy(file, copy, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+			assertThrows(java.io.IOException.class, () -> new MappedBinarySearchTree(copy.toString()));
+			mapped.close();
+
+			java.nio.file.Files.write(copy, new byte[64]);
+			assertThrows(java.io.IOException.class, () -> new MappedBinarySearchTree(copy.toString()));
+		}
+		finally
+		{
+			deleteAll(dir);
+		}
+	}
+
+	@Test
+	void testIntArraySlotReuseAndGrowth()
+	{
+		IntArrayBinarySearchTree array = new IntArrayBinarySearchTree(4);
+		array.insertNode(50, "fifty");
+		array.insertNode(30);
+		array.insertNode(70);
+		int slot = array.getNode(array.getRoot(), 30);
+		assertTrue(array.deleteNode(30));
+		assertFalse(array.deleteNode(30));
+
+		// the freed slot is handed to the next insert, with none of its old data
+		array.insertNode(60);
+		assertEquals(slot, array.getNode(array.getRoot(), 60));
+		assertNull(array.getData(slot));
+		assertEquals(3, array.size());
+
+		// growing well past the initial capacity keeps every key and its data
+		for( int key = 3; key < 1000; key += 7 )
+		{
+			assertTrue(array.insertNode(key, key));
+		}
+		for( int key = 3; key < 1000; key += 7 )
+		{
+			assertEquals(key, array.getData(array.getNode(array.getRoot(), key)));
+		}
+		assertEquals("fifty", array.getData(array.getNode(array.getRoot(), 50)));
+		assertEquals(3 + 143, array.size());
+
+		java.util.ArrayList<Integer> keys = new java.util.ArrayList<>();
+		for( int x = array.getMin(array.getRoot()); x != IntArrayBinarySearchTree.NIL; x = array.getSuccessor(x) )
+		{
+			keys.add(array.getKey(x));
+		}
+		for( int i = 1; i < keys.size(); i++ )
+		{
+			assertTrue(keys.get(i - 1) < keys.get(i));
+		}
+		assertEquals(array.size(), keys.size());
+	}
+
+	@Test
+	void testIntArrayMatchesNodeTree()
+	{
+		// the same inserts and deletes build the same shape in both trees
+		IntArrayBinarySearchTree array = new IntArrayBinarySearchTree();
+		java.util.Random random = new java.util.Random(8);
+		for( int i = 0; i < 2000; i++ )
+		{
+			int key = random.nextInt(5000);
+			if( random.nextInt(3) == 0 )
+			{
+				array.deleteNode(key);
+				Node x = tree.getNode(tree.getRoot(), key);
+				if( x != null )
+				{
+					tree.deleteNode(x);
+				}
+			}
+			else
+			{
+				assertEquals(tree.insertNode(new Node(key)), array.insertNode(key));
+			}
+		}
+		assertEquals(tree.size(), array.size());
+
+		// the stackless height of every subtree matches the recursive one
+		for( Node x : tree )
+		{
+			int s = array.getNode(array.getRoot(), x.getKey());
+			assertEquals(recursiveHeight(x), array.getHeight(s));
+			assertEquals(x.getParent() == null ? IntArrayBinarySearchTree.NIL : array.getNode(array.getRoot(), x.getParent().getKey()), array.getParent(s));
+		}
+		assertEquals(-1, array.getHeight(IntArrayBinarySearchTree.NIL));
+
+		// a sorted run gives a chain deeper than a recursive walk could go
+		IntArrayBinarySearchTree chain = new IntArrayBinarySearchTree();
+		for( int key = 0; key < 20000; key++ )
+		{
+			chain.insertNode(key);
+		}
+		assertEquals(19999, chain.getHeight(chain.getRoot()));
+		assertEquals(0, chain.getHeight(chain.getNode(chain.getRoot(), 19999)));
+	}
+
+	@Test
+	void testIntArrayToNode()
+	{
+		IntArrayBinarySearchTree array = new IntArrayBinarySearchTree();
+		array.insertNode(20, "twenty");
+		array.insertNode(10);
+		Node x = array.toNode(array.getNode(array.getRoot(), 20));
+		assertEquals(20, x.getKey());
+		assertEquals("twenty", x.getData());
+		assertNull(x.getParent());
+		assertNull(x.getLeft());
+		assertNull(array.toNode(array.getNode(array.getRoot(), 10)).getData());
+		assertNull(array.toNode(IntArrayBinarySearchTree.NIL));
+
+		// updateNode changes the data the next toNode sees, never the Node already made
+		array.updateNode(20, "new");
+		assertEquals("twenty", x.getData());
+		assertEquals("new", array.toNode(array.getRoot()).getData());
+	}
+
+	@Test
+	void testShardedEdges()
+	{
+		// two shards to start with, [MIN_VALUE, 0) and [0, MAX_VALUE]
+		ShardedBinarySearchTree sharded = new ShardedBinarySearchTree(2, 16, AVLBinarySearchTree::new);
+		assertNull(sharded.getMin());
+		assertNull(sharded.getSuccessor(0));
+		sharded.insertNode(new Node(-100));
+		sharded.insertNode(new Node(100));
+
+		// successor and predecessor carry on into the next shard
+		assertEquals(100, sharded.getSuccessor(-100).getKey());
+		assertEquals(-100, sharded.getPredecessor(100).getKey());
+		assertEquals(100, sharded.getSuccessor(-1).getKey());
+		assertEquals(-100, sharded.getPredecessor(0).getKey());
+		assertNull(sharded.getSuccessor(100));
+		assertNull(sharded.getPredecessor(-100));
+
+		// the ends of the key space
+		sharded.insertNode(new Node(Integer.MIN_VALUE));
+		sharded.insertNode(new Node(Integer.MAX_VALUE));
+		assertEquals(Integer.MIN_VALUE, sharded.getMin().getKey());
+		assertEquals(Integer.MAX_VALUE, sharded.getMax().getKey());
+		assertEquals(Integer.MAX_VALUE, sharded.getSuccessor(100).getKey());
+		assertEquals(Integer.MIN_VALUE, sharded.getPredecessor(-100).getKey());
+		assertNull(sharded.getSuccessor(Integer.MAX_VALUE));
+		assertNull(sharded.getPredecessor(Integer.MIN_VALUE));
+		java.util.ArrayList<Integer> keys = new java.util.ArrayList<>();
+		sharded.rangeWalk(Integer.MIN_VALUE, Integer.MAX_VALUE, x -> keys.add(x.getKey()));
+		assertEquals(java.util.Arrays.asList(Integer.MIN_VALUE, -100, 100, Integer.MAX_VALUE), keys);
+	}
+
+	@Test
+	void testShardedSplitAndMerge()
+	{
+		ShardedBinarySearchTree sharded = new ShardedBinarySearchTree(2, 16, AVLBinarySearchTree::new);
+		java.util.TreeSet<Integer> expected = new java.util.TreeSet<>();
+		for( int key = -200; key < 200; key++ )
+		{
+			sharded.insertNode(new Node(key, key));
+			expected.add(key);
+		}
+		// every shard was split once it went past 16 keys
+		int grown = sharded.getShardCount();
+		assertTrue(grown >= 400 / 16);
+		assertEquals(400, sharded.size());
+		assertEquals(new java.util.ArrayList<>(expected), walkSharded(sharded));
+
+		// walking with successor and predecessor crosses every shard edge
+		java.util.ArrayList<Integer> up = new java.util.ArrayList<>();
+		for( Node x = sharded.getMin(); x != null; x = sharded.getSuccessor(x.getKey()) )
+		{
+			up.add(x.getKey());
+		}
+		assertEquals(new java.util.ArrayList<>(expected), up);
+		java.util.ArrayList<Integer> down = new java.util.ArrayList<>();
+		for( Node x = sharded.getMax(); x != null; x = sharded.getPredecessor(x.getKey()) )
+		{
+			down.add(x.getKey());
+		}
+		assertEquals(new java.util.ArrayList<>(expected.descendingSet()), down);
+
+		// a range crossing the edges of several shards
+		java.util.ArrayList<Integer> range = new java.util.ArrayList<>();
+		sharded.rangeWalk(-50, 50, x -> range.add(x.getKey()));
+		assertEquals(new java.util.ArrayList<>(expected.subSet(-50, true, 50, true)), range);
+
+		// emptied shards are merged away, never below the two we started with
+		for( int key = -200; key < 200; key++ )
+		{
+			if( key % 50 != 0 )
+			{
+				assertTrue(sharded.deleteNode(key));
+				expected.remove(key);
+			}
+		}
+		assertTrue(sharded.getShardCount() < grown);
+		assertTrue(sharded.getShardCount() >= 2);
+		assertEquals(expected.size(), sharded.size());
+		assertEquals(new java.util.ArrayList<>(expected), walkSharded(sharded));
+		for( int key : expected )
+		{
+			assertEquals(key, sharded.getNode(key).getData());
+		}
+	}
+
+	@Test
+	void testVisitorWalks()
+	{
+		// the stackless visitor walks see the Nodes in the same order as the recursive walks
+		for( Node root : new Node[] { t.getRoot(), t.getNode(t.getRoot(), 60), t.getNode(t.getRoot(), 10) } )
+		{
+			java.util.ArrayList<String> pre = new java.util.ArrayList<>();
+			java.util.ArrayList<String> in = new java.util.ArrayList<>();
+			java.util.ArrayList<String> post = new java.util.ArrayList<>();
+			t.preOrderWalk(root, pre);
+			t.inOrderWalk(root, in);
+			t.postOrderWalk(root, post);
+
+			java.util.ArrayList<String> visited = new java.util.ArrayList<>();
+			t.preOrderWalk(root, (key, x, depth) -> visited.add(x.toString()));
+			assertEquals(pre, visited);
+			visited.clear();
+			t.inOrderWalk(root, (key, x, depth) -> visited.add(x.toString()));
+			assertEquals(in, visited);
+			visited.clear();
+			t.postOrderWalk(root, (key, x, depth) -> visited.add(x.toString()));
+			assertEquals(post, visited);
+		}
+
+		java.util.ArrayList<String> inOrderWalk = new java.util.ArrayList<>();
+		t.inOrderWalk(t.getRoot(), (key, x, depth) -> inOrderWalk.add(x.toString()));
+		assertArrayEquals(checkInOrderWalkInsertThirtyOneNodesArray, inOrderWalk.toArray(new String[0]));
+
+		// the key and depth handed over match the Node, depth counting from the start of the walk
+		Node sixty = t.getNode(t.getRoot(), 60);
+		t.preOrderWalk(sixty, (key, x, depth) -> {
+			assertEquals(x.getKey(), key);
+			int up = 0;
+			for( Node y = x; y != sixty; y = y.getParent() )
+			{
+				up++;
+			}
+			assertEquals(up, depth);
+		});
+
+		// nothing to visit in an empty tree
+		tree.inOrderWalk(tree.getRoot(), (key, x, depth) -> fail("visited " + key));
+	}
+
+	@Test
+	void testAppendableWalks() throws Exception
+	{
+		// the lines written are the lines the list walks collect
+		for( Node root : new Node[] { t.getRoot(), t.getNode(t.getRoot(), 60) } )
+		{
+			java.util.ArrayList<String> pre = new java.util.ArrayList<>();
+			java.util.ArrayList<String> in = new java.util.ArrayList<>();
+			java.util.ArrayList<String> post = new java.util.ArrayList<>();
+			t.preOrderWalk(root, pre);
+			t.inOrderWalk(root, in);
+			t.postOrderWalk(root, post);
+
+			StringBuilder out = new StringBuilder();
+			t.preOrderWalk(root, out);
+			assertEquals(String.join("\n", pre) + "\n", out.toString());
+			out.setLength(0);
+			t.inOrderWalk(root, out);
+			assertEquals(String.join("\n", in) + "\n", out.toString());
+			out.setLength(0);
+			t.postOrderWalk(root, out);
+			assertEquals(String.join("\n", post) + "\n", out.toString());
+		}
+
+		StringBuilder out = new StringBuilder();
+		t.inOrderWalk(t.getRoot(), out);
+		assertArrayEquals(checkInOrderWalkInsertThirtyOneNodesArray, out.toString().split("\n"));
+
+		// a failing output stops the walk with its own exception
+		java.io.Writer broken = new java.io.Writer()
+		{
+			@Override
+			public void write(char[] buffer, int offset, int length) throws java.io.IOException
+			{
+				throw new java.io.IOException("broken");
+			}
+
+			@Override
+			public void flush()
+			{
+			}
+
+			@Override
+			public void close()
+			{
+			}
+		};
+		java.io.IOException e = assertThrows(java.io.IOException.class, () -> t.inOrderWalk(t.getRoot(), broken));
+		assertEquals("broken", e.getMessage());
+	}
+
+	@Test
+	void testIterators()
+	{
+		java.util.ArrayList<Integer> expected = keysOf(t);
+		java.util.ArrayList<Integer> up = new java.util.ArrayList<>();
+		for( Node x : t )
+		{
+			up.add(x.getKey());
+		}
+		assertEquals(expected, up);
+
+		java.util.ArrayList<Integer> down = new java.util.ArrayList<>();
+		for( java.util.Iterator<Node> it = t.descendingIterator(); it.hasNext(); )
+		{
+			down.add(it.next().getKey());
+		}
+		java.util.Collections.reverse(down);
+		assertEquals(expected, down);
+
+		// remove() deletes the Node just returned and the walk carries on after it
+		java.util.Iterator<Node> it = t.iterator();
+		assertThrows(IllegalStateException.class, () -> it.remove());
+		while( it.hasNext() )
+		{
+			if( it.next().getKey() % 2 == 0 )
+			{
+				it.remove();
+				assertThrows(IllegalStateException.class, () -> it.remove());
+			}
+		}
+		assertThrows(java.util.NoSuchElementException.class, () -> it.next());
+		expected.removeIf(key -> key % 2 == 0);
+		assertEquals(expected, keysOf(t));
+		assertEquals(expected.size(), t.size());
+
+		// the same going down, deleting Nodes with two children included
+		java.util.Iterator<Node> back = t.descendingIterator();
+		while( back.hasNext() )
+		{
+			if( back.next().getKey() % 3 == 0 )
+			{
+				back.remove();
+			}
+		}
+		expected.removeIf(key -> key % 3 == 0);
+		assertEquals(expected, keysOf(t));
+		assertFalse(tree.iterator().hasNext());
+		assertFalse(tree.descendingIterator().hasNext());
+	}
+
+	@Test
+	void testParallelStream()
+	{
+		// big enough for the parallel stream to really split
+		RedBlackBinarySearchTree big = new RedBlackBinarySearchTree();
+		java.util.Random random = new java.util.Random(9);
+		for( int i = 0; i < 100000; i++ )
+		{
+			big.insertNode(new Node(random.nextInt(1000000)));
+		}
+		java.util.ArrayList<Integer> inOrder = keysOf(big);
+		long sum = 0;
+		for( int key : inOrder )
+		{
+			sum += key;
+		}
+
+		assertEquals(sum, big.stream().parallel().mapToLong(Node::getKey).sum());
+		assertEquals(inOrder.size(), big.stream().parallel().count());
+		assertEquals(inOrder, big.stream().parallel().map(Node::getKey).collect(java.util.stream.Collectors.toList()));
+		assertEquals(inOrder, big.stream().map(Node::getKey).collect(java.util.stream.Collectors.toList()));
+
+		// the halves of a split are sized exactly and cover the keys between them
+		java.util.Spliterator<Node> second = big.spliterator();
+		java.util.Spliterator<Node> first = second.trySplit();
+		assertEquals(inOrder.size(), first.estimateSize() + second.estimateSize());
+		assertEquals(inOrder.size() / 2, first.getExactSizeIfKnown());
+		java.util.ArrayList<Integer> keys = new java.util.ArrayList<>();
+		first.forEachRemaining(x -> keys.add(x.getKey()));
+		second.forEachRemaining(x -> keys.add(x.getKey()));
+		assertEquals(inOrder, keys);
+		assertEquals(0, tree.stream().parallel().count());
+	}
+
+	@Test
+	void testMappedTreeRecovery() throws Exception
+	{
+		java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("mapped");
+		try
+		{
+			java.nio.file.Path file = dir.resolve("tree.bst");
+			java.nio.file.Path crashed = dir.resolve("crashed.bst");
+			MappedBinarySearchTree mapped = new MappedBinarySearchTree(file.toString());
+			for( int key : new int[] { 50, 30, 70, 20, 40, 60, 80, 65 } )
+			{
+				mapped.insertNode(key);
+			}
+			mapped.deleteNode(40);
+			mapped.force();
+			mapped.insertNode(10);
+			int root = mapped.getRoot();
+			int twenty = mapped.getNode(root, 20);
+			int thirty = mapped.getNode(root, 30);
+			int sixty = mapped.getNode(root, 60);
+			int seventy = mapped.getNode(root, 70);
+			int used = 8; // 10 took the slot 40 freed
+			java.nio.file.Files.copy(file, crashed);
+			mapped.close();
+
+			// what a killed process can leave: a stale size and parent link, a slot
+			// handed out but never linked, and a delete of 50 stopped right after
+			// its successor 60 was copied into its slot
+			putInt(crashed, 12, 999);
+			putInt(crashed, 16, used + 1);
+			putInt(crashed, 32 + 16 * used, 55);
+			putInt(crashed, 32 + 16 * twenty + 12, seventy);
+			putInt(crashed, 32 + 16 * root, 60);
+			assertThrows(java.io.IOException.class, () -> new MappedBinarySearchTree(crashed.toString()));
+
+			MappedBinarySearchTree recovered = new MappedBinarySearchTree(crashed.toString(), true);
+			assertEquals(java.util.Arrays.asList(10, 20, 30, 60, 65, 70, 80), walkMapped(recovered));
+			assertEquals(7, recovered.size());
+			assertEquals(thirty, recovered.getParent(twenty));
+
+			// the slots nobody reaches are free again, lowest first
+			recovered.insertNode(55);
+			recovered.insertNode(56);
+			recovered.insertNode(57);
+			assertEquals(sixty, recovered.getNode(recovered.getRoot(), 55));
+			assertEquals(used, recovered.getNode(recovered.getRoot(), 56));
+			assertEquals(used + 1, recovered.getNode(recovered.getRoot(), 57));
+			recovered.close();
+
+			// the flag is cleared, so the plain constructor opens it again
+			MappedBinarySearchTree reopened = new MappedBinarySearchTree(crashed.toString());
+			assertEquals(java.util.Arrays.asList(10, 20, 30, 55, 56, 57, 60, 65, 70, 80), walkMapped(reopened));
+			reopened.close();
+
+			// damage no cut short change leaves behind is refused
+			java.nio.file.Path looped = dir.resolve("looped.bst");
+			java.nio.file.Files.copy(file, looped);
+			putInt(looped, 28, 1);
+			putInt(looped, 32 + 16 * twenty + 4, root);
+			assertThrows(java.io.IOException.class, () -> new MappedBinarySearchTree(looped.toString(), true));
+			java.nio.file.Path unordered = dir.resolve("unordered.bst");
+			java.nio.file.Files.copy(file, unordered);
+			putInt(unordered, 28, 1);
+			putInt(unordered, 32 + 16 * twenty, 1000);
+			assertThrows(java.io.IOException.class, () -> new MappedBinarySearchTree(unordered.toString(), true));
+		}
+		finally
+		{
+			deleteAll(dir);
+		}
+	}
+
+	@Test
+	void testTidyLayout()
+	{
+		// random, skinny and full trees
+		vural_BinarySearchTree random = new vural_BinarySearchTree();
+		java.util.Random numbers = new java.util.Random(10);
+		for( int i = 0; i < 2000; i++ )
+		{
+			random.insertNode(new Node(numbers.nextInt(100000)));
+		}
+		vural_BinarySearchTree skinny = new vural_BinarySearchTree();
+		for( int i = 0; i < 500; i++ )
+		{
+			// zigzags all the way down, height 999
+			skinny.insertNode(new Node(i));
+			skinny.insertNode(new Node(1000-i));
+		}
+		vural_BinarySearchTree full = new vural_BinarySearchTree();
+		int[] keys = new int[(1 << 10)-1];
+		for( int i = 0; i < keys.length; i++ )
+		{
+			keys[i] = i;
+		}
+		full.bulkLoad(keys, null);
+
+		for( vural_BinarySearchTree bst : new vural_BinarySearchTree[] { random, skinny, full, t } )
+		{
+			int[][] nodes = preOrderArrays(bst);
+			int[] left = nodes[0];
+			int[] right = nodes[1];
+			int[] height = nodes[2];
+			int[] depth = nodes[3];
+			int n = left.length;
+			double separation = 10;
+			double[] x = positions(nodes, TidyLayout.offsets(left, right, height, separation));
+
+			// no two Nodes on a level are closer than the separation
+			java.util.TreeMap<Integer, java.util.ArrayList<Double>> levels = new java.util.TreeMap<>();
+			for( int i = 0; i < n; i++ )
+			{
+				levels.computeIfAbsent(depth[i], d -> new java.util.ArrayList<>()).add(x[i]);
+			}
+			for( java.util.ArrayList<Double> level : levels.values() )
+			{
+				java.util.Collections.sort(level);
+				for( int i = 1; i < level.size(); i++ )
+				{
+					assertTrue(level.get(i)-level.get(i-1) >= separation-1e-9);
+				}
+			}
+
+			// parents sit midway between their two children
+			for( int i = 0; i < n; i++ )
+			{
+				if( left[i] >= 0 && right[i] >= 0 )
+				{
+					assertEquals(x[i], (x[left[i]]+x[right[i]])/2, 1e-9);
+				}
+			}
+
+			// the width follows the number of Nodes, not 2^height
+			double min = java.util.Arrays.stream(x).min().getAsDouble();
+			double max = java.util.Arrays.stream(x).max().getAsDouble();
+			assertTrue(max-min <= n*separation);
+		}
+
+		// a full tree packs its bottom level exactly a separation apart
+		int[][] nodes = preOrderArrays(full);
+		double[] x = positions(nodes, TidyLayout.offsets(nodes[0], nodes[1], nodes[2], 10));
+		java.util.ArrayList<Double> leaves = new java.util.ArrayList<>();
+		for( int i = 0; i < x.length; i++ )
+		{
+			if( nodes[3][i] == 9 )
+			{
+				leaves.add(x[i]);
+			}
+		}
+		assertEquals(512, leaves.size());
+		java.util.Collections.sort(leaves);
+		for( int i = 1; i < leaves.size(); i++ )
+		{
+			assertEquals(10, leaves.get(i)-leaves.get(i-1), 1e-9);
+		}
+	}
+
+	@Test
+	void testLiveMirrorHeights()
+	{
+		// the cached heights of a live copy match the real ones after every change,
+		// whatever rotations the red-black fixups make
+		for( vural_BinarySearchTree mirror : new vural_BinarySearchTree[] { new RedBlackBinarySearchTree(), new vural_BinarySearchTree(), new AVLBinarySearchTree() } )
+		{
+			java.util.Random random = new java.util.Random(11);
+			java.util.TreeSet<Integer> expected = new java.util.TreeSet<>();
+			for( int i = 0; i < 20000; i++ )
+			{
+				int key = random.nextInt(400);
+				int what = random.nextInt(5) < 3 ? LiveMirror.INSERT : LiveMirror.DELETE;
+				if( i == 10000 )
+				{
+					what = LiveMirror.CLEAR;
+					expected.clear();
+				}
+				else if( what == LiveMirror.INSERT )
+				{
+					expected.add(key);
+				}
+				else
+				{
+					expected.remove(key);
+				}
+				LiveMirror.apply(mirror, LiveMirror.event(key, what));
+				for( Node x : mirror )
+				{
+					assertEquals(recursiveHeight(x), x.getHeight());
+				}
+			}
+			assertEquals(new java.util.ArrayList<>(expected), keysOf(mirror));
+		}
+	}
+
+	@Test
+	void testTreeInfoFileChunks() throws Exception
+	{
+		java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("treeinfo");
+		try
+		{
+			// comments, blank lines, ids that are not plain ints, paths of 64 steps
+			// and more, a CRLF line end and no line end at all at the end
+			StringBuilder steps = new StringBuilder();
+			for( int i = 0; i < 130; i++ )
+			{
+				steps.append((i % 3 == 0) ? '1' : '0');
+			}
+			java.nio.file.Path small = dir.resolve("small.txt");
+			java.nio.file.Files.write(small, ("# treeInfo of a hand-made tree\n"
+					+ "50\n"
+					+ "#30 0 is commented out\n"
+					+ "30 0\n"
+					+ "\n   \n\t\n\r\n"
+					+ "-7\t01\r\n"
+					+ "007 1\n"
+					+ "abc  10 extra\n"
+					+ "-0 11\n"
+					+ "2147483648 110\n"
+					+ "-2147483648 111\n"
+					+ "64 " + steps.substring(0, 64) + "\n"
+					+ "65 " + steps.substring(0, 65) + "\n"
+					+ "130 " + steps).getBytes(java.nio.charset.StandardCharsets.UTF_8));
+			for( long chunkSize : new long[] { 1, 2, 3, 7, 64, 1 << 20 } )
+			{
+				assertSameTreeInfo(small, TreeInfoFile.read(small.toString(), chunkSize));
+			}
+
+			// and a random one, cut into chunks of a few lines each
+			java.util.Random random = new java.util.Random(12);
+			StringBuilder text = new StringBuilder();
+			for( int i = 0; i < 600; i++ )
+			{
+				int kind = random.nextInt(10);
+				if( kind == 0 )
+				{
+					text.append("# comment ").append(random.nextInt());
+				}
+				else if( kind == 1 )
+				{
+					text.append(" \t ".substring(0, random.nextInt(4)));
+				}
+				else
+				{
+					text.append((kind == 2) ? "id" + random.nextInt(100) : Integer.toString(random.nextInt()));
+					text.append(random.nextBoolean() ? " " : "\t");
+					int d = random.nextInt(150);
+					for( int j = 0; j < d; j++ )
+					{
+						text.append(random.nextBoolean() ? '1' : '0');
+					}
+				}
+				text.append(random.nextBoolean() ? "\n" : "\r\n");
+			}
+			java.nio.file.Path large = dir.resolve("large.txt");
+			java.nio.file.Files.write(large, text.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8));
+			for( long chunkSize : new long[] { 61, 1000, 4096 } )
+			{
+				assertSameTreeInfo(large, TreeInfoFile.read(large.toString(), chunkSize));
+			}
+			assertSameTreeInfo(large, TreeInfoFile.read(large.toString()));
+		}
+		finally
+		{
+			deleteAll(dir);
+		}
+	}
+
+	/* ---- HELPERS ---- */
+
+	// the keys of a tree, in order
+	static java.util.ArrayList<Integer> keysOf(vural_BinarySearchTree bst)
+	{
+		java.util.ArrayList<Integer> keys = new java.util.ArrayList<>();
+		bst.inOrderWalk(bst.getRoot(), (key, x, depth) -> keys.add(key));
+		return keys;
+	}
+
+	// the keys of a sharded tree, in order
+	static java.util.ArrayList<Integer> walkSharded(ShardedBinarySearchTree sharded)
+	{
+		java.util.ArrayList<Integer> keys = new java.util.ArrayList<>();
+		sharded.rangeWalk(Integer.MIN_VALUE, Integer.MAX_VALUE, x -> keys.add(x.getKey()));
+		return keys;
+	}
+
+	// the keys of a mapped tree, in order
+	static java.util.ArrayList<Integer> walkMapped(MappedBinarySearchTree mapped)
+	{
+		java.util.ArrayList<Integer> keys = new java.util.ArrayList<>();
+		if( mapped.getRoot() != MappedBinarySearchTree.NIL )
+		{
+			for( int x = mapped.getMin(mapped.getRoot()); x != MappedBinarySearchTree.NIL; x = mapped.getSuccessor(x) )
+			{
+				keys.add(mapped.getKey(x));
+			}
+		}
+		return keys;
+	}
+
+	// overwrites one big-endian int of a file, to fake what a crash leaves behind
+	static void putInt(java.nio.file.Path file, long offset, int value) throws java.io.IOException
+	{
+		try( java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(file, java.nio.file.StandardOpenOption.WRITE) )
+		{
+			java.nio.ByteBuffer bytes = java.nio.ByteBuffer.allocate(4).putInt(0, value);
+			channel.write(bytes, offset);
+		}
+	}
+
+	// the Nodes of a tree numbered in pre-order, as the layouts take them:
+	// left children, right children, heights and depths, -1 for no child
+	static int[][] preOrderArrays(vural_BinarySearchTree bst)
+	{
+		java.util.HashMap<Integer, Integer> index = new java.util.HashMap<>();
+		java.util.ArrayList<Node> nodes = new java.util.ArrayList<>();
+		java.util.ArrayList<Integer> depths = new java.util.ArrayList<>();
+		bst.preOrderWalk(bst.getRoot(), (key, x, depth) -> {
+			index.put(key, nodes.size());
+			nodes.add(x);
+			depths.add(depth);
+		});
+		int n = nodes.size();
+		int[] left = new int[n];
+		int[] right = new int[n];
+		int[] height = new int[n];
+		int[] depth = new int[n];
+		for( int i = n-1; i >= 0; i-- )
+		{
+			Node x = nodes.get(i);
+			left[i] = (x.getLeft() == null) ? -1 : index.get(x.getLeft().getKey());
+			right[i] = (x.getRight() == null) ? -1 : index.get(x.getRight().getKey());
+			height[i] = 1+Math.max((left[i] >= 0) ? height[left[i]] : -1, (right[i] >= 0) ? height[right[i]] : -1);
+			depth[i] = depths.get(i);
+		}
+		return new int[][] { left, right, height, depth };
+	}
+
+	// adds up the offsets from the parents of a tree numbered in pre-order
+	static double[] positions(int[][] nodes, double[] offset)
+	{
+		double[] x = new double[offset.length];
+		for( int i = 0; i < x.length; i++ )
+		{
+			for( int c : new int[] { nodes[0][i], nodes[1][i] } )
+			{
+				if( c >= 0 )
+				{
+					x[c] = x[i]+offset[c];
+				}
+			}
+		}
+		return x;
+	}
+
+	// height of a subtree counted the plain recursive way, -1 for an empty one
+	static int recursiveHeight(Node x)
+	{
+		if( x == null )
+		{
+			return -1;
+		}
+		return Math.max(recursiveHeight(x.getLeft()), recursiveHeight(x.getRight())) + 1;
+	}
+
+	// checks the parent links and subtree sizes below x
+	static void checkLinks(Node x)
+	{
+		if( x == null )
+		{
+			return;
+		}
+		int size = 1;
+		if( x.getLeft() != null )
+		{
+			assertSame(x, x.getLeft().getParent());
+			assertTrue(x.getLeft().getKey() < x.getKey());
+			checkLinks(x.getLeft());
+			size += x.getLeft().getSize();
+		}
+		if( x.getRight() != null )
+		{
+			assertSame(x, x.getRight().getParent());
+			assertTrue(x.getRight().getKey() > x.getKey());
+			checkLinks(x.getRight());
+			size += x.getRight().getSize();
+		}
+		assertEquals(size, x.getSize());
+	}
+
+	// checks the red-black rules and that the height is at most 2*log2(n+1)
+	static void checkRedBlack(vural_BinarySearchTree rb)
+	{
+		Node root = rb.getRoot();
+		if( root == null )
+		{
+			return;
+		}
+		assertFalse(root.isRed());
+		assertNull(root.getParent());
+		checkLinks(root);
+		blackHeight(root);
+		int n = rb.size();
+		assertTrue(recursiveHeight(root) + 1 <= 2 * Math.log(n + 1) / Math.log(2));
+	}
+
+	// the number of black Nodes on every path down from x, which must be the same
+	static int blackHeight(Node x)
+	{
+		if( x == null )
+		{
+			return 1;
+		}
+		if( x.isRed() )
+		{
+			assertFalse(x.getLeft() != null && x.getLeft().isRed());
+			assertFalse(x.getRight() != null && x.getRight().isRed());
+		}
+		int left = blackHeight(x.getLeft());
+		assertEquals(left, blackHeight(x.getRight()));
+		return left + (x.isRed() ? 0 : 1);
+	}
+
+	// checks the links, that every cached height is the real height and that no Node
+	// leans by more than one, returns the height of x
+	static int checkAVL(Node x)
+	{
+		if( x == null )
+		{
+			return -1;
+		}
+		if( x.getParent() == null )
+		{
+			checkLinks(x);
+		}
+		int left = checkAVL(x.getLeft());
+		int right = checkAVL(x.getRight());
+		assertTrue(Math.abs(left - right) <= 1);
+		assertEquals(Math.max(left, right) + 1, x.getHeight());
+		return x.getHeight();
+	}
+
+	// checks a parsed treeInfo file against a line by line parse of it, the way
+	// DrawingArea read it before TreeInfoFile
+	static void assertSameTreeInfo(java.nio.file.Path file, TreeInfoFile info) throws java.io.IOException
+	{
+		java.util.ArrayList<String> ids = new java.util.ArrayList<>();
+		java.util.ArrayList<String> paths = new java.util.ArrayList<>();
+		try( java.io.BufferedReader input = java.nio.file.Files.newBufferedReader(file) )
+		{
+			String line;
+			while( (line = input.readLine()) != null )
+			{
+				java.util.StringTokenizer st = new java.util.StringTokenizer(line);
+				if( line.startsWith("#") || !st.hasMoreTokens() )
+				{
+					continue;
+				}
+				ids.add(st.nextToken());
+				paths.add(st.hasMoreTokens() ? st.nextToken() : "");
+			}
+		}
+
+		assertEquals(ids.size(), info.n);
+		int maxDepth = 0;
+		for( int i = 0; i < info.n; i++ )
+		{
+			String path = paths.get(i);
+			assertEquals(ids.get(i), info.id(i));
+			assertEquals(path.length(), info.depth[i]);
+			for( int j = 0; j < path.length(); j++ )
+			{
+				// step 0 is the one from the root, the last one in the file
+				assertEquals(path.charAt(path.length()-1-j) == '1', info.step(i, j));
+			}
+			maxDepth = Math.max(maxDepth, path.length());
+		}
+		assertEquals(maxDepth, info.maxDepth());
+	}
+
+	// deletes a file, or a directory and everything in it
+	static void deleteAll(java.nio.file.Path path) throws java.io.IOException
+	{
+		if( java.nio.file.Files.isDirectory(path) )
+		{
+			try( java.util.stream.Stream<java.nio.file.Path> children = java.nio.file.Files.list(path) )
+			{
+				for( java.nio.file.Path child : (Iterable<java.nio.file.Path>) children::iterator )
+				{
+					deleteAll(child);
+				}
+			}
+		}
+		java.nio.file.Files.deleteIfExists(path);
+	}
+
+	// a log channel whose first fsync waits for a latch and whose later ones fail
+	static final class FailingChannel extends java.nio.channels.FileChannel
+	{
+		private final java.nio.channels.FileChannel delegate;
+		private final java.util.concurrent.CountDownLatch inFirstFsync;
+		private final java.util.concurrent.CountDownLatch finishFirstFsync;
+		private int fsyncs;
+
+		FailingChannel(java.nio.channels.FileChannel delegate, java.util.concurrent.CountDownLatch inFirstFsync,
+				java.util.concurrent.CountDownLatch finishFirstFsync)
+		{
+			this.delegate = delegate;
+			this.inFirstFsync = inFirstFsync;
+			this.finishFirstFsync = finishFirstFsync;
+		}
+
+		@Override
+		public void force(boolean metaData) throws java.io.IOException
+		{
+			if( ++fsyncs > 1 )
+			{
+				throw new java.io.IOException("disk full");
+			}
+			inFirstFsync.countDown();
+			try
+			{
+				finishFirstFsync.await();
+			}
+			catch( InterruptedException e )
+			{
+				throw new java.io.InterruptedIOException();
+			}
+			delegate.force(metaData);
+		}
+
+		@Override
+		public int read(java.nio.ByteBuffer dst) throws java.io.IOException
+		{
+			return delegate.read(dst);
+		}
+
+		@Override
+		public long read(java.nio.ByteBuffer[] dsts, int offset, int length) throws java.io.IOException
+		{
+			return delegate.read(dsts, offset, length);
+		}
+
+		@Override
+		public int write(java.nio.ByteBuffer src) throws java.io.IOException
+		{
+			return delegate.write(src);
+		}
+
+		@Override
+		public long write(java.nio.ByteBuffer[] srcs, int offset, int length) throws java.io.IOException
+		{
+			return delegate.write(srcs, offset, length);
+		}
+
+		@Override
+		public long position() throws java.io.IOException
+		{
+			return delegate.position();
+		}
+
+		@Override
+		public java.nio.channels.FileChannel position(long newPosition) throws java.io.IOException
+		{
+			delegate.position(newPosition);
+			return this;
+		}
+
+		@Override
+		public long size() throws java.io.IOException
+		{
+			return delegate.size();
+		}
+
+		@Override
+		public java.nio.channels.FileChannel truncate(long size) throws java.io.IOException
+		{
+			delegate.truncate(size);
+			return this;
+		}
+
+		@Override
+		public long transferTo(long position, long count, java.nio.channels.WritableByteChannel target) throws java.io.IOException
+		{
+			return delegate.transferTo(position, count, target);
+		}
+
+		@Override
+		public long transferFrom(java.nio.channels.ReadableByteChannel src, long position, long count) throws java.io.IOException
+		{
+			return delegate.transferFrom(src, position, count);
+		}
+
+		@Override
+		public int read(java.nio.ByteBuffer dst, long position) throws java.io.IOException
+		{
+			return delegate.read(dst, position);
+		}
+
+		@Override
+		public int write(java.nio.ByteBuffer src, long position) throws java.io.IOException
+		{
+			return delegate.write(src, position);
+		}
+
+		@Override
+		public java.nio.MappedByteBuffer map(MapMode mode, long position, long size) throws java.io.IOException
+		{
+			return delegate.map(mode, position, size);
+		}
+
+		@Override
+		public java.nio.channels.FileLock lock(long position, long size, boolean shared) throws java.io.IOException
+		{
+			return delegate.lock(position, size, shared);
+		}
+
+		@Override
+		public java.nio.channels.FileLock tryLock(long position, long size, boolean shared) throws java.io.IOException
+		{
+			return delegate.tryLock(position, size, shared);
+		}
+
+		@Override
+		protected void implCloseChannel() throws java.io.IOException
+		{
+			delegate.close();
+		}
+	}
 }
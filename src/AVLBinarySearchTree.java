@@ -0,0 +1,226 @@
+/**
+ * An AVL flavour of our Binary Search Tree.
+ *
+ * For every Node the heights of its two subtrees differ by at most one, which
+ * keeps the height of the whole tree below roughly 1.44*log(n).
+ *
+ * Each Node caches the height of its own subtree. Insert and delete refresh the
+ * cached heights along the path back up to the root, rotating wherever the
+ * balance is off by two, so getHeight no longer has to visit the subtree and is
+ * just a field read.
+ *
+ * Lookups, walks, successor / predecessor and so on are inherited unchanged from
+ * vural_BinarySearchTree.
+ */
+public class AVLBinarySearchTree extends vural_BinarySearchTree {
+
+    /**
+     * Default constructor.
+     * Creates an empty AVL tree, represented by the root node being null
+     * initially.
+     */
+    public AVLBinarySearchTree() {
+        super();
+    }
+
+    /**
+     * Inserts a Node into the tree and rebalances on the way back up to the root.
+     * If a Node exists in the tree with the same key as Node z, then we should not
+     * add z.
+     *
+     * @param Node z - specifies the new Node to be added to the tree.
+     *
+     * @return true if z was added, false if its key was already in the tree
+     */
+    @Override
+    public boolean insertNode(Node z) {
+        if (!super.insertNode(z)) {
+            return false;
+        }
+
+        z.setHeight(0);
+        rebalance(z.getParent());
+        return true;
+    }
+
+    /**
+     * Attempts to find and delete a Node from the tree, then rebalances from the
+     * lowest Node whose subtree changed up to the root.
+     * If the specified Node cannot be found in the tree, then this function should
+     * not alter the tree.
+     *
+     * @param Node z - the node to be found and then removed from the tree.
+     */
+    @Override
+    public void deleteNode(Node z) {
+        if (z == null) {
+            return;
+        }
+        if (this.getNode(this.getRoot(), z.getKey()) == null) {
+            return;
+        }
+
+        Node lowest; // deepest Node whose subtree lost a Node
+
+        if (z.getLeft() == null) {
+            lowest = z.getParent();
+            shiftNode(z, z.getRight());
+        }
+        else if (z.getRight() == null) {
+            lowest = z.getParent();
+            shiftNode(z, z.getLeft());
+        }
+        else {
+            Node y = getMin(z.getRight());
+            if (y.getParent() == z) {
+                lowest = y;
+            }
+            else {
+                lowest = y.getParent();
+                shiftNode(y, y.getRight());
+                y.setRight(z.getRight());
+                y.getRight().setParent(y);
+            }
+            shiftNode(z, y);
+            y.setLeft(z.getLeft());
+            y.getLeft().setParent(y);
+            y.setSize(z.getSize());
+        }
+        shrinkPath(lowest);
+
+        rebalance(lowest);
+        fireNodeDeleted(z.getKey());
+    }
+
+    /**
+     * Returns the height of the subtree rooted at x.
+     * The height is cached in every Node, so this runs in O(1).
+     *
+     * @param Node x - specifies which Node we wish to start from while determining
+     *             the height.
+     *
+     * @return the height of the subtree which starts from the relative root
+     */
+    @Override
+    public int getHeight(Node x) {
+        if (x == null) {
+            return -1;
+        }
+        return x.getHeight();
+    }
+
+    /**
+     * Rotates left and refreshes the cached heights of the two Nodes which moved.
+     *
+     * @param Node x - the relative root of the subtree to rotate, must have a right
+     *             child.
+     */
+    @Override
+    protected void rotateLeft(Node x) {
+        super.rotateLeft(x);
+        updateHeight(x);
+        updateHeight(x.getParent());
+    }
+
+    /**
+     * Rotates right and refreshes the cached heights of the two Nodes which moved.
+     *
+     * @param Node x - the relative root of the subtree to rotate, must have a left
+     *             child.
+     */
+    @Override
+    protected void rotateRight(Node x) {
+        super.rotateRight(x);
+        updateHeight(x);
+        updateHeight(x.getParent());
+    }
+
+    /**
+     * Returns a new, empty AVL tree, used by split.
+     *
+     * @return an empty AVL tree
+     */
+    @Override
+    protected vural_BinarySearchTree newEmptyTree() {
+        return new AVLBinarySearchTree();
+    }
+
+    /**
+     * Joins l, m and r into one AVL tree in O(|height(l) - height(r)| + 1).
+     * If the heights are close m becomes the root, otherwise m is hung off the
+     * inner spine of the taller subtree next to a subtree about as tall as the
+     * shorter one, and the tree is rebalanced from there up.
+     *
+     * @param Node l - the subtree of smaller keys (may be null).
+     * @param Node m - the Node going in between.
+     * @param Node r - the subtree of larger keys (may be null).
+     */
+    @Override
+    protected void joinRoots(Node l, Node m, Node r) {
+        int hl = getHeight(l);
+        int hr = getHeight(r);
+
+        if (hl > hr + 1) {
+            setRoot(l);
+            Node p = l;
+            Node y = l.getRight();
+            while (getHeight(y) > hr + 1) {
+                p = y;
+                y = y.getRight();
+            }
+            link(y, m, r);
+            p.setRight(m);
+            m.setParent(p);
+            growPath(p, sizeOf(r) + 1);
+            rebalance(p);
+        }
+        else if (hr > hl + 1) {
+            setRoot(r);
+            Node p = r;
+            Node y = r.getLeft();
+            while (getHeight(y) > hl + 1) {
+                p = y;
+                y = y.getLeft();
+            }
+            link(l, m, y);
+            p.setLeft(m);
+            m.setParent(p);
+            growPath(p, sizeOf(l) + 1);
+            rebalance(p);
+        }
+        else {
+            super.joinRoots(l, m, r);
+        }
+    }
+
+    private void updateHeight(Node x) {
+        x.setHeight(Math.max(getHeight(x.getLeft()), getHeight(x.getRight())) + 1);
+    }
+
+    private int balanceOf(Node x) {
+        return getHeight(x.getLeft()) - getHeight(x.getRight());
+    }
+
+    private void rebalance(Node x) {
+        while (x != null) {
+            updateHeight(x);
+            int balance = balanceOf(x);
+
+            if (balance > 1) {
+                if (balanceOf(x.getLeft()) < 0) {
+                    rotateLeft(x.getLeft());
+                }
+                rotateRight(x);
+                x = x.getParent(); // the new relative root of this subtree
+            }
+            else if (balance < -1) {
+                if (balanceOf(x.getRight()) > 0) {
+                    rotateRight(x.getRight());
+                }
+                rotateLeft(x);
+                x = x.getParent();
+            }
+            x = x.getParent();
+        }
+    }
+}
@@ -22,8 +22,10 @@ interface BinarySearchTreeFunctions
      * If a Node exists in the BST with the same key as Node z, then we should not add z.
      * 
      * @param Node z - specifies the new Node to be added to the BST.
+     * 
+     * @return true if z was added, false if its key was already in the BST
      */ 
-    public void insertNode(Node z);
+    public boolean insertNode(Node z);
 
     /**
      * Updates an existing Node in the BST.
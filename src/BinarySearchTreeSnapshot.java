@@ -0,0 +1,383 @@
+/**
+ * A compact binary format for saving, loading and shipping whole trees, much
+ * smaller and faster than the "key path" text produced by
+ * preOrderWalk(x, "", list).
+ *
+ * A snapshot of n Nodes holds:
+ * - a header: magic, version, flags and n (varint)
+ * - the shape, as 2n bits of balanced parentheses: walking in pre-order, each
+ * Node opens a "(" when it is reached and closes it with a ")" once its left
+ * subtree is done, before its right subtree starts (the parentheses of the
+ * first-child / next-sibling forest of the binary tree)
+ * - for red-black trees only, one color bit per Node in pre-order
+ * - the keys in pre-order, each written as the zigzag varint of its difference
+ * from the previous key
+ * - optionally the data of each Node in pre-order, tagged as null, String (UTF-8),
+ * byte[], Integer, Long, Double or Boolean
+ *
+ * Snapshots are meant to be shipped between processes, so only these explicit
+ * encodings are read back: no Java serialization, which would let a crafted
+ * snapshot create arbitrary objects. The loader also refuses a snapshot whose
+ * keys are not in search tree order.
+ *
+ * Both the writer and the loader work without recursion. The loader links each
+ * Node to its parent as it is read, and fills in subtree sizes and heights as
+ * each run of siblings closes, so the loaded tree is ready for every variant.
+ */
+public final class BinarySearchTreeSnapshot {
+    private static final int MAGIC = 0x42535453; // "BSTS"
+    private static final int VERSION = 1;
+
+    private static final int FLAG_DATA = 1;
+    private static final int FLAG_COLORS = 2;
+
+    static final byte DATA_NULL = 0;
+    static final byte DATA_STRING = 1;
+    static final byte DATA_BYTES = 2;
+    static final byte DATA_INT = 3;
+    static final byte DATA_LONG = 4;
+    static final byte DATA_DOUBLE = 5;
+    static final byte DATA_BOOLEAN = 6;
+
+    private BinarySearchTreeSnapshot() {
+    }
+
+    /**
+     * Writes a snapshot of a whole tree.
+     *
+     * @param vural_BinarySearchTree tree - the tree to save.
+     * @param java.io.OutputStream   out - specifies where the snapshot is written,
+     *                               it is buffered here and flushed, not closed.
+     * @param boolean                withData - whether the internal data of the
+     *                               Nodes is saved too.
+     *
+     * @throws java.io.IOException if the output cannot be written, or the subtree
+     *                             sizes of the tree do not match its Nodes
+     * @throws IllegalArgumentException if some data is not one of the types
+     *                                  writeData knows
+     */
+    public static void write(vural_BinarySearchTree tree, java.io.OutputStream out, boolean withData)
+            throws java.io.IOException {
+        Node root = tree.getRoot();
+        int n = tree.size();
+        boolean colors = tree instanceof RedBlackBinarySearchTree;
+
+        // shape and colors, both as bit strings, sized from the root's subtree size
+        // which is checked against the Nodes really found
+        byte[] shape = new byte[(2 * n + 7) / 8];
+        byte[] color = new byte[colors ? (n + 7) / 8 : 0];
+        int bit = 0;
+        int pre = 0;
+        Node x = root;
+        Node prev = null;
+        while (x != null) {
+            if (prev == x.getParent()) {
+                if (pre == n) {
+                    throw new java.io.IOException("the tree holds more Nodes than its size " + n);
+                }
+                shape[bit >> 3] |= 0x80 >>> (bit & 7); // "(" on the way down
+                bit++;
+                if (colors && x.isRed()) {
+                    color[pre >> 3] |= 0x80 >>> (pre & 7);
+                }
+                pre++;
+                if (x.getLeft() != null) {
+                    prev = x;
+                    x = x.getLeft();
+                    continue;
+                }
+            }
+            if (prev == x.getParent() || prev == x.getLeft()) {
+                bit++; // ")" once the left subtree is done, zero bits are already there
+                if (x.getRight() != null) {
+                    prev = x;
+                    x = x.getRight();
+                    continue;
+                }
+            }
+            prev = x;
+            x = x.getParent();
+        }
+        if (pre != n) {
+            throw new java.io.IOException("the tree holds " + pre + " Nodes, not its size " + n);
+        }
+
+        java.io.DataOutputStream data = new java.io.DataOutputStream(new java.io.BufferedOutputStream(out, 1 << 16));
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeByte((withData ? FLAG_DATA : 0) | (colors ? FLAG_COLORS : 0));
+        writeVarint(data, n);
+        data.write(shape);
+        data.write(color);
+
+        // keys, then data, in pre-order
+        try {
+            long[] last = new long[1];
+            tree.preOrderWalk(root, (key, node, depth) -> {
+                try {
+                    long delta = (long) key - last[0];
+                    writeVarint(data, (delta << 1) ^ (delta >> 63));
+                    last[0] = key;
+                } catch (java.io.IOException e) {
+                    throw new java.io.UncheckedIOException(e);
+                }
+            });
+            if (withData) {
+                tree.preOrderWalk(root, (key, node, depth) -> {
+                    try {
+                        writeData(data, node.getData());
+                    } catch (java.io.IOException e) {
+                        throw new java.io.UncheckedIOException(e);
+                    }
+                });
+            }
+        } catch (java.io.UncheckedIOException e) {
+            throw e.getCause();
+        }
+        data.flush();
+    }
+
+    /**
+     * Loads a snapshot into a tree, replacing whatever it held.
+     *
+     * @param java.io.InputStream    in - specifies where the snapshot is read from.
+     *                               It is buffered here, so it may be read past
+     *                               the end of the snapshot, and it is not closed.
+     * @param vural_BinarySearchTree tree - the tree to fill, of any kind; a
+     *                               red-black tree can only be loaded from a
+     *                               snapshot of a red-black tree.
+     *
+     * @throws java.io.IOException if the input cannot be read or is not a valid
+     *                             snapshot, including one whose keys are not in
+     *                             search tree order
+     */
+    public static void read(java.io.InputStream in, vural_BinarySearchTree tree) throws java.io.IOException {
+        java.io.DataInputStream data = new java.io.DataInputStream(new java.io.BufferedInputStream(in, 1 << 16));
+        if (data.readInt() != MAGIC || data.readByte() != VERSION) {
+            throw new java.io.IOException("not a tree snapshot");
+        }
+        int flags = data.readByte();
+        long count = readVarint(data);
+        if (count < 0 || count > Integer.MAX_VALUE / 2) {
+            throw new java.io.IOException("bad snapshot size " + count);
+        }
+        int n = (int) count;
+        boolean colors = (flags & FLAG_COLORS) != 0;
+        if (tree instanceof RedBlackBinarySearchTree && !colors) {
+            throw new java.io.IOException("a red-black tree needs a snapshot of a red-black tree");
+        }
+
+        byte[] shape = new byte[(2 * n + 7) / 8];
+        data.readFully(shape);
+        byte[] color = new byte[colors ? (n + 7) / 8 : 0];
+        data.readFully(color);
+
+        // create the Nodes in pre-order and link them as the parentheses say
+        Node[] open = new Node[16]; // Nodes whose ")" has not been read yet
+        int depth = 0;
+        Node root = null;
+        Node closed = null; // the Node whose ")" was read last, if nothing opened since
+        long last = 0;
+        long inOrder = Long.MIN_VALUE; // key of the last Node closed, the ")" come in in-order
+        int pre = 0;
+        for (int bit = 0; bit < 2 * n; bit++) {
+            if ((shape[bit >> 3] & (0x80 >>> (bit & 7))) != 0) {
+                if (pre == n) {
+                    throw new java.io.IOException("snapshot shape holds more than " + n + " Nodes");
+                }
+                long zigzag = readVarint(data);
+                last += (zigzag >>> 1) ^ -(zigzag & 1);
+                if (last < Integer.MIN_VALUE || last > Integer.MAX_VALUE) {
+                    throw new java.io.IOException("snapshot key " + last + " is not an int");
+                }
+                Node x = new Node((int) last);
+                x.setRed(colors && (color[pre >> 3] & (0x80 >>> (pre & 7))) != 0);
+                pre++;
+
+                if (closed != null) {
+                    closed.setRight(x); // the next sibling of a closed Node is its right child
+                    x.setParent(closed);
+                }
+                else if (depth > 0) {
+                    open[depth - 1].setLeft(x); // the first child of an open Node is its left child
+                    x.setParent(open[depth - 1]);
+                }
+                else if (root == null) {
+                    root = x;
+                }
+                else {
+                    throw new java.io.IOException("snapshot shape is not a single tree");
+                }
+                if (depth == open.length) {
+                    open = java.util.Arrays.copyOf(open, depth * 2);
+                }
+                open[depth++] = x;
+                closed = null;
+            }
+            else {
+                if (depth == 0) {
+                    throw new java.io.IOException("snapshot shape closes more than it opens");
+                }
+                Node x = open[--depth];
+                if (x.getKey() <= inOrder) {
+                    throw new java.io.IOException("snapshot key " + x.getKey() + " is out of search tree order");
+                }
+                inOrder = x.getKey();
+                finishChildren(x.getLeft());
+                closed = x;
+            }
+        }
+        if (depth != 0 || pre != n) {
+            throw new java.io.IOException("snapshot shape is not balanced");
+        }
+        finishChildren(root);
+
+        if ((flags & FLAG_DATA) != 0) {
+            try {
+                tree.preOrderWalk(root, (key, node, d) -> {
+                    try {
+                        node.setData(readData(data));
+                    } catch (java.io.IOException e) {
+                        throw new java.io.UncheckedIOException(e);
+                    }
+                });
+            } catch (java.io.UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        tree.setRoot(root);
+    }
+
+    /**
+     * Sets the size and height of every Node in a run of siblings x, x.right,
+     * x.right.right, ... once all of them are closed. Their left subtrees were
+     * finished when each of them closed, so the run is done back to front.
+     */
+    private static void finishChildren(Node x) {
+        if (x == null) {
+            return;
+        }
+        Node tail = x;
+        while (tail.getRight() != null) {
+            tail = tail.getRight();
+        }
+        for (Node y = tail; ; y = y.getParent()) {
+            Node l = y.getLeft();
+            Node r = y.getRight();
+            y.setSize((l == null ? 0 : l.getSize()) + (r == null ? 0 : r.getSize()) + 1);
+            y.setHeight(Math.max(l == null ? -1 : l.getHeight(), r == null ? -1 : r.getHeight()) + 1);
+            if (y == x) {
+                return;
+            }
+        }
+    }
+
+    private static void writeVarint(java.io.DataOutputStream out, long v) throws java.io.IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) (v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    private static long readVarint(java.io.DataInputStream in) throws java.io.IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new java.io.IOException("varint is too long");
+    }
+
+    /**
+     * Writes some internal data with a one byte tag: null, a String (UTF-8), a
+     * byte[], an Integer, a Long, a Double or a Boolean.
+     *
+     * @param java.io.DataOutputStream out - specifies where the data is written.
+     * @param Object                   data - the data to write (may be null).
+     *
+     * @throws java.io.IOException if the output cannot be written
+     * @throws IllegalArgumentException if the data cannot be written
+     */
+    static void writeData(java.io.DataOutputStream out, Object data) throws java.io.IOException {
+        if (data == null) {
+            out.writeByte(DATA_NULL);
+        }
+        else if (data instanceof String) {
+            byte[] bytes = ((String) data).getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            out.writeByte(DATA_STRING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        else if (data instanceof byte[]) {
+            byte[] bytes = (byte[]) data;
+            out.writeByte(DATA_BYTES);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        else if (data instanceof Integer) {
+            out.writeByte(DATA_INT);
+            out.writeInt((Integer) data);
+        }
+        else if (data instanceof Long) {
+            out.writeByte(DATA_LONG);
+            out.writeLong((Long) data);
+        }
+        else if (data instanceof Double) {
+            out.writeByte(DATA_DOUBLE);
+            out.writeDouble((Double) data);
+        }
+        else if (data instanceof Boolean) {
+            out.writeByte(DATA_BOOLEAN);
+            out.writeBoolean((Boolean) data);
+        }
+        else {
+            throw new IllegalArgumentException("cannot write data of " + data.getClass().getName()
+                    + ", it must be a String, a byte[], an Integer, a Long, a Double or a Boolean");
+        }
+    }
+
+    /**
+     * Reads internal data written by writeData.
+     *
+     * @param java.io.DataInputStream in - specifies where the data is read from.
+     *
+     * @return the data (may be null)
+     *
+     * @throws java.io.IOException if the input cannot be read or is not valid
+     */
+    static Object readData(java.io.DataInputStream in) throws java.io.IOException {
+        byte tag = in.readByte();
+        if (tag == DATA_NULL) {
+            return null;
+        }
+        if (tag == DATA_INT) {
+            return in.readInt();
+        }
+        if (tag == DATA_LONG) {
+            return in.readLong();
+        }
+        if (tag == DATA_DOUBLE) {
+            return in.readDouble();
+        }
+        if (tag == DATA_BOOLEAN) {
+            return in.readBoolean();
+        }
+        if (tag != DATA_STRING && tag != DATA_BYTES) {
+            throw new java.io.IOException("unknown data tag " + tag);
+        }
+        int length = in.readInt();
+        if (length < 0) {
+            throw new java.io.IOException("bad data length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        if (tag == DATA_STRING) {
+            return new String(bytes, java.nio.charset.StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,537 @@
+/**
+ * A Binary Search Tree which survives a crash: every change is written to a
+ * write-ahead log file before the call that made it returns.
+ *
+ * insertNode, updateNode and deleteNode change the in-memory tree and append a
+ * small binary record to the log. Durability is group committed: the caller
+ * that finds no flush running writes every record appended so far in one write
+ * and one fsync, while the callers whose records went out in that batch simply
+ * wait for it. Under load many changes therefore share a single fsync.
+ *
+ * Once the log grows past checkpointBytes the whole tree is written, in key
+ * order, to a checkpoint file (next to the log, with ".checkpoint" appended to
+ * its name), and the log is emptied. checkpoint() does the same on demand.
+ * An automatic checkpoint which fails is logged with java.util.logging and
+ * retried at the next commit; the change which triggered it is durable in the
+ * log and its call still succeeds. Only a failure to empty the log after a
+ * checkpoint stops further changes.
+ *
+ * A failure to write or fsync the log is permanent: every call whose record was
+ * in the failed batch, or waiting behind it, throws, and so does every change
+ * after it. The in-memory tree keeps the changes of those calls, so from then on
+ * it may hold changes which are not durable; reopen the tree from its files to
+ * get back to what is.
+ *
+ * Opening the tree recovers it: the checkpoint is read as a sorted run of keys,
+ * the log is replayed on top of it into a map of changed keys, and the two are
+ * merged into one sorted array which is loaded with bulkLoad in O(n), instead of
+ * calling insertNode once per key. A record torn by the crash (short, or failing
+ * its checksum) ends the replay and is cut off the log.
+ *
+ * Log record: int length, then the body (byte op, int key, data), then an int
+ * CRC32 of the body. Data is written the same way as in BinarySearchTreeSnapshot:
+ * null, a String (UTF-8), a byte[], an Integer, a Long, a Double or a Boolean.
+ *
+ * All methods are thread safe.
+ */
+public class DurableBinarySearchTree implements java.io.Closeable {
+    /**
+     * Default log size at which a checkpoint is taken, 64 MiB.
+     */
+    public static final long DEFAULT_CHECKPOINT_BYTES = 64L << 20;
+
+    private static final byte OP_INSERT = 1;
+    private static final byte OP_UPDATE = 2;
+    private static final byte OP_DELETE = 3;
+
+    private static final int CHECKPOINT_MAGIC = 0x42535443; // "BSTC"
+    private static final Object DELETED = new Object(); // marks a deleted key during replay
+    private static final java.util.logging.Logger LOG =
+            java.util.logging.Logger.getLogger(DurableBinarySearchTree.class.getName());
+
+    private final vural_BinarySearchTree tree;
+    private final java.nio.file.Path logPath;
+    private final java.nio.file.Path checkpointPath;
+    private final java.nio.channels.FileChannel log;
+    private final long checkpointBytes;
+
+    // guarded by this: the tree, and the records appended but not yet written
+    private java.io.ByteArrayOutputStream pending = new java.io.ByteArrayOutputStream(1 << 12);
+    private java.io.ByteArrayOutputStream spare = new java.io.ByteArrayOutputStream(1 << 12);
+    private long appended; // number of records appended so far
+
+    // guarded by flushLock: who is flushing, and how far the log is durable
+    private final Object flushLock = new Object();
+    private boolean flushing;
+    private long durable; // number of records known to be on disk
+    private java.io.IOException failure; // set once a write to the log failed
+
+    /**
+     * Opens (recovering if it exists) a red-black tree logged to the specified
+     * file, checkpointing every DEFAULT_CHECKPOINT_BYTES of log.
+     *
+     * @param String logFile - specifies the log file.
+     *
+     * @throws java.io.IOException if the log or checkpoint cannot be read
+     */
+    public DurableBinarySearchTree(String logFile) throws java.io.IOException {
+        this(logFile, new RedBlackBinarySearchTree(), DEFAULT_CHECKPOINT_BYTES);
+    }
+
+    /**
+     * Opens (recovering if it exists) a tree logged to the specified file.
+     *
+     * @param String                 logFile - specifies the log file.
+     * @param vural_BinarySearchTree tree - an empty tree of the kind to use, which
+     *                               recovery loads and which must not be used
+     *                               directly afterwards.
+     * @param long                   checkpointBytes - the log size at which a
+     *                               checkpoint is taken.
+     *
+     * @throws java.io.IOException if the log or checkpoint cannot be read
+     */
+    public DurableBinarySearchTree(String logFile, vural_BinarySearchTree tree, long checkpointBytes)
+            throws java.io.IOException {
+        this(logFile, tree, checkpointBytes, java.nio.channels.FileChannel.open(java.nio.file.Paths.get(logFile),
+                java.nio.file.StandardOpenOption.READ,
+                java.nio.file.StandardOpenOption.WRITE,
+                java.nio.file.StandardOpenOption.CREATE));
+    }
+
+    /**
+     * Recovers a tree from a log which is already open, closing the log if that
+     * fails. The tests use it to hand in a log whose writes can be made to fail.
+     */
+    DurableBinarySearchTree(String logFile, vural_BinarySearchTree tree, long checkpointBytes,
+            java.nio.channels.FileChannel log) throws java.io.IOException {
+        this.tree = tree;
+        this.logPath = java.nio.file.Paths.get(logFile);
+        this.checkpointPath = java.nio.file.Paths.get(logFile + ".checkpoint");
+        this.checkpointBytes = checkpointBytes;
+        this.log = log;
+        try {
+            recover();
+        } catch (java.io.IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Inserts a Node's key and data into the tree, returning once the change is
+     * durable.
+     * If the key is already in the tree, then the tree is left unchanged.
+     *
+     * @param Node z - specifies the key and data to be added. The tree keeps its own
+     *             Node, z itself is not linked in.
+     *
+     * @return true if the key was added, false if it was already in the tree
+     *
+     * @throws java.io.IOException if the log cannot be written
+     */
+    public boolean insertNode(Node z) throws java.io.IOException {
+        byte[] record = encode(OP_INSERT, z.getKey(), z.getData());
+        long seq;
+        synchronized (this) {
+            checkFailure();
+            if (!tree.insertNode(new Node(z.getKey(), z.getData()))) {
+                return false;
+            }
+            seq = append(record);
+        }
+        commit(seq);
+        return true;
+    }
+
+    /**
+     * Replaces the data held with an existing key, returning once the change is
+     * durable.
+     * If there is no such key in the tree, then this update is ignored.
+     *
+     * @param Node z - specifies the key to update and its new data.
+     *
+     * @throws java.io.IOException if the log cannot be written
+     */
+    public void updateNode(Node z) throws java.io.IOException {
+        byte[] record = encode(OP_UPDATE, z.getKey(), z.getData());
+        long seq;
+        synchronized (this) {
+            checkFailure();
+            Node x = tree.getNode(tree.getRoot(), z.getKey());
+            if (x == null) {
+                return;
+            }
+            x.setData(z.getData());
+            seq = append(record);
+        }
+        commit(seq);
+    }
+
+    /**
+     * Attempts to find and delete a key from the tree, returning once the change
+     * is durable.
+     * If the key cannot be found, then the tree is left unchanged.
+     *
+     * @param int key - the key to be removed.
+     *
+     * @return true if the key was removed, false if it was not in the tree
+     *
+     * @throws java.io.IOException if the log cannot be written
+     */
+    public boolean deleteNode(int key) throws java.io.IOException {
+        byte[] record = encode(OP_DELETE, key, null);
+        long seq;
+        synchronized (this) {
+            checkFailure();
+            Node x = tree.getNode(tree.getRoot(), key);
+            if (x == null) {
+                return false;
+            }
+            tree.deleteNode(x);
+            seq = append(record);
+        }
+        commit(seq);
+        return true;
+    }
+
+    /**
+     * Attempts to find the key in the tree.
+     *
+     * @param int key - the key value we are looking for.
+     *
+     * @return a detached Node holding the key and its data (null if not found)
+     */
+    public synchronized Node getNode(int key) {
+        Node x = tree.getNode(tree.getRoot(), key);
+        return x == null ? null : new Node(x.getKey(), x.getData());
+    }
+
+    /**
+     * Returns the number of keys in the tree.
+     *
+     * @return the number of keys
+     */
+    public synchronized int size() {
+        return tree.size();
+    }
+
+    /**
+     * Visits every Node in ascending key order, while holding the tree's lock.
+     * The visitor must not keep or change the Nodes it is given.
+     *
+     * @param java.util.function.Consumer<Node> visitor - called once per Node.
+     */
+    public synchronized void inOrderWalk(java.util.function.Consumer<Node> visitor) {
+        for (Node x : tree) {
+            visitor.accept(x);
+        }
+    }
+
+    /**
+     * Writes the whole tree to the checkpoint file and empties the log.
+     * Changes wait while the checkpoint is written.
+     *
+     * @throws java.io.IOException if the checkpoint or log cannot be written
+     */
+    public void checkpoint() throws java.io.IOException {
+        lead();
+        long upTo = 0;
+        try {
+            synchronized (this) {
+                checkFailure();
+                writeCheckpoint(); // leaves the log untouched if it fails
+                // every record so far is in the checkpoint, written or not
+                try {
+                    log.truncate(0);
+                    log.force(true);
+                } catch (java.io.IOException e) {
+                    fail(e);
+                    throw e;
+                }
+                pending.reset();
+                upTo = appended;
+            }
+        } finally {
+            release(upTo);
+        }
+    }
+
+    /**
+     * Flushes anything still pending and closes the log.
+     *
+     * @throws java.io.IOException if the log cannot be written or closed
+     */
+    @Override
+    public void close() throws java.io.IOException {
+        long seq;
+        synchronized (this) {
+            seq = appended;
+        }
+        try {
+            commit(seq);
+        } finally {
+            log.close();
+        }
+    }
+
+    private void checkFailure() throws java.io.IOException {
+        synchronized (flushLock) {
+            if (failure != null) {
+                throw new java.io.IOException("the log failed earlier, no more changes are accepted", failure);
+            }
+        }
+    }
+
+    /**
+     * Encodes one log record, done before taking any lock so that data which
+     * cannot be logged is refused before the tree changes.
+     */
+    private static byte[] encode(byte op, int key, Object data) throws java.io.IOException {
+        java.io.ByteArrayOutputStream body = new java.io.ByteArrayOutputStream(16);
+        java.io.DataOutputStream out = new java.io.DataOutputStream(body);
+        out.writeInt(0); // length, filled in below
+        out.writeByte(op);
+        out.writeInt(key);
+        if (op != OP_DELETE) {
+            BinarySearchTreeSnapshot.writeData(out, data);
+        }
+        out.writeInt(0); // checksum, filled in below
+
+        byte[] record = body.toByteArray();
+        int length = record.length - 8;
+        java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+        crc.update(record, 4, length);
+        java.nio.ByteBuffer.wrap(record).putInt(0, length).putInt(4 + length, (int) crc.getValue());
+        return record;
+    }
+
+    /**
+     * Adds an encoded record to the pending buffer. The caller holds this.
+     *
+     * @return the sequence number of the record
+     */
+    private long append(byte[] record) {
+        pending.write(record, 0, record.length);
+        return ++appended;
+    }
+
+    /**
+     * Returns once record seq is on disk, flushing the pending records ourselves if
+     * nobody else is doing it already.
+     */
+    private void commit(long seq) throws java.io.IOException {
+        while (true) {
+            synchronized (flushLock) {
+                while (flushing && durable < seq && failure == null) {
+                    waitForFlush();
+                }
+                if (durable >= seq) {
+                    return;
+                }
+                if (failure != null) {
+                    throw new java.io.IOException("the log could not be written", failure);
+                }
+                flushing = true;
+            }
+
+            // we lead this batch: everything appended so far goes out in one fsync
+            long upTo = 0; // stays 0 unless the fsync succeeds, so waiters see the failure
+            boolean checkpointDue = false;
+            try {
+                java.io.ByteArrayOutputStream batch;
+                long batchEnd;
+                synchronized (this) {
+                    batch = pending;
+                    pending = spare;
+                    spare = batch;
+                    batchEnd = appended;
+                }
+                java.nio.ByteBuffer bytes = java.nio.ByteBuffer.wrap(batch.toByteArray());
+                while (bytes.hasRemaining()) {
+                    log.write(bytes, log.size());
+                }
+                log.force(false);
+                upTo = batchEnd;
+                batch.reset();
+                checkpointDue = log.size() >= checkpointBytes;
+            } catch (java.io.IOException e) {
+                fail(e);
+                throw e;
+            } finally {
+                release(upTo);
+            }
+            if (checkpointDue) {
+                // our record is durable already, so a failed checkpoint is not our failure
+                try {
+                    checkpoint();
+                } catch (java.io.IOException e) {
+                    LOG.log(java.util.logging.Level.WARNING, "could not checkpoint " + logPath, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until nobody is flushing, then takes the flushing role.
+     */
+    private void lead() throws java.io.IOException {
+        synchronized (flushLock) {
+            while (flushing) {
+                waitForFlush();
+            }
+            flushing = true;
+        }
+    }
+
+    /**
+     * Gives up the flushing role, recording that the first upTo records are
+     * durable (0 if nothing new is).
+     */
+    private void release(long upTo) {
+        synchronized (flushLock) {
+            flushing = false;
+            durable = Math.max(durable, upTo);
+            flushLock.notifyAll();
+        }
+    }
+
+    private void fail(java.io.IOException e) {
+        synchronized (flushLock) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+    }
+
+    private void waitForFlush() throws java.io.IOException {
+        try {
+            flushLock.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new java.io.InterruptedIOException("interrupted while waiting for the log");
+        }
+    }
+
+    /**
+     * Writes the tree to a temporary file, forces it, then moves it over the old
+     * checkpoint, so that a crash leaves either the old or the new checkpoint.
+     */
+    private void writeCheckpoint() throws java.io.IOException {
+        java.nio.file.Path temp = java.nio.file.Paths.get(checkpointPath + ".tmp");
+        try (java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(temp,
+                java.nio.file.StandardOpenOption.WRITE,
+                java.nio.file.StandardOpenOption.CREATE,
+                java.nio.file.StandardOpenOption.TRUNCATE_EXISTING)) {
+            java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+            java.io.DataOutputStream out = new java.io.DataOutputStream(new java.util.zip.CheckedOutputStream(
+                    new java.io.BufferedOutputStream(java.nio.channels.Channels.newOutputStream(channel), 1 << 16), crc));
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeInt(tree.size());
+            for (Node x : tree) {
+                out.writeInt(x.getKey());
+                BinarySearchTreeSnapshot.writeData(out, x.getData());
+            }
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            channel.force(true);
+        }
+        java.nio.file.Files.move(temp, checkpointPath,
+                java.nio.file.StandardCopyOption.REPLACE_EXISTING,
+                java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Rebuilds the tree from the checkpoint and the log, then cuts off any torn
+     * record at the end of the log.
+     */
+    private void recover() throws java.io.IOException {
+        int[] keys = new int[0];
+        Object[] data = new Object[0];
+
+        if (java.nio.file.Files.exists(checkpointPath)) {
+            java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+            try (java.io.DataInputStream in = new java.io.DataInputStream(new java.util.zip.CheckedInputStream(
+                    new java.io.BufferedInputStream(java.nio.file.Files.newInputStream(checkpointPath), 1 << 16), crc))) {
+                if (in.readInt() != CHECKPOINT_MAGIC) {
+                    throw new java.io.IOException(checkpointPath + " is not a checkpoint file");
+                }
+                int n = in.readInt();
+                keys = new int[n];
+                data = new Object[n];
+                for (int i = 0; i < n; i++) {
+                    keys[i] = in.readInt();
+                    data[i] = BinarySearchTreeSnapshot.readData(in);
+                }
+                int expected = (int) crc.getValue();
+                if (in.readInt() != expected) {
+                    throw new java.io.IOException(checkpointPath + " is corrupt");
+                }
+            }
+        }
+
+        // replay the log into the keys it changed, the last change of a key wins
+        java.util.HashMap<Integer, Object> changes = new java.util.HashMap<>();
+        long good = 0; // end of the last whole record
+        java.io.DataInputStream in = new java.io.DataInputStream(new java.io.BufferedInputStream(
+                java.nio.channels.Channels.newInputStream(log.position(0)), 1 << 16));
+        long size = log.size();
+        while (good + 8 <= size) {
+            int length = in.readInt();
+            if (length <= 0 || good + 8 + length > size) {
+                break;
+            }
+            byte[] body = new byte[length];
+            in.readFully(body);
+            int stored = in.readInt();
+            java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+            crc.update(body, 0, length);
+            if (stored != (int) crc.getValue()) {
+                break;
+            }
+
+            java.io.DataInputStream record = new java.io.DataInputStream(new java.io.ByteArrayInputStream(body));
+            byte op = record.readByte();
+            int key = record.readInt();
+            changes.put(key, op == OP_DELETE ? DELETED : BinarySearchTreeSnapshot.readData(record));
+            good += 8 + length;
+            appended++;
+        }
+        if (good < size) {
+            log.truncate(good);
+            log.force(true);
+        }
+        durable = appended;
+
+        // merge the sorted checkpoint with the sorted changed keys
+        int[] changed = new int[changes.size()];
+        int c = 0;
+        for (Integer key : changes.keySet()) {
+            changed[c++] = key;
+        }
+        java.util.Arrays.sort(changed);
+
+        int[] mergedKeys = new int[keys.length + changed.length];
+        Object[] mergedData = new Object[mergedKeys.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < keys.length || j < changed.length) {
+            if (j == changed.length || (i < keys.length && keys[i] < changed[j])) {
+                mergedKeys[n] = keys[i];
+                mergedData[n++] = data[i++];
+                continue;
+            }
+            if (i < keys.length && keys[i] == changed[j]) {
+                i++; // the log has a newer version of this key
+            }
+            Object value = changes.get(changed[j]);
+            if (value != DELETED) {
+                mergedKeys[n] = changed[j];
+                mergedData[n++] = value;
+            }
+            j++;
+        }
+        tree.bulkLoad(java.util.Arrays.copyOf(mergedKeys, n), java.util.Arrays.copyOf(mergedData, n));
+        log.position(good);
+    }
+}
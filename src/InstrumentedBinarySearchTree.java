@@ -0,0 +1,762 @@
+/**
+ * A facade around any of our BSTs which measures what the tree is doing: for
+ * every operation how often it ran, how long it took and how many Nodes it
+ * visited, next to the current size and height of the tree.
+ *
+ * - counts, latency sums and nodes visited are kept in LongAdders, which
+ * stripe their updates over several cells under contention, so threads
+ * measuring at the same time (eg around a StampedBinarySearchTree) do not
+ * serialize on a shared counter
+ * - latencies also go into a histogram in the style of HdrHistogram: values
+ * below 128ns get a bucket each, above that every power of two is split in 64
+ * buckets, so percentiles are within 2% of the true value from nanoseconds
+ * to hours. A bucket's LongAdder is only created the first time it is hit.
+ * - nodes visited is the length of the search path, which this class counts
+ * again itself (before the call for the writes, after it for the reads), so
+ * measuring costs about one more search per operation. Walks and getHeight
+ * visit the whole subtree.
+ *
+ * The metrics can be read with snapshot, as a text table, or over JMX once
+ * registered (see InstrumentedBinarySearchTreeMBean). The size comes from the
+ * root's subtree size and is O(1); the height takes a walk of the whole tree
+ * (parallelGetHeight, which does not recurse), so it is only measured by
+ * measureHeight, at most once per HEIGHT_CACHE_NANOS, and snapshot shows the
+ * last height measured.
+ *
+ * While disabled (setEnabled(false)) every method is a single volatile read
+ * and a call to the tree, and nothing is measured.
+ *
+ * This class is as thread safe as the tree it wraps.
+ */
+public class InstrumentedBinarySearchTree implements BinarySearchTreeFunctions, InstrumentedBinarySearchTreeMBean {
+    private static final int INSERT = 0;
+    private static final int UPDATE = 1;
+    private static final int DELETE = 2;
+    private static final int GET = 3;
+    private static final int MIN = 4;
+    private static final int MAX = 5;
+    private static final int SUCCESSOR = 6;
+    private static final int PREDECESSOR = 7;
+    private static final int HEIGHT = 8;
+    private static final int PRE_ORDER = 9;
+    private static final int IN_ORDER = 10;
+    private static final int POST_ORDER = 11;
+    private static final int SHIFT = 12;
+
+    private static final String[] OPERATIONS = { "insertNode", "updateNode", "deleteNode", "getNode", "getMin",
+            "getMax", "getSuccessor", "getPredecessor", "getHeight", "preOrderWalk", "inOrderWalk",
+            "postOrderWalk", "shiftNode" };
+
+    private static final double[] SNAPSHOT_PERCENTILES = { 50, 90, 99, 99.9 };
+
+    /**
+     * How long a measured height is given out again before the tree is walked
+     * anew, one second.
+     */
+    public static final long HEIGHT_CACHE_NANOS = 1000000000L;
+
+    private final BinarySearchTreeFunctions tree;
+    private final Metrics[] metrics;
+    private volatile boolean enabled = true;
+    private volatile long heightMeasuredAt; // System.nanoTime() of the last walk, 0 if none yet
+    private volatile int height;
+
+    /**
+     * Creates an instrumented, empty vural_BinarySearchTree.
+     */
+    public InstrumentedBinarySearchTree() {
+        this(new vural_BinarySearchTree());
+    }
+
+    /**
+     * Creates a facade measuring an existing tree, which may be any of the variants
+     * or a StampedBinarySearchTree. Changes made to the tree without going through
+     * the facade are not measured, but are seen by size and height.
+     *
+     * @param BinarySearchTreeFunctions tree - the tree to measure.
+     */
+    public InstrumentedBinarySearchTree(BinarySearchTreeFunctions tree) {
+        this.tree = tree;
+        this.metrics = new Metrics[OPERATIONS.length];
+        for (int i = 0; i < metrics.length; i++) {
+            metrics[i] = new Metrics();
+        }
+    }
+
+    /**
+     * Registers the metrics of this tree with the platform MBean server, as
+     * "bst:type=InstrumentedBinarySearchTree,name=" followed by name.
+     *
+     * @param String name - names this tree among the others registered.
+     *
+     * @return the ObjectName it was registered under
+     *
+     * @throws javax.management.JMException if the name is taken or not valid
+     */
+    public javax.management.ObjectName register(String name) throws javax.management.JMException {
+        javax.management.ObjectName objectName = new javax.management.ObjectName(
+                "bst:type=InstrumentedBinarySearchTree,name=" + javax.management.ObjectName.quote(name));
+        java.lang.management.ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    /**
+     * Removes the metrics registered under name from the platform MBean server.
+     *
+     * @param String name - the name given to register.
+     *
+     * @throws javax.management.JMException if nothing is registered under it
+     */
+    public void unregister(String name) throws javax.management.JMException {
+        java.lang.management.ManagementFactory.getPlatformMBeanServer().unregisterMBean(new javax.management.ObjectName(
+                "bst:type=InstrumentedBinarySearchTree,name=" + javax.management.ObjectName.quote(name)));
+    }
+
+    /**
+     * @return true while operations are being measured
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts or stops measuring operations. What was measured so far is kept.
+     *
+     * @param boolean enabled - true to measure operations.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return the number of Nodes in the tree
+     */
+    public int getSize() {
+        Node root = tree.getRoot();
+        return root == null ? 0 : root.getSize();
+    }
+
+    /**
+     * Returns the height of the tree, walking it at most once per
+     * HEIGHT_CACHE_NANOS. The walk does not recurse, so a degenerate tree cannot
+     * overflow the stack.
+     *
+     * @return the height of the tree (-1 if it is empty), up to HEIGHT_CACHE_NANOS
+     *         old
+     */
+    public int measureHeight() {
+        long now = System.nanoTime();
+        long at = heightMeasuredAt;
+        if (at != 0 && now - at < HEIGHT_CACHE_NANOS) {
+            return height;
+        }
+        Node root = tree.getRoot();
+        int h;
+        if (tree instanceof vural_BinarySearchTree) {
+            h = ((vural_BinarySearchTree) tree).parallelGetHeight(root);
+        }
+        else if (tree instanceof StampedBinarySearchTree) {
+            h = ((StampedBinarySearchTree) tree).parallelGetHeight(root);
+        }
+        else {
+            h = tree.getHeight(root);
+        }
+        height = h;
+        heightMeasuredAt = now == 0 ? 1 : now;
+        return h;
+    }
+
+    /**
+     * @return the names of the operations which are measured
+     */
+    public String[] getOperations() {
+        return OPERATIONS.clone();
+    }
+
+    /**
+     * @return the metrics of every operation as a text table, see snapshot
+     */
+    public String getSnapshot() {
+        return snapshot();
+    }
+
+    /**
+     * @param String operation - the name of an operation, eg "getNode".
+     *
+     * @return how many times the operation was measured
+     *
+     * @throws IllegalArgumentException if there is no such operation
+     */
+    public long getCount(String operation) {
+        return metricsOf(operation).count.sum();
+    }
+
+    /**
+     * @param String operation - the name of an operation, eg "getNode".
+     *
+     * @return the mean latency of the operation in nanoseconds
+     *
+     * @throws IllegalArgumentException if there is no such operation
+     */
+    public double getMeanNanos(String operation) {
+        Metrics m = metricsOf(operation);
+        long count = m.count.sum();
+        return count == 0 ? 0 : (double) m.nanos.sum() / count;
+    }
+
+    /**
+     * @param String operation  - the name of an operation, eg "getNode".
+     * @param double percentile - between 0 and 100, eg 99.9.
+     *
+     * @return the latency in nanoseconds which that percentage of the calls
+     *         did not exceed, to within 2%
+     *
+     * @throws IllegalArgumentException if there is no such operation
+     */
+    public long getPercentileNanos(String operation, double percentile) {
+        return metricsOf(operation).percentile(percentile);
+    }
+
+    /**
+     * @param String operation - the name of an operation, eg "getNode".
+     *
+     * @return the highest latency of the operation in nanoseconds
+     *
+     * @throws IllegalArgumentException if there is no such operation
+     */
+    public long getMaxNanos(String operation) {
+        return metricsOf(operation).max.get();
+    }
+
+    /**
+     * @param String operation - the name of an operation, eg "getNode".
+     *
+     * @return the mean number of Nodes the operation visited
+     *
+     * @throws IllegalArgumentException if there is no such operation
+     */
+    public double getMeanNodesVisited(String operation) {
+        Metrics m = metricsOf(operation);
+        long count = m.count.sum();
+        return count == 0 ? 0 : (double) m.visited.sum() / count;
+    }
+
+    /**
+     * Forgets everything measured so far. Operations measured while this runs may
+     * be partly forgotten.
+     */
+    public void reset() {
+        for (Metrics m : metrics) {
+            m.reset();
+        }
+    }
+
+    /**
+     * Returns the metrics as a text table, one line per operation which ran, eg:
+     *
+     * <pre>
+     * size 31, height 5 (measured 120 ms ago)
+     * operation          count     mean      p50      p90      p99    p99.9      max  visited
+     * getNode           100000       61       57       80      113      423    10235      5.1
+     * </pre>
+     *
+     * Latencies are in nanoseconds and visited is the mean number of Nodes
+     * visited. The height is the one the last call to measureHeight found, with
+     * its age: the table is polled as an attribute over JMX, so it must not walk
+     * the tree itself. The counters are read one after the other while
+     * operations may still be running, so a line is not an atomic picture.
+     *
+     * @return the table
+     */
+    public String snapshot() {
+        StringBuilder out = new StringBuilder();
+        long at = heightMeasuredAt;
+        if (at == 0) {
+            out.append(String.format("size %d, height not measured yet%n", getSize()));
+        }
+        else {
+            out.append(String.format("size %d, height %d (measured %d ms ago)%n", getSize(), height,
+                    (System.nanoTime() - at) / 1000000));
+        }
+        out.append(String.format("%-14s %10s %8s %8s %8s %8s %8s %8s %8s%n", "operation", "count", "mean", "p50",
+                "p90", "p99", "p99.9", "max", "visited"));
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            Metrics m = metrics[i];
+            long count = m.count.sum();
+            if (count == 0) {
+                continue;
+            }
+            out.append(String.format("%-14s %10d %8d", OPERATIONS[i], count, m.nanos.sum() / count));
+            for (double p : SNAPSHOT_PERCENTILES) {
+                out.append(String.format(" %8d", m.percentile(p)));
+            }
+            out.append(String.format(" %8d %8.1f%n", m.max.get(), (double) m.visited.sum() / count));
+        }
+        return out.toString();
+    }
+
+    private Metrics metricsOf(String operation) {
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            if (OPERATIONS[i].equals(operation)) {
+                return metrics[i];
+            }
+        }
+        throw new IllegalArgumentException("no operation named " + operation);
+    }
+
+    /**
+     * Getter for the root of the tree, not measured.
+     *
+     * @return the root Node
+     */
+    public Node getRoot() {
+        return tree.getRoot();
+    }
+
+    /**
+     * Setter for the root of the tree, not measured.
+     *
+     * @param Node root - specifies the new root Node of the tree.
+     */
+    public void setRoot(Node root) {
+        tree.setRoot(root);
+    }
+
+    /**
+     * Inserts a Node into the tree, measured as "insertNode". Nodes visited is the
+     * search path to z's place, counted before the insert rebalances anything.
+     *
+     * @param Node z - specifies the new Node to be added to the tree.
+     *
+     * @return true if z was added, false if its key was already in the tree
+     */
+    public boolean insertNode(Node z) {
+        if (!enabled) {
+            return tree.insertNode(z);
+        }
+        int visited = searchLength(tree.getRoot(), z.getKey());
+        long start = System.nanoTime();
+        boolean inserted = tree.insertNode(z);
+        metrics[INSERT].record(System.nanoTime() - start, visited);
+        return inserted;
+    }
+
+    /**
+     * Updates the Node with the same key as z, measured as "updateNode".
+     *
+     * @param Node z - specifies the updated state of a Node already in the tree.
+     */
+    public void updateNode(Node z) {
+        if (!enabled) {
+            tree.updateNode(z);
+            return;
+        }
+        int visited = searchLength(tree.getRoot(), z.getKey());
+        long start = System.nanoTime();
+        tree.updateNode(z);
+        metrics[UPDATE].record(System.nanoTime() - start, visited);
+    }
+
+    /**
+     * Deletes a Node from the tree, measured as "deleteNode". Nodes visited is the
+     * search path to z, counted before the delete.
+     *
+     * @param Node z - the node to be found and then removed from the tree.
+     */
+    public void deleteNode(Node z) {
+        if (!enabled || z == null) {
+            tree.deleteNode(z);
+            return;
+        }
+        int visited = searchLength(tree.getRoot(), z.getKey());
+        long start = System.nanoTime();
+        tree.deleteNode(z);
+        metrics[DELETE].record(System.nanoTime() - start, visited);
+    }
+
+    /**
+     * Replaces the subtree rooted at u with the one rooted at v, measured as
+     * "shiftNode" with one Node visited.
+     *
+     * @param Node u - the Node being replaced.
+     * @param Node v - the Node taking its place (may be null).
+     */
+    public void shiftNode(Node u, Node v) {
+        if (!enabled) {
+            tree.shiftNode(u, v);
+            return;
+        }
+        long start = System.nanoTime();
+        tree.shiftNode(u, v);
+        metrics[SHIFT].record(System.nanoTime() - start, 1);
+    }
+
+    /**
+     * Finds the Node, starting from x, which holds the specified key, measured as
+     * "getNode". Nodes visited is the search path, counted after the search.
+     *
+     * @param Node x   - specifies which Node we wish to start from while searching
+     *             for the node.
+     * @param int  key - the key value indicating which Node we are attempting to
+     *             find.
+     *
+     * @return the Node whose key value matches the key we specified (may be null
+     *         if not found)
+     */
+    public Node getNode(Node x, int key) {
+        if (!enabled) {
+            return tree.getNode(x, key);
+        }
+        long start = System.nanoTime();
+        Node found = tree.getNode(x, key);
+        long nanos = System.nanoTime() - start;
+        metrics[GET].record(nanos, searchLength(x, key));
+        return found;
+    }
+
+    /**
+     * Returns the Node with the largest key below x, measured as "getMax".
+     *
+     * @param Node x - specifies which Node we wish to start from.
+     *
+     * @return the maximum descendant of x (which may be x)
+     */
+    public Node getMax(Node x) {
+        if (!enabled) {
+            return tree.getMax(x);
+        }
+        long start = System.nanoTime();
+        Node found = tree.getMax(x);
+        long nanos = System.nanoTime() - start;
+        metrics[MAX].record(nanos, pathLength(found, x));
+        return found;
+    }
+
+    /**
+     * Returns the Node with the smallest key below x, measured as "getMin".
+     *
+     * @param Node x - specifies which Node we wish to start from.
+     *
+     * @return the minimum descendant of x (which may be x)
+     */
+    public Node getMin(Node x) {
+        if (!enabled) {
+            return tree.getMin(x);
+        }
+        long start = System.nanoTime();
+        Node found = tree.getMin(x);
+        long nanos = System.nanoTime() - start;
+        metrics[MIN].record(nanos, pathLength(found, x));
+        return found;
+    }
+
+    /**
+     * Returns the Node holding the next larger key, measured as "getSuccessor".
+     *
+     * @param Node x - specifies which Node we wish to start from.
+     *
+     * @return the successor of x (null if x holds the largest key)
+     */
+    public Node getSuccessor(Node x) {
+        if (!enabled) {
+            return tree.getSuccessor(x);
+        }
+        boolean down = x.getRight() != null; // else the successor is an ancestor (or null)
+        long start = System.nanoTime();
+        Node found = tree.getSuccessor(x);
+        long nanos = System.nanoTime() - start;
+        metrics[SUCCESSOR].record(nanos, down ? pathLength(found, x) : pathLength(x, found));
+        return found;
+    }
+
+    /**
+     * Returns the Node holding the next smaller key, measured as "getPredecessor".
+     *
+     * @param Node x - specifies which Node we wish to start from.
+     *
+     * @return the predecessor of x (null if x holds the smallest key)
+     */
+    public Node getPredecessor(Node x) {
+        if (!enabled) {
+            return tree.getPredecessor(x);
+        }
+        boolean down = x.getLeft() != null; // else the predecessor is an ancestor (or null)
+        long start = System.nanoTime();
+        Node found = tree.getPredecessor(x);
+        long nanos = System.nanoTime() - start;
+        metrics[PREDECESSOR].record(nanos, down ? pathLength(found, x) : pathLength(x, found));
+        return found;
+    }
+
+    /**
+     * Returns the height of the subtree rooted at x with the tree's own getHeight,
+     * measured as "getHeight".
+     *
+     * @param Node x - specifies which Node we wish to start from while determining
+     *             the height.
+     *
+     * @return the height of the subtree (-1 if x is null)
+     */
+    public int getHeight(Node x) {
+        if (!enabled) {
+            return tree.getHeight(x);
+        }
+        long start = System.nanoTime();
+        int height = tree.getHeight(x);
+        metrics[HEIGHT].record(System.nanoTime() - start, sizeOf(x));
+        return height;
+    }
+
+    /**
+     * Prints the subtree rooted at x in pre-order, measured as "preOrderWalk".
+     *
+     * @param Node x - the relative root of the walk.
+     */
+    public void preOrderWalk(Node x) {
+        if (!enabled) {
+            tree.preOrderWalk(x);
+            return;
+        }
+        long start = System.nanoTime();
+        tree.preOrderWalk(x);
+        metrics[PRE_ORDER].record(System.nanoTime() - start, sizeOf(x));
+    }
+
+    /**
+     * Adds the Nodes of the subtree rooted at x to list in pre-order, measured as "preOrderWalk".
+     *
+     * @param Node                        x    - the relative root of the walk.
+     * @param java.util.ArrayList<String> list - a list of Strings that will be
+     *                                         populated in the order the Nodes are
+     *                                         visited.
+     */
+    public void preOrderWalk(Node x, java.util.ArrayList<String> list) {
+        if (!enabled) {
+            tree.preOrderWalk(x, list);
+            return;
+        }
+        long start = System.nanoTime();
+        tree.preOrderWalk(x, list);
+        metrics[PRE_ORDER].record(System.nanoTime() - start, sizeOf(x));
+    }
+
+    /**
+     * Prints the subtree rooted at x in in-order, measured as "inOrderWalk".
+     *
+     * @param Node x - the relative root of the walk.
+     */
+    public void inOrderWalk(Node x) {
+        if (!enabled) {
+            tree.inOrderWalk(x);
+            return;
+        }
+        long start = System.nanoTime();
+        tree.inOrderWalk(x);
+        metrics[IN_ORDER].record(System.nanoTime() - start, sizeOf(x));
+    }
+
+    /**
+     * Adds the Nodes of the subtree rooted at x to list in in-order, measured as "inOrderWalk".
+     *
+     * @param Node                        x    - the relative root of the walk.
+     * @param java.util.ArrayList<String> list - a list of Strings that will be
+     *                                         populated in the order the Nodes are
+     *                                         visited.
+     */
+    public void inOrderWalk(Node x, java.util.ArrayList<String> list) {
+        if (!enabled) {
+            tree.inOrderWalk(x, list);
+            return;
+        }
+        long start = System.nanoTime();
+        tree.inOrderWalk(x, list);
+        metrics[IN_ORDER].record(System.nanoTime() - start, sizeOf(x));
+    }
+
+    /**
+     * Prints the subtree rooted at x in post-order, measured as "postOrderWalk".
+     *
+     * @param Node x - the relative root of the walk.
+     */
+    public void postOrderWalk(Node x) {
+        if (!enabled) {
+            tree.postOrderWalk(x);
+            return;
+        }
+        long start = System.nanoTime();
+        tree.postOrderWalk(x);
+        metrics[POST_ORDER].record(System.nanoTime() - start, sizeOf(x));
+    }
+
+    /**
+     * Adds the Nodes of the subtree rooted at x to list in post-order, measured as "postOrderWalk".
+     *
+     * @param Node                        x    - the relative root of the walk.
+     * @param java.util.ArrayList<String> list - a list of Strings that will be
+     *                                         populated in the order the Nodes are
+     *                                         visited.
+     */
+    public void postOrderWalk(Node x, java.util.ArrayList<String> list) {
+        if (!enabled) {
+            tree.postOrderWalk(x, list);
+            return;
+        }
+        long start = System.nanoTime();
+        tree.postOrderWalk(x, list);
+        metrics[POST_ORDER].record(System.nanoTime() - start, sizeOf(x));
+    }
+
+    /*
+     * The path lengths below are counted on the tree's own Nodes, which another
+     * thread may be changing (through a thread safe tree) while we look: the
+     * searches give up after as many steps as the subtree has Nodes, so a torn
+     * read can never keep them going forever, and the count is then approximate.
+     */
+
+    private static int sizeOf(Node x) {
+        return x == null ? 0 : x.getSize();
+    }
+
+    /**
+     * Counts the Nodes a search for key starting at x compares the key with.
+     */
+    private static int searchLength(Node x, int key) {
+        int budget = sizeOf(x);
+        int visited = 0;
+        while (x != null && visited < budget) {
+            visited++;
+            int k = x.getKey();
+            if (key == k) {
+                break;
+            }
+            x = key < k ? x.getLeft() : x.getRight();
+        }
+        return visited;
+    }
+
+    /**
+     * Counts the Nodes from x up to its ancestor y, both included (up to the root
+     * if y is null).
+     */
+    private int pathLength(Node x, Node y) {
+        int budget = getSize();
+        int visited = 0;
+        while (x != null && visited < budget) {
+            visited++;
+            if (x == y) {
+                break;
+            }
+            x = x.getParent();
+        }
+        return visited;
+    }
+
+    /**
+     * What was measured for one operation.
+     */
+    private static final class Metrics {
+        final java.util.concurrent.atomic.LongAdder count = new java.util.concurrent.atomic.LongAdder();
+        final java.util.concurrent.atomic.LongAdder nanos = new java.util.concurrent.atomic.LongAdder();
+        final java.util.concurrent.atomic.LongAdder visited = new java.util.concurrent.atomic.LongAdder();
+        final java.util.concurrent.atomic.LongAccumulator max = new java.util.concurrent.atomic.LongAccumulator(
+                Math::max, 0);
+        final LatencyHistogram latencies = new LatencyHistogram();
+
+        void record(long nanos, int visited) {
+            this.count.increment();
+            this.nanos.add(nanos);
+            this.visited.add(visited);
+            this.max.accumulate(nanos);
+            this.latencies.record(nanos);
+        }
+
+        long percentile(double percentile) {
+            return Math.min(latencies.percentile(percentile), max.get());
+        }
+
+        void reset() {
+            count.reset();
+            nanos.reset();
+            visited.reset();
+            max.reset();
+            latencies.reset();
+        }
+    }
+
+    /**
+     * A histogram of non-negative longs with a bounded relative error, laid out as
+     * in HdrHistogram: the values below 2 * SUB_BUCKETS each have a bucket, and
+     * above that the values v with the same highest bit share SUB_BUCKETS buckets,
+     * told apart by the SUB_BITS bits below the highest one. A bucket is therefore
+     * never wider than 1/SUB_BUCKETS of its values.
+     */
+    static final class LatencyHistogram {
+        static final int SUB_BITS = 6;
+        static final int SUB_BUCKETS = 1 << SUB_BITS;
+        static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+        private final java.util.concurrent.atomic.AtomicReferenceArray<java.util.concurrent.atomic.LongAdder> buckets = new java.util.concurrent.atomic.AtomicReferenceArray<>(
+                BUCKETS);
+
+        /**
+         * Returns the bucket of a value, the buckets growing with the values.
+         */
+        static int indexOf(long value) {
+            int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BITS - 1);
+            return shift * SUB_BUCKETS + (int) (value >>> shift);
+        }
+
+        /**
+         * Returns the highest value which falls in a bucket.
+         */
+        static long highestValueOf(int index) {
+            int shift = Math.max(0, index / SUB_BUCKETS - 1);
+            long sub = index - shift * SUB_BUCKETS;
+            return ((sub + 1) << shift) - 1;
+        }
+
+        void record(long value) {
+            int i = indexOf(Math.max(0, value));
+            java.util.concurrent.atomic.LongAdder bucket = buckets.get(i);
+            if (bucket == null) {
+                buckets.compareAndSet(i, null, new java.util.concurrent.atomic.LongAdder());
+                bucket = buckets.get(i);
+            }
+            bucket.increment();
+        }
+
+        /**
+         * Returns the highest value of the bucket holding the value below which the
+         * specified percentage of the values fall (0 if there are none).
+         */
+        long percentile(double percentile) {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                java.util.concurrent.atomic.LongAdder bucket = buckets.get(i);
+                if (bucket != null) {
+                    counts[i] = bucket.sum();
+                    total += counts[i];
+                }
+            }
+            long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return highestValueOf(i);
+                }
+            }
+            return 0;
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                java.util.concurrent.atomic.LongAdder bucket = buckets.get(i);
+                if (bucket != null) {
+                    bucket.reset();
+                }
+            }
+        }
+    }
+}
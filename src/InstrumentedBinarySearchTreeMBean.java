@@ -0,0 +1,86 @@
+/**
+ * The JMX view of an InstrumentedBinarySearchTree, registered with
+ * InstrumentedBinarySearchTree.register. Operations are named after the
+ * BinarySearchTreeFunctions methods (insertNode, getNode, ...), see
+ * getOperations, and latencies are in nanoseconds.
+ */
+public interface InstrumentedBinarySearchTreeMBean {
+    /**
+     * @return true while operations are being measured
+     */
+    public boolean isEnabled();
+
+    /**
+     * Starts or stops measuring operations. What was measured so far is kept.
+     *
+     * @param boolean enabled - true to measure operations.
+     */
+    public void setEnabled(boolean enabled);
+
+    /**
+     * @return the number of Nodes in the tree
+     */
+    public int getSize();
+
+    /**
+     * Returns the height of the tree. It is an operation rather than an attribute
+     * because it walks the whole tree, so consoles do not poll it; it is also
+     * measured at most once per InstrumentedBinarySearchTree.HEIGHT_CACHE_NANOS.
+     *
+     * @return the height of the tree (-1 if it is empty)
+     */
+    public int measureHeight();
+
+    /**
+     * @return the names of the operations which are measured
+     */
+    public String[] getOperations();
+
+    /**
+     * @return the metrics of every operation as a text table, with the height
+     *         measureHeight found last, see InstrumentedBinarySearchTree.snapshot
+     */
+    public String getSnapshot();
+
+    /**
+     * @param String operation - the name of an operation, eg "getNode".
+     *
+     * @return how many times the operation was measured
+     */
+    public long getCount(String operation);
+
+    /**
+     * @param String operation - the name of an operation, eg "getNode".
+     *
+     * @return the mean latency of the operation in nanoseconds
+     */
+    public double getMeanNanos(String operation);
+
+    /**
+     * @param String operation  - the name of an operation, eg "getNode".
+     * @param double percentile - between 0 and 100, eg 99.9.
+     *
+     * @return the latency in nanoseconds which that percentage of the calls
+     *         did not exceed, to within 2%
+     */
+    public long getPercentileNanos(String operation, double percentile);
+
+    /**
+     * @param String operation - the name of an operation, eg "getNode".
+     *
+     * @return the highest latency of the operation in nanoseconds
+     */
+    public long getMaxNanos(String operation);
+
+    /**
+     * @param String operation - the name of an operation, eg "getNode".
+     *
+     * @return the mean number of Nodes the operation visited
+     */
+    public double getMeanNodesVisited(String operation);
+
+    /**
+     * Forgets everything measured so far.
+     */
+    public void reset();
+}
@@ -0,0 +1,468 @@
+/**
+ * A Binary Search Tree which stores its nodes in parallel primitive arrays
+ * instead of one Node object per key.
+ *
+ * Every node lives in a "slot", which is just an index into the arrays:
+ * - keys[s] is the key of slot s
+ * - left[s], right[s] and parent[s] are the slots of its relatives (NIL if there
+ * is none)
+ * - data[s] is the internal data held by the slot, the array is only allocated
+ * once some data is actually stored
+ *
+ * Slots freed by deleteNode are chained together through the right array and
+ * reused by later inserts, so a tree which keeps its size steady never grows its
+ * arrays.
+ *
+ * The operations mirror vural_BinarySearchTree, but take and return slots
+ * instead of Nodes. toNode can turn a slot into a (detached) Node when some
+ * other code needs one.
+ */
+public class IntArrayBinarySearchTree {
+    /**
+     * The slot value meaning "no node", the array equivalent of null.
+     */
+    public static final int NIL = -1;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] keys;
+    private int[] left;
+    private int[] right;
+    private int[] parent;
+    private Object[] data;
+
+    private int root; // slot of the root, NIL when empty
+    private int size; // number of keys in the tree
+    private int used; // slots at or above this index have never been handed out
+    private int free; // head of the list of freed slots, NIL when empty
+
+    /**
+     * Default constructor.
+     * Creates an empty BST, represented by the root slot being NIL initially.
+     */
+    public IntArrayBinarySearchTree() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty BST with room for the given number of keys before the
+     * arrays need to grow.
+     *
+     * @param int capacity - specifies how many keys to allocate room for.
+     */
+    public IntArrayBinarySearchTree(int capacity) {
+        capacity = Math.max(capacity, 1);
+        keys = new int[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        parent = new int[capacity];
+        data = null;
+        root = NIL;
+        size = 0;
+        used = 0;
+        free = NIL;
+    }
+
+    /**
+     * Getter for the slot of the root of the entire BST.
+     *
+     * @return the root slot (NIL if the BST is empty)
+     */
+    public int getRoot() {
+        return root;
+    }
+
+    /**
+     * Returns the number of keys held by the BST.
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the key value stored within a slot.
+     *
+     * @param int s - the slot being looked at.
+     *
+     * @return the key of the slot
+     */
+    public int getKey(int s) {
+        return keys[s];
+    }
+
+    /**
+     * Returns the internal data held within a slot.
+     *
+     * @param int s - the slot being looked at.
+     *
+     * @return the data of the slot (may be null)
+     */
+    public Object getData(int s) {
+        return data == null ? null : data[s];
+    }
+
+    /**
+     * Returns the slot of the left child of a slot.
+     *
+     * @param int s - the slot being looked at.
+     *
+     * @return the left child slot (may be NIL)
+     */
+    public int getLeft(int s) {
+        return left[s];
+    }
+
+    /**
+     * Returns the slot of the right child of a slot.
+     *
+     * @param int s - the slot being looked at.
+     *
+     * @return the right child slot (may be NIL)
+     */
+    public int getRight(int s) {
+        return right[s];
+    }
+
+    /**
+     * Returns the slot of the parent of a slot.
+     *
+     * @param int s - the slot being looked at.
+     *
+     * @return the parent slot (may be NIL)
+     */
+    public int getParent(int s) {
+        return parent[s];
+    }
+
+    /**
+     * Inserts a key, holding no internal data, into the BST.
+     * If the key is already in the BST, then the BST is left unchanged.
+     *
+     * @param int key - specifies the key to be added.
+     *
+     * @return true if the key was added, false if it was already in the BST
+     */
+    public boolean insertNode(int key) {
+        return insertNode(key, null);
+    }
+
+    /**
+     * Inserts a key holding some internal data into the BST.
+     * If the key is already in the BST, then the BST is left unchanged.
+     *
+     * @param int    key - specifies the key to be added.
+     * @param Object d - specifies the internal data held with the key.
+     *
+     * @return true if the key was added, false if it was already in the BST
+     */
+    public boolean insertNode(int key, Object d) {
+        int p = NIL;
+        int x = root;
+
+        while (x != NIL) {
+            p = x;
+            if (key < keys[x]) {
+                x = left[x];
+            }
+            else if (key > keys[x]) {
+                x = right[x];
+            }
+            else {
+                return false;
+            }
+        }
+
+        int z = allocate(key, d);
+        parent[z] = p;
+        if (p == NIL) {
+            root = z;
+        }
+        else if (key < keys[p]) {
+            left[p] = z;
+        }
+        else {
+            right[p] = z;
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Replaces the internal data held with an existing key.
+     * If there is no such key in the BST, then this update is ignored.
+     *
+     * @param int    key - specifies which key to update.
+     * @param Object d - specifies the new internal data.
+     */
+    public void updateNode(int key, Object d) {
+        int s = getNode(root, key);
+        if (s != NIL) {
+            setData(s, d);
+        }
+    }
+
+    /**
+     * Attempts to find, starting from slot x, the slot which holds the specified
+     * key.
+     *
+     * @param int x - specifies which slot we wish to start searching from.
+     * @param int key - the key value we are attempting to find.
+     *
+     * @return the slot holding the key (NIL if not found)
+     */
+    public int getNode(int x, int key) {
+        while (x != NIL && key != keys[x]) {
+            x = key < keys[x] ? left[x] : right[x];
+        }
+        return x;
+    }
+
+    /**
+     * Returns whether the specified key is held in the BST.
+     *
+     * @param int key - the key value we are looking for.
+     *
+     * @return true if found, false otherwise
+     */
+    public boolean contains(int key) {
+        return getNode(root, key) != NIL;
+    }
+
+    /**
+     * Returns the slot holding the largest key in the subtree rooted at x.
+     *
+     * @param int x - specifies the relative root, must not be NIL.
+     *
+     * @return the maximum slot (which may be x itself)
+     */
+    public int getMax(int x) {
+        while (right[x] != NIL) {
+            x = right[x];
+        }
+        return x;
+    }
+
+    /**
+     * Returns the slot holding the smallest key in the subtree rooted at x.
+     *
+     * @param int x - specifies the relative root, must not be NIL.
+     *
+     * @return the minimum slot (which may be x itself)
+     */
+    public int getMin(int x) {
+        while (left[x] != NIL) {
+            x = left[x];
+        }
+        return x;
+    }
+
+    /**
+     * Returns the slot holding the least key greater than slot x's key.
+     *
+     * @param int x - specifies which slot we start from.
+     *
+     * @return the successor slot (NIL if x holds the maximum)
+     */
+    public int getSuccessor(int x) {
+        if (right[x] != NIL) {
+            return getMin(right[x]);
+        }
+        int y = parent[x];
+        while (y != NIL && x == right[y]) {
+            x = y;
+            y = parent[y];
+        }
+        return y;
+    }
+
+    /**
+     * Returns the slot holding the greatest key less than slot x's key.
+     *
+     * @param int x - specifies which slot we start from.
+     *
+     * @return the predecessor slot (NIL if x holds the minimum)
+     */
+    public int getPredecessor(int x) {
+        if (left[x] != NIL) {
+            return getMax(left[x]);
+        }
+        int y = parent[x];
+        while (y != NIL && x == left[y]) {
+            x = y;
+            y = parent[y];
+        }
+        return y;
+    }
+
+    /**
+     * Determines the height of the subtree rooted at slot x.
+     * The subtree is walked with the parent links instead of recursion, so this
+     * needs no extra memory however deep the tree is.
+     *
+     * @param int x - specifies the relative root.
+     *
+     * @return the height of the subtree (-1 if x is NIL)
+     */
+    public int getHeight(int x) {
+        if (x == NIL) {
+            return -1;
+        }
+        int top = parent[x];
+        int prev = top;
+        int depth = 0;
+        int height = 0;
+
+        while (x != top) {
+            int next;
+            if (prev == parent[x]) {
+                next = left[x] != NIL ? left[x] : right[x] != NIL ? right[x] : parent[x];
+            }
+            else if (prev == left[x] && right[x] != NIL) {
+                next = right[x];
+            }
+            else {
+                next = parent[x];
+            }
+
+            prev = x;
+            if (next == parent[x]) {
+                depth--;
+            }
+            else {
+                depth++;
+                if (depth > height) {
+                    height = depth;
+                }
+            }
+            x = next;
+        }
+        return height;
+    }
+
+    /**
+     * Attempts to find and delete a key from the BST.
+     * If the key cannot be found, then the BST is left unchanged.
+     * The freed slot is kept for reuse by a later insert.
+     *
+     * @param int key - the key to be removed.
+     *
+     * @return true if the key was removed, false if it was not in the BST
+     */
+    public boolean deleteNode(int key) {
+        int z = getNode(root, key);
+        if (z == NIL) {
+            return false;
+        }
+
+        if (left[z] == NIL) {
+            shiftNode(z, right[z]);
+        }
+        else if (right[z] == NIL) {
+            shiftNode(z, left[z]);
+        }
+        else {
+            int y = getMin(right[z]);
+            if (parent[y] != z) {
+                shiftNode(y, right[y]);
+                right[y] = right[z];
+                parent[right[y]] = y;
+            }
+            shiftNode(z, y);
+            left[y] = left[z];
+            parent[left[y]] = y;
+        }
+
+        release(z);
+        size--;
+        return true;
+    }
+
+    /**
+     * Returns a Node holding the key and internal data of a slot.
+     * The Node is not linked to any other Node, it only exists so that a slot can
+     * be handed to code which expects a Node.
+     *
+     * @param int s - the slot being converted.
+     *
+     * @return a new Node for the slot (null if s is NIL)
+     */
+    public Node toNode(int s) {
+        if (s == NIL) {
+            return null;
+        }
+        return new Node(keys[s], getData(s));
+    }
+
+    /**
+     * Helper method which puts slot v where slot u used to be, mirroring
+     * vural_BinarySearchTree.shiftNode.
+     */
+    private void shiftNode(int u, int v) {
+        int p = parent[u];
+        if (p == NIL) {
+            root = v;
+        }
+        else if (u == left[p]) {
+            left[p] = v;
+        }
+        else {
+            right[p] = v;
+        }
+        if (v != NIL) {
+            parent[v] = p;
+        }
+    }
+
+    private void setData(int s, Object d) {
+        if (data == null) {
+            if (d == null) {
+                return;
+            }
+            data = new Object[keys.length];
+        }
+        data[s] = d;
+    }
+
+    private int allocate(int key, Object d) {
+        int s;
+        if (free != NIL) {
+            s = free;
+            free = right[s];
+        }
+        else {
+            if (used == keys.length) {
+                grow();
+            }
+            s = used++;
+        }
+        keys[s] = key;
+        left[s] = NIL;
+        right[s] = NIL;
+        parent[s] = NIL;
+        setData(s, d);
+        return s;
+    }
+
+    private void release(int s) {
+        if (data != null) {
+            data[s] = null;
+        }
+        left[s] = NIL;
+        parent[s] = NIL;
+        right[s] = free;
+        free = s;
+    }
+
+    private void grow() {
+        int capacity = keys.length + (keys.length >> 1) + 1;
+        keys = java.util.Arrays.copyOf(keys, capacity);
+        left = java.util.Arrays.copyOf(left, capacity);
+        right = java.util.Arrays.copyOf(right, capacity);
+        parent = java.util.Arrays.copyOf(parent, capacity);
+        if (data != null) {
+            data = java.util.Arrays.copyOf(data, capacity);
+        }
+    }
+}
@@ -0,0 +1,439 @@
+/**
+ * A lock-free Binary Search Tree which many threads can use at once, following
+ * the external tree of Natarajan and Mittal ("Fast Concurrent Lock-Free Binary
+ * Search Trees", PPoPP 2014).
+ *
+ * "External" means every key lives in a leaf and the inner vertices only route
+ * searches: keys smaller than an inner vertex's key are found on its left, the
+ * others on its right. An insert therefore only ever replaces one leaf edge, and
+ * a delete only ever removes one leaf together with its parent vertex.
+ *
+ * Each edge carries two marks:
+ * - flag: the leaf at the end of the edge is being deleted
+ * - tag: the edge belongs to a vertex which is being spliced out, so it must not
+ * change any more
+ *
+ * A delete flags the edge to its leaf (that is the moment the key disappears),
+ * tags the sibling edge, and then swings the edge above the parent vertex to the
+ * sibling. Any thread that runs into a flagged or tagged edge helps finish the
+ * delete before retrying, so nobody ever waits on anybody: searches never write,
+ * and updates only compete when they touch the same edges.
+ *
+ * insertNode, getNode, contains, updateNode and deleteNode are linearizable.
+ * getMin, getMax, getSuccessor and getPredecessor are exact when no update runs
+ * at the same time, and otherwise return a key which was in the tree at some
+ * point during the call.
+ *
+ * The Nodes returned by this tree are detached copies holding a key and its data,
+ * their parent and child links are always null.
+ */
+public class LockFreeBinarySearchTree {
+    // sentinel keys, larger than every int key
+    private static final long INF0 = Long.MAX_VALUE - 2;
+    private static final long INF1 = Long.MAX_VALUE - 1;
+    private static final long INF2 = Long.MAX_VALUE;
+
+    private final Vertex root;
+
+    /**
+     * Default constructor.
+     * Creates an empty tree, which is a fixed frame of three sentinel leaves and two
+     * inner vertices that every key is inserted below.
+     */
+    public LockFreeBinarySearchTree() {
+        Vertex s = new Vertex(INF1, new Vertex(INF0, null), new Vertex(INF1, null));
+        root = new Vertex(INF2, s, new Vertex(INF2, null));
+    }
+
+    /**
+     * Inserts a Node's key and data into the tree.
+     * If the key is already in the tree, then the tree is left unchanged.
+     *
+     * @param Node z - specifies the key and data to be added.
+     *
+     * @return true if the key was added, false if it was already in the tree
+     */
+    public boolean insertNode(Node z) {
+        long key = z.getKey();
+        Seek s = new Seek();
+
+        while (true) {
+            seek(key, s);
+            Vertex leaf = s.leaf;
+            Vertex parent = s.parent;
+            if (leaf.key == key && !s.leafEdge.flag) {
+                return false;
+            }
+
+            boolean left = key < parent.key;
+            Edge e = parent.child(left);
+            if (e.vertex == leaf && !e.flag && !e.tag) {
+                Vertex fresh = new Vertex(key, z.getData());
+                Vertex inner = key < leaf.key
+                        ? new Vertex(leaf.key, fresh, leaf)
+                        : new Vertex(key, leaf, fresh);
+                if (parent.cas(left, e, new Edge(inner, false, false))) {
+                    return true;
+                }
+                e = parent.child(left);
+            }
+            if (e.vertex == leaf && (e.flag || e.tag)) {
+                cleanup(key, s); // help the delete in our way, then retry
+            }
+        }
+    }
+
+    /**
+     * Replaces the data held with an existing key.
+     * If there is no such key in the tree, then this update is ignored.
+     *
+     * Leaves are never changed in place: the leaf is swapped for a new one holding
+     * the new data with a compare-and-set on its edge, like an insert. An update
+     * racing with a delete of the same key therefore either lands before the
+     * delete flags the edge, or finds the key gone and is ignored; it is never
+     * written to a leaf which is already on its way out.
+     *
+     * @param Node z - specifies the key to update and its new data.
+     */
+    public void updateNode(Node z) {
+        long key = z.getKey();
+        Seek s = new Seek();
+
+        while (true) {
+            seek(key, s);
+            Vertex leaf = s.leaf;
+            Vertex parent = s.parent;
+            if (leaf.key != key || s.leafEdge.flag) {
+                return;
+            }
+
+            boolean left = key < parent.key;
+            Edge e = parent.child(left);
+            if (e.vertex == leaf && !e.flag && !e.tag) {
+                if (parent.cas(left, e, new Edge(new Vertex(key, z.getData()), false, false))) {
+                    return;
+                }
+                e = parent.child(left);
+            }
+            if (e.vertex == leaf && (e.flag || e.tag)) {
+                cleanup(key, s); // help the delete in our way, then retry
+            }
+        }
+    }
+
+    /**
+     * Attempts to find the key in the tree.
+     *
+     * @param int key - the key value we are looking for.
+     *
+     * @return a detached Node holding the key and its data (null if not found)
+     */
+    public Node getNode(int key) {
+        Seek s = new Seek();
+        seek(key, s);
+        if (s.leaf.key == key && !s.leafEdge.flag) {
+            return s.leaf.toNode();
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether the key is held in the tree.
+     *
+     * @param int key - the key value we are looking for.
+     *
+     * @return true if found, false otherwise
+     */
+    public boolean contains(int key) {
+        return getNode(key) != null;
+    }
+
+    /**
+     * Attempts to find and delete a key from the tree.
+     * If the key cannot be found, then the tree is left unchanged.
+     *
+     * @param int key - the key to be removed.
+     *
+     * @return true if this call removed the key, false if it was not in the tree
+     */
+    public boolean deleteNode(int key) {
+        Seek s = new Seek();
+        Vertex leaf = null;
+        boolean injected = false; // set once our flag is on the leaf's edge
+
+        while (true) {
+            seek(key, s);
+            Vertex parent = s.parent;
+            boolean left = key < parent.key;
+
+            if (!injected) {
+                leaf = s.leaf;
+                if (leaf.key != key) {
+                    return false;
+                }
+                Edge e = parent.child(left);
+                if (e.vertex == leaf && !e.flag && !e.tag) {
+                    if (parent.cas(left, e, new Edge(leaf, true, false))) {
+                        injected = true;
+                        if (cleanup(key, s)) {
+                            return true;
+                        }
+                        continue;
+                    }
+                    e = parent.child(left);
+                }
+                if (e.vertex == leaf && (e.flag || e.tag)) {
+                    cleanup(key, s);
+                }
+                if (e.vertex == leaf && e.flag) {
+                    // somebody else flagged it first, their delete wins
+                    return false;
+                }
+            }
+            else if (s.leaf != leaf) {
+                return true; // another thread finished splicing out our leaf
+            }
+            else if (cleanup(key, s)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the smallest key in the tree.
+     *
+     * @return a detached Node holding the minimum key (null if the tree is empty)
+     */
+    public Node getMin() {
+        Vertex v = root;
+        while (!v.isLeaf()) {
+            v = v.left.vertex;
+        }
+        return v.key < INF0 ? v.toNode() : null;
+    }
+
+    /**
+     * Returns the largest key in the tree.
+     *
+     * @return a detached Node holding the maximum key (null if the tree is empty)
+     */
+    public Node getMax() {
+        return predecessor(INF0); // the last real key before the sentinels
+    }
+
+    /**
+     * Returns the smallest key greater than the specified key.
+     * The key itself does not need to be in the tree.
+     *
+     * @param int key - the key we start from.
+     *
+     * @return a detached Node holding the successor (null if there is none)
+     */
+    public Node getSuccessor(int key) {
+        while (true) {
+            Vertex candidate = null; // right subtree of the last left turn
+            Vertex v = root;
+            while (!v.isLeaf()) {
+                if (key < v.key) {
+                    candidate = v.right.vertex;
+                    v = v.left.vertex;
+                }
+                else {
+                    v = v.right.vertex;
+                }
+            }
+            if (v.key <= key) {
+                if (candidate == null) {
+                    return null;
+                }
+                v = candidate;
+                while (!v.isLeaf()) {
+                    v = v.left.vertex;
+                }
+            }
+            // a splice running under us can leave a stale candidate holding smaller
+            // keys, in which case we simply look again
+            if (v.key > key) {
+                return v.key < INF0 ? v.toNode() : null;
+            }
+        }
+    }
+
+    /**
+     * Returns the largest key smaller than the specified key.
+     * The key itself does not need to be in the tree.
+     *
+     * @param int key - the key we start from.
+     *
+     * @return a detached Node holding the predecessor (null if there is none)
+     */
+    public Node getPredecessor(int key) {
+        return predecessor(key);
+    }
+
+    private Node predecessor(long key) {
+        while (true) {
+            Vertex candidate = null; // left subtree of the last right turn
+            Vertex v = root;
+            while (!v.isLeaf()) {
+                if (key < v.key) {
+                    v = v.left.vertex;
+                }
+                else {
+                    candidate = v.left.vertex;
+                    v = v.right.vertex;
+                }
+            }
+            if (v.key >= key) {
+                if (candidate == null) {
+                    return null;
+                }
+                v = candidate;
+                while (!v.isLeaf()) {
+                    v = v.right.vertex;
+                }
+            }
+            if (v.key < key) {
+                return v.toNode();
+            }
+        }
+    }
+
+    /**
+     * Walks down towards key, remembering the last four vertices a delete needs:
+     * the leaf reached, its parent, and the deepest untagged edge above them
+     * (from ancestor to successor) which a splice would swing.
+     */
+    private void seek(long key, Seek s) {
+        Vertex sentinel = root.left.vertex;
+        s.ancestor = root;
+        s.successor = sentinel;
+        s.parent = sentinel;
+        Edge parentEdge = sentinel.left;
+        s.leaf = parentEdge.vertex;
+        Edge currentEdge = s.leaf.isLeaf() ? null : s.leaf.child(key < s.leaf.key);
+
+        while (currentEdge != null) {
+            Vertex current = currentEdge.vertex;
+            if (!parentEdge.tag) {
+                s.ancestor = s.parent;
+                s.successor = s.leaf;
+            }
+            s.parent = s.leaf;
+            s.leaf = current;
+            parentEdge = currentEdge;
+            currentEdge = current.isLeaf() ? null : current.child(key < current.key);
+        }
+        s.leafEdge = parentEdge;
+    }
+
+    /**
+     * Physically removes a flagged leaf and its parent vertex: tags the sibling
+     * edge so it cannot change, then swings the ancestor's edge past the parent
+     * straight to the sibling.
+     *
+     * @return true if this call did the splice
+     */
+    private boolean cleanup(long key, Seek s) {
+        Vertex ancestor = s.ancestor;
+        Vertex successor = s.successor;
+        Vertex parent = s.parent;
+
+        boolean successorLeft = key < ancestor.key;
+        boolean childLeft = key < parent.key;
+        boolean siblingLeft = !childLeft;
+
+        if (!parent.child(childLeft).flag) {
+            // the leaf on our side is not the one being deleted, its sibling is
+            siblingLeft = childLeft;
+        }
+
+        Edge sibling;
+        while (true) {
+            sibling = parent.child(siblingLeft);
+            if (sibling.tag) {
+                break;
+            }
+            if (parent.cas(siblingLeft, sibling, new Edge(sibling.vertex, sibling.flag, true))) {
+                sibling = parent.child(siblingLeft);
+                break;
+            }
+        }
+
+        Edge above = ancestor.child(successorLeft);
+        if (above.vertex != successor || above.flag || above.tag) {
+            return false;
+        }
+        return ancestor.cas(successorLeft, above, new Edge(sibling.vertex, sibling.flag, false));
+    }
+
+    /**
+     * An immutable pointer to a child vertex together with its two marks, so that a
+     * single compare-and-set changes the pointer and the marks at once.
+     */
+    private static final class Edge {
+        final Vertex vertex;
+        final boolean flag;
+        final boolean tag;
+
+        Edge(Vertex vertex, boolean flag, boolean tag) {
+            this.vertex = vertex;
+            this.flag = flag;
+            this.tag = tag;
+        }
+    }
+
+    /**
+     * A vertex of the external tree: an inner vertex routes with its key and has
+     * two edges, a leaf holds a key and its data and has no edges.
+     */
+    private static final class Vertex {
+        private static final java.util.concurrent.atomic.AtomicReferenceFieldUpdater<Vertex, Edge> LEFT =
+                java.util.concurrent.atomic.AtomicReferenceFieldUpdater.newUpdater(Vertex.class, Edge.class, "left");
+        private static final java.util.concurrent.atomic.AtomicReferenceFieldUpdater<Vertex, Edge> RIGHT =
+                java.util.concurrent.atomic.AtomicReferenceFieldUpdater.newUpdater(Vertex.class, Edge.class, "right");
+
+        final long key;
+        final Object data; // never changed, updateNode swaps the whole leaf
+        volatile Edge left;
+        volatile Edge right;
+
+        // leaf
+        Vertex(long key, Object data) {
+            this.key = key;
+            this.data = data;
+        }
+
+        // inner vertex
+        Vertex(long key, Vertex l, Vertex r) {
+            this.key = key;
+            this.data = null;
+            this.left = new Edge(l, false, false);
+            this.right = new Edge(r, false, false);
+        }
+
+        boolean isLeaf() {
+            return left == null;
+        }
+
+        Edge child(boolean l) {
+            return l ? left : right;
+        }
+
+        boolean cas(boolean l, Edge expect, Edge update) {
+            return l ? LEFT.compareAndSet(this, expect, update) : RIGHT.compareAndSet(this, expect, update);
+        }
+
+        Node toNode() {
+            return new Node((int) key, data);
+        }
+    }
+
+    private static final class Seek {
+        Vertex ancestor;
+        Vertex successor;
+        Vertex parent;
+        Vertex leaf;
+        Edge leafEdge;
+    }
+}
@@ -0,0 +1,556 @@
+/**
+ * A Binary Search Tree which lives inside a file.
+ *
+ * The file is memory mapped with FileChannel.map and every operation reads and
+ * writes the mapped bytes directly, so there is nothing to deserialize: opening
+ * an existing file is O(1) no matter how many keys it holds, and every change is
+ * written through to the file as it happens.
+ *
+ * The layout is the same slot idea as IntArrayBinarySearchTree, only the arrays
+ * are interleaved in the file:
+ *
+ * header (32 bytes): magic, version, root, size, used, free, capacity, dirty
+ * slot s (16 bytes each): key, left, right, parent
+ *
+ * Slots are ints, NIL (-1) meaning "no node". Freed slots are chained through
+ * their right field and reused. Only keys are stored, there is no internal data.
+ *
+ * A change writes several ints in place, so it is not crash atomic. The first
+ * change after opening, or after force, therefore sets the dirty flag and forces
+ * it out before touching anything else, and force and close clear it again once
+ * everything is on disk. A file whose dirty flag is set was not closed cleanly:
+ * the plain constructor refuses it, and opening it with recover set checks it
+ * in one O(n) walk instead. The walk follows the child links from the root and
+ * checks that they stay within the slots in use, reach no slot twice and give
+ * the keys in ascending order. It then rewrites the parent links, the size and
+ * the free list (every slot in use which the walk did not reach) from what it
+ * found, and clears the flag.
+ *
+ * The writes of each change are ordered so that a change cut short by a killed
+ * process leaves a tree recovery can repair, holding the keys from either
+ * before or after the change. A delete of a key with two children copies its
+ * successor's key up and then unlinks the successor's slot, so a cut leaves
+ * that key twice, next to each other, and recovery unlinks the second one.
+ * After a power failure, pages written back out of order can leave damage
+ * recovery cannot repair, and it refuses the file.
+ */
+public class MappedBinarySearchTree implements java.io.Closeable {
+    /**
+     * The slot value meaning "no node", the file equivalent of null.
+     */
+    public static final int NIL = -1;
+
+    private static final int MAGIC = 0x42535446; // "BSTF"
+    private static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 32;
+    private static final int SLOT_BYTES = 16;
+
+    // header field offsets
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_ROOT = 8;
+    private static final int H_SIZE = 12;
+    private static final int H_USED = 16;
+    private static final int H_FREE = 20;
+    private static final int H_CAPACITY = 24;
+    private static final int H_DIRTY = 28;
+
+    // slot field offsets
+    private static final int S_KEY = 0;
+    private static final int S_LEFT = 4;
+    private static final int S_RIGHT = 8;
+    private static final int S_PARENT = 12;
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final java.nio.channels.FileChannel channel;
+    private java.nio.MappedByteBuffer buffer;
+    private boolean dirty; // whether the dirty flag is set in the file
+
+    /**
+     * Opens the tree stored in the specified file, creating an empty tree if the
+     * file does not exist yet or is empty.
+     *
+     * @param String filename - specifies the file backing the tree.
+     *
+     * @throws java.io.IOException if the file cannot be opened, is not a tree
+     *                             file or was not closed cleanly
+     */
+    public MappedBinarySearchTree(String filename) throws java.io.IOException {
+        this(filename, false);
+    }
+
+    /**
+     * Opens the tree stored in the specified file, creating an empty tree if the
+     * file does not exist yet or is empty, and recovering it if it was not closed
+     * cleanly and recover is set.
+     *
+     * @param String  filename - specifies the file backing the tree.
+     * @param boolean recover - true to check and repair a file which was not
+     *                closed cleanly, in O(n), instead of refusing it.
+     *
+     * @throws java.io.IOException if the file cannot be opened, is not a tree
+     *                             file, or was not closed cleanly and either
+     *                             recover is not set or it cannot be repaired
+     */
+    public MappedBinarySearchTree(String filename, boolean recover) throws java.io.IOException {
+        channel = java.nio.channels.FileChannel.open(java.nio.file.Paths.get(filename),
+                java.nio.file.StandardOpenOption.READ,
+                java.nio.file.StandardOpenOption.WRITE,
+                java.nio.file.StandardOpenOption.CREATE);
+        try {
+            if (channel.size() == 0) {
+                map(DEFAULT_CAPACITY);
+                buffer.putInt(H_MAGIC, MAGIC);
+                buffer.putInt(H_VERSION, VERSION);
+                buffer.putInt(H_ROOT, NIL);
+                buffer.putInt(H_SIZE, 0);
+                buffer.putInt(H_USED, 0);
+                buffer.putInt(H_FREE, NIL);
+                buffer.putInt(H_CAPACITY, DEFAULT_CAPACITY);
+                buffer.putInt(H_DIRTY, 0);
+            }
+            else {
+                if (channel.size() < HEADER_BYTES) {
+                    throw new java.io.IOException(filename + " is not a tree file");
+                }
+                buffer = channel.map(java.nio.channels.FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+                if (buffer.getInt(H_MAGIC) != MAGIC || buffer.getInt(H_VERSION) != VERSION) {
+                    throw new java.io.IOException(filename + " is not a tree file");
+                }
+                boolean unclean = buffer.getInt(H_DIRTY) != 0;
+                if (unclean && !recover) {
+                    throw new java.io.IOException(filename + " was not closed cleanly, open it with recover set");
+                }
+                int capacity = buffer.getInt(H_CAPACITY);
+                if (capacity < 1) {
+                    throw new java.io.IOException(filename + " is corrupt: capacity " + capacity);
+                }
+                map(capacity);
+                if (unclean) {
+                    recover(filename);
+                }
+            }
+        } catch (java.io.IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Getter for the slot of the root of the entire BST.
+     *
+     * @return the root slot (NIL if the BST is empty)
+     */
+    public int getRoot() {
+        return buffer.getInt(H_ROOT);
+    }
+
+    /**
+     * Returns the number of keys held by the BST.
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        return buffer.getInt(H_SIZE);
+    }
+
+    /**
+     * Returns the key value stored within a slot.
+     *
+     * @param int s - the slot being looked at.
+     *
+     * @return the key of the slot
+     */
+    public int getKey(int s) {
+        return get(s, S_KEY);
+    }
+
+    /**
+     * Returns the slot of the left child of a slot.
+     *
+     * @param int s - the slot being looked at.
+     *
+     * @return the left child slot (may be NIL)
+     */
+    public int getLeft(int s) {
+        return get(s, S_LEFT);
+    }
+
+    /**
+     * Returns the slot of the right child of a slot.
+     *
+     * @param int s - the slot being looked at.
+     *
+     * @return the right child slot (may be NIL)
+     */
+    public int getRight(int s) {
+        return get(s, S_RIGHT);
+    }
+
+    /**
+     * Returns the slot of the parent of a slot.
+     *
+     * @param int s - the slot being looked at.
+     *
+     * @return the parent slot (may be NIL)
+     */
+    public int getParent(int s) {
+        return get(s, S_PARENT);
+    }
+
+    /**
+     * Inserts a key into the BST, writing the change through to the file.
+     * If the key is already in the BST, then the BST is left unchanged.
+     *
+     * @param int key - specifies the key to be added.
+     *
+     * @return true if the key was added, false if it was already in the BST
+     *
+     * @throws java.io.IOException if the file had to grow and could not
+     */
+    public boolean insertNode(int key) throws java.io.IOException {
+        int p = NIL;
+        int x = getRoot();
+
+        while (x != NIL) {
+            p = x;
+            int k = getKey(x);
+            if (key < k) {
+                x = getLeft(x);
+            }
+            else if (key > k) {
+                x = getRight(x);
+            }
+            else {
+                return false;
+            }
+        }
+
+        markDirty();
+        int z = allocate(key);
+        set(z, S_PARENT, p);
+        if (p == NIL) {
+            buffer.putInt(H_ROOT, z);
+        }
+        else if (key < getKey(p)) {
+            set(p, S_LEFT, z);
+        }
+        else {
+            set(p, S_RIGHT, z);
+        }
+        buffer.putInt(H_SIZE, size() + 1);
+        return true;
+    }
+
+    /**
+     * Attempts to find, starting from slot x, the slot which holds the specified
+     * key.
+     *
+     * @param int x - specifies which slot we wish to start searching from.
+     * @param int key - the key value we are attempting to find.
+     *
+     * @return the slot holding the key (NIL if not found)
+     */
+    public int getNode(int x, int key) {
+        while (x != NIL) {
+            int k = getKey(x);
+            if (key == k) {
+                return x;
+            }
+            x = key < k ? getLeft(x) : getRight(x);
+        }
+        return NIL;
+    }
+
+    /**
+     * Returns whether the specified key is held in the BST.
+     *
+     * @param int key - the key value we are looking for.
+     *
+     * @return true if found, false otherwise
+     */
+    public boolean contains(int key) {
+        return getNode(getRoot(), key) != NIL;
+    }
+
+    /**
+     * Returns the slot holding the largest key in the subtree rooted at x.
+     *
+     * @param int x - specifies the relative root, must not be NIL.
+     *
+     * @return the maximum slot (which may be x itself)
+     */
+    public int getMax(int x) {
+        for (int r = getRight(x); r != NIL; r = getRight(x)) {
+            x = r;
+        }
+        return x;
+    }
+
+    /**
+     * Returns the slot holding the smallest key in the subtree rooted at x.
+     *
+     * @param int x - specifies the relative root, must not be NIL.
+     *
+     * @return the minimum slot (which may be x itself)
+     */
+    public int getMin(int x) {
+        for (int l = getLeft(x); l != NIL; l = getLeft(x)) {
+            x = l;
+        }
+        return x;
+    }
+
+    /**
+     * Returns the slot holding the least key greater than slot x's key.
+     *
+     * @param int x - specifies which slot we start from.
+     *
+     * @return the successor slot (NIL if x holds the maximum)
+     */
+    public int getSuccessor(int x) {
+        if (getRight(x) != NIL) {
+            return getMin(getRight(x));
+        }
+        int y = getParent(x);
+        while (y != NIL && x == getRight(y)) {
+            x = y;
+            y = getParent(y);
+        }
+        return y;
+    }
+
+    /**
+     * Returns the slot holding the greatest key less than slot x's key.
+     *
+     * @param int x - specifies which slot we start from.
+     *
+     * @return the predecessor slot (NIL if x holds the minimum)
+     */
+    public int getPredecessor(int x) {
+        if (getLeft(x) != NIL) {
+            return getMax(getLeft(x));
+        }
+        int y = getParent(x);
+        while (y != NIL && x == getLeft(y)) {
+            x = y;
+            y = getParent(y);
+        }
+        return y;
+    }
+
+    /**
+     * Attempts to find and delete a key from the BST, writing the change through
+     * to the file.
+     * If the key cannot be found, then the BST is left unchanged.
+     * When the key's slot has two children, its successor's key moves into it and
+     * the successor's slot is freed instead, so slots held by the caller for the
+     * successor no longer hold it.
+     *
+     * @param int key - the key to be removed.
+     *
+     * @return true if the key was removed, false if it was not in the BST
+     */
+    public boolean deleteNode(int key) {
+        int z = getNode(getRoot(), key);
+        if (z == NIL) {
+            return false;
+        }
+        markDirty();
+
+        if (getLeft(z) != NIL && getRight(z) != NIL) {
+            // move the successor's key up and unlink its slot instead, which has
+            // no left child, so that a crash in between only leaves a duplicate
+            int y = getMin(getRight(z));
+            set(z, S_KEY, getKey(y));
+            z = y;
+        }
+        shiftNode(z, getLeft(z) == NIL ? getRight(z) : getLeft(z));
+
+        set(z, S_LEFT, NIL);
+        set(z, S_PARENT, NIL);
+        set(z, S_RIGHT, buffer.getInt(H_FREE));
+        buffer.putInt(H_FREE, z);
+        buffer.putInt(H_SIZE, size() - 1);
+        return true;
+    }
+
+    /**
+     * Forces every change made so far out to the storage device, then clears the
+     * dirty flag.
+     */
+    public void force() {
+        if (!dirty) {
+            return;
+        }
+        buffer.force();
+        buffer.putInt(H_DIRTY, 0);
+        buffer.force();
+        dirty = false;
+    }
+
+    /**
+     * Flushes all changes and closes the file.
+     *
+     * @throws java.io.IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws java.io.IOException {
+        try {
+            force();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Checks a file which was not closed cleanly in one in-order walk, taking the
+     * child links as the truth, then rewrites the parent links, drops the key a
+     * cut short delete left twice, rebuilds the size and the free list and
+     * clears the dirty flag. Running it again after a crash is harmless.
+     */
+    private void recover(String filename) throws java.io.IOException {
+        int used = buffer.getInt(H_USED);
+        if (used < 0 || used > buffer.getInt(H_CAPACITY)) {
+            throw new java.io.IOException(filename + " is corrupt: " + used + " slots in use");
+        }
+        java.util.BitSet reached = new java.util.BitSet(used);
+        int[] stack = new int[used]; // every slot is pushed at most once
+        int depth = 0;
+        int[] leftovers = new int[0];
+        int visited = 0;
+        int last = 0;
+
+        int x = reach(filename, NIL, getRoot(), used, reached);
+        while (x != NIL || depth > 0) {
+            while (x != NIL) {
+                stack[depth++] = x;
+                x = reach(filename, x, getLeft(x), used, reached);
+            }
+            x = stack[--depth];
+            int key = getKey(x);
+            if (visited > 0 && key <= last) {
+                if (key < last || getLeft(x) != NIL) {
+                    throw new java.io.IOException(filename + " is corrupt: key " + key + " is out of order");
+                }
+                // the successor of a delete cut short, its key was already copied up
+                leftovers = java.util.Arrays.copyOf(leftovers, leftovers.length + 1);
+                leftovers[leftovers.length - 1] = x;
+            }
+            last = key;
+            visited++;
+            x = reach(filename, x, getRight(x), used, reached);
+        }
+
+        for (int y : leftovers) {
+            shiftNode(y, getRight(y));
+            reached.clear(y);
+        }
+        int free = NIL;
+        for (int s = used - 1; s >= 0; s--) {
+            if (!reached.get(s)) {
+                set(s, S_LEFT, NIL);
+                set(s, S_PARENT, NIL);
+                set(s, S_RIGHT, free);
+                free = s;
+            }
+        }
+        buffer.putInt(H_FREE, free);
+        buffer.putInt(H_SIZE, reached.cardinality());
+
+        buffer.force();
+        buffer.putInt(H_DIRTY, 0);
+        buffer.force();
+    }
+
+    /**
+     * Checks that child, a link of p, is NIL or a slot in use which has not been
+     * reached yet, marks it reached and points its parent link back at p.
+     */
+    private int reach(String filename, int p, int child, int used, java.util.BitSet reached) throws java.io.IOException {
+        if (child == NIL) {
+            return NIL;
+        }
+        if (child < 0 || child >= used || reached.get(child)) {
+            throw new java.io.IOException(filename + " is corrupt: bad link " + p + " -> " + child);
+        }
+        reached.set(child);
+        if (getParent(child) != p) {
+            set(child, S_PARENT, p);
+        }
+        return child;
+    }
+
+    /**
+     * Sets the dirty flag and forces it out before the first change since the
+     * file was last known to be consistent.
+     */
+    private void markDirty() {
+        if (dirty) {
+            return;
+        }
+        buffer.putInt(H_DIRTY, 1);
+        buffer.force();
+        dirty = true;
+    }
+
+    /**
+     * Helper method which puts slot v where slot u used to be, mirroring
+     * vural_BinarySearchTree.shiftNode.
+     */
+    private void shiftNode(int u, int v) {
+        int p = getParent(u);
+        if (p == NIL) {
+            buffer.putInt(H_ROOT, v);
+        }
+        else if (u == getLeft(p)) {
+            set(p, S_LEFT, v);
+        }
+        else {
+            set(p, S_RIGHT, v);
+        }
+        if (v != NIL) {
+            set(v, S_PARENT, p);
+        }
+    }
+
+    private int get(int s, int field) {
+        return buffer.getInt(HEADER_BYTES + s * SLOT_BYTES + field);
+    }
+
+    private void set(int s, int field, int value) {
+        buffer.putInt(HEADER_BYTES + s * SLOT_BYTES + field, value);
+    }
+
+    private int allocate(int key) throws java.io.IOException {
+        int s = buffer.getInt(H_FREE);
+        if (s != NIL) {
+            buffer.putInt(H_FREE, getRight(s));
+        }
+        else {
+            s = buffer.getInt(H_USED);
+            int capacity = buffer.getInt(H_CAPACITY);
+            if (s == capacity) {
+                capacity = capacity * 2;
+                map(capacity);
+                buffer.putInt(H_CAPACITY, capacity);
+            }
+            buffer.putInt(H_USED, s + 1);
+        }
+        set(s, S_KEY, key);
+        set(s, S_LEFT, NIL);
+        set(s, S_RIGHT, NIL);
+        set(s, S_PARENT, NIL);
+        return s;
+    }
+
+    private void map(int capacity) throws java.io.IOException {
+        long bytes = HEADER_BYTES + (long) capacity * SLOT_BYTES;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new java.io.IOException("tree file cannot hold more than " + capacity / 2 + " keys");
+        }
+        buffer = channel.map(java.nio.channels.FileChannel.MapMode.READ_WRITE, 0, bytes);
+    }
+}
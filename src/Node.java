@@ -19,6 +19,10 @@ public class Node implements NodeFunctions {
 	private Node right; // points to the Node that is our right child, the relative root of our right
 						// subtree.
 	private Object data; // points to some internal data held within this Node.
+	private boolean red; // color of this Node, only meaningful inside a red-black tree.
+	private int height; // cached height of the subtree rooted here, only kept up to date by
+						// the AVL tree.
+	private int size; // number of Nodes in the subtree rooted here, including ourselves.
 
 	/**
 	 * Value constructor which creates a Node holding some internal data.
@@ -34,6 +38,7 @@ public class Node implements NodeFunctions {
 		this.left = null;
 		this.right = null;
 		this.data = data;
+		this.size = 1;
 	}
 
 	/**
@@ -111,6 +116,63 @@ public class Node implements NodeFunctions {
 		this.parent = n;
 	}
 
+	/**
+	 * Returns whether the current Node is colored red.
+	 * Plain BSTs never look at the color, red-black trees use it to stay balanced.
+	 * 
+	 * @return true if the Node is red, false if it is black
+	 */
+	public boolean isRed() {
+		return this.red;
+	}
+
+	/**
+	 * Sets the color of the current Node.
+	 * 
+	 * @param boolean red - true to color the Node red, false to color it black.
+	 */
+	public void setRed(boolean red) {
+		this.red = red;
+	}
+
+	/**
+	 * Returns the cached height of the subtree rooted at the current Node.
+	 * A Node without children has height 0.
+	 * 
+	 * @return the internally held height
+	 */
+	public int getHeight() {
+		return this.height;
+	}
+
+	/**
+	 * Sets the cached height of the subtree rooted at the current Node.
+	 * 
+	 * @param int height - specifies the new height of the subtree.
+	 */
+	public void setHeight(int height) {
+		this.height = height;
+	}
+
+	/**
+	 * Returns the number of Nodes in the subtree rooted at the current Node,
+	 * counting the current Node itself.
+	 * 
+	 * @return the internally held subtree size
+	 */
+	public int getSize() {
+		return this.size;
+	}
+
+	/**
+	 * Sets the number of Nodes in the subtree rooted at the current Node.
+	 * 
+	 * @param int size - specifies the new subtree size.
+	 */
+	public void setSize(int size) {
+		this.size = size;
+	}
+
 	/**
 	 * Returns a string representation of the current Node's state, of the form
 	 * "(x,y,z,w)", where:
@@ -133,21 +195,65 @@ public class Node implements NodeFunctions {
 	 */
 	@Override
 	public String toString() {
-		String ret = "(" + this.key + ",";
-		
+		StringBuilder ret = new StringBuilder(24);
+		try {
+			appendTo(ret);
+		} catch (java.io.IOException e) {
+			// a StringBuilder never throws
+		}
+		return ret.toString();
+	}
+
+	/**
+	 * Appends the same representation as toString, "(x,y,z,w)", to some output
+	 * without building any intermediate Strings, so that writing out a large tree
+	 * does not create garbage for every Node.
+	 * 
+	 * @param Appendable out - specifies where the representation is written.
+	 * 
+	 * @throws java.io.IOException if the output cannot be written to
+	 */
+	public void appendTo(Appendable out) throws java.io.IOException {
+		out.append('(');
+		appendInt(out, this.key);
+		out.append(',');
 		if (this.parent != null) {
-			ret += parent.key;
+			appendInt(out, this.parent.key);
 		}
-		ret += ",";
+		out.append(',');
 		if (this.left != null) {
-			ret += left.key;
+			appendInt(out, this.left.key);
 		}
-		ret += ",";
+		out.append(',');
 		if (this.right != null) {
-			ret += right.key;
+			appendInt(out, this.right.key);
+		}
+		out.append(')');
+	}
+
+	/**
+	 * Writes the decimal digits of an int one char at a time.
+	 * 
+	 * @param Appendable out - specifies where the digits are written.
+	 * @param int        value - the number to write.
+	 * 
+	 * @throws java.io.IOException if the output cannot be written to
+	 */
+	static void appendInt(Appendable out, int value) throws java.io.IOException {
+		long v = value; // long, so that -Integer.MIN_VALUE does not overflow
+		if (v < 0) {
+			out.append('-');
+			v = -v;
+		}
+		long div = 1;
+		while (div * 10 <= v) {
+			div *= 10;
+		}
+		while (div > 0) {
+			out.append((char) ('0' + (v / div)));
+			v %= div;
+			div /= 10;
 		}
-		ret += ")";
-		return ret;
 	}
 
 	/**
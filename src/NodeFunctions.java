@@ -52,6 +52,49 @@ interface NodeFunctions
 	 */ 
 	public void setParent(Node n);
 
+	/**
+	 * Returns whether the current Node is colored red.
+	 * 
+	 * @return true if the Node is red, false if it is black
+	 */ 
+	public boolean isRed();
+
+	/**
+	 * Sets the color of the current Node.
+	 * 
+	 * @param boolean red - true to color the Node red, false to color it black.
+	 */ 
+	public void setRed(boolean red);
+
+	/**
+	 * Returns the cached height of the subtree rooted at the current Node.
+	 * 
+	 * @return the internally held height
+	 */ 
+	public int getHeight();
+
+	/**
+	 * Sets the cached height of the subtree rooted at the current Node.
+	 * 
+	 * @param int height - specifies the new height of the subtree.
+	 */ 
+	public void setHeight(int height);
+
+	/**
+	 * Returns the number of Nodes in the subtree rooted at the current Node,
+	 * counting the current Node itself.
+	 * 
+	 * @return the internally held subtree size
+	 */ 
+	public int getSize();
+
+	/**
+	 * Sets the number of Nodes in the subtree rooted at the current Node.
+	 * 
+	 * @param int size - specifies the new subtree size.
+	 */ 
+	public void setSize(int size);
+
 	/**
 	 * Returns a string representation of the current Node's state, of the form "(x,y,z,w)", where:
 	 * 
@@ -72,6 +115,16 @@ interface NodeFunctions
 	 */ 
 	public String toString();
 
+	/**
+	 * Appends the same representation as toString to some output, without
+	 * building any intermediate Strings.
+	 * 
+	 * @param Appendable out - specifies where the representation is written.
+	 * 
+	 * @throws java.io.IOException if the output cannot be written to
+	 */ 
+	public void appendTo(Appendable out) throws java.io.IOException;
+
 	/**
 	 * Returns whether the current Node is equal to another object.
 	 * A Node is considered equal to another Node if they have the same key value.
@@ -0,0 +1,17 @@
+/**
+ * The NodeVisitor interface is the callback used by the visitor walks of our BST.
+ * The key is passed as a primitive so that a visitor which only needs the keys
+ * never has to touch the Node.
+ */ 
+interface NodeVisitor
+{
+    /**
+     * Called once for every Node visited by a walk.
+     * 
+     * @param int  key - the key value of the visited Node.
+     * @param Node x - the visited Node.
+     * @param int  depth - how far below the starting Node of the walk x is (the
+     *             starting Node itself is at depth 0).
+     */ 
+    public void visit(int key, Node x, int depth);
+}
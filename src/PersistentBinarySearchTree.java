@@ -0,0 +1,388 @@
+/**
+ * A Binary Search Tree whose versions never change once made, so that a reader
+ * can keep a consistent view of it for free while writers carry on.
+ *
+ * The tree is built of PersistentNodes, which are immutable and have no parent
+ * links. An insert, update or delete copies only the path from the root down to
+ * the change (O(log n) PersistentNodes), reuses every other subtree as it is, and
+ * ends with a new root; the old root still describes the old version, untouched.
+ * The static insert, update and delete functions do exactly that and hand back
+ * the new root.
+ *
+ * A PersistentBinarySearchTree is a handle which holds the current root.
+ * snapshot() returns another handle on the same root in O(1): both can then be
+ * read and changed without ever affecting each other. Writes through one handle
+ * are serialized, reads never block and never see a half finished write.
+ *
+ * The paths are kept balanced the AVL way (subtree heights differ by at most
+ * one), so every operation is O(log n). Without parent links, getSuccessor and
+ * getPredecessor search down from the root for a key instead of stepping from a
+ * Node.
+ */
+public class PersistentBinarySearchTree {
+    private volatile PersistentNode root;
+
+    /**
+     * Default constructor.
+     * Creates an empty BST, represented by the root being null initially.
+     */
+    public PersistentBinarySearchTree() {
+        this(null);
+    }
+
+    /**
+     * Creates a handle on an existing version of a tree.
+     *
+     * @param PersistentNode root - the root of the version (null for an empty tree).
+     */
+    public PersistentBinarySearchTree(PersistentNode root) {
+        this.root = root;
+    }
+
+    /**
+     * Getter for the root of the current version of the BST.
+     *
+     * @return the root PersistentNode (null if the BST is empty)
+     */
+    public PersistentNode getRoot() {
+        return this.root;
+    }
+
+    /**
+     * Returns a new handle on the current version of the BST, in O(1).
+     * Later changes to either handle are not seen by the other one.
+     *
+     * @return a handle sharing the current version
+     */
+    public PersistentBinarySearchTree snapshot() {
+        return new PersistentBinarySearchTree(this.root);
+    }
+
+    /**
+     * Returns the number of keys in the current version of the BST.
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        return PersistentNode.sizeOf(this.root);
+    }
+
+    /**
+     * Returns the height of the current version of the BST.
+     *
+     * @return the height of the tree (-1 if it is empty)
+     */
+    public int getHeight() {
+        return PersistentNode.heightOf(this.root);
+    }
+
+    /**
+     * Inserts a key with some internal data into the BST.
+     * If the key is already in the BST, then the BST is left unchanged.
+     *
+     * @param int    key - specifies the key to be added.
+     * @param Object data - specifies the internal data held with the key.
+     *
+     * @return true if the key was added, false if it was already in the BST
+     */
+    public synchronized boolean insertNode(int key, Object data) {
+        PersistentNode before = this.root;
+        PersistentNode after = insert(before, key, data);
+        this.root = after;
+        return after != before;
+    }
+
+    /**
+     * Replaces the internal data held with an existing key.
+     * If there is no such key in the BST, then this update is ignored.
+     *
+     * @param int    key - specifies which key to update.
+     * @param Object data - specifies the new internal data.
+     */
+    public synchronized void updateNode(int key, Object data) {
+        this.root = update(this.root, key, data);
+    }
+
+    /**
+     * Attempts to find and delete a key from the BST.
+     * If the key cannot be found, then the BST is left unchanged.
+     *
+     * @param int key - the key to be removed.
+     *
+     * @return true if the key was removed, false if it was not in the BST
+     */
+    public synchronized boolean deleteNode(int key) {
+        PersistentNode before = this.root;
+        PersistentNode after = delete(before, key);
+        this.root = after;
+        return after != before;
+    }
+
+    /**
+     * Attempts to find the PersistentNode holding a key.
+     *
+     * @param int key - the key value we are attempting to find.
+     *
+     * @return the PersistentNode holding the key (null if not found)
+     */
+    public PersistentNode getNode(int key) {
+        PersistentNode x = this.root;
+        while (x != null && key != x.getKey()) {
+            x = key < x.getKey() ? x.getLeft() : x.getRight();
+        }
+        return x;
+    }
+
+    /**
+     * Returns whether the specified key is held in the BST.
+     *
+     * @param int key - the key value we are looking for.
+     *
+     * @return true if found, false otherwise
+     */
+    public boolean contains(int key) {
+        return getNode(key) != null;
+    }
+
+    /**
+     * Returns the PersistentNode holding the smallest key.
+     *
+     * @return the minimum (null if the BST is empty)
+     */
+    public PersistentNode getMin() {
+        PersistentNode x = this.root;
+        if (x == null) {
+            return null;
+        }
+        while (x.getLeft() != null) {
+            x = x.getLeft();
+        }
+        return x;
+    }
+
+    /**
+     * Returns the PersistentNode holding the largest key.
+     *
+     * @return the maximum (null if the BST is empty)
+     */
+    public PersistentNode getMax() {
+        PersistentNode x = this.root;
+        if (x == null) {
+            return null;
+        }
+        while (x.getRight() != null) {
+            x = x.getRight();
+        }
+        return x;
+    }
+
+    /**
+     * Returns the PersistentNode holding the least key greater than the specified
+     * key, which does not need to be in the BST itself.
+     *
+     * @param int key - the key we start from.
+     *
+     * @return the successor (null if there is none)
+     */
+    public PersistentNode getSuccessor(int key) {
+        PersistentNode successor = null;
+        PersistentNode x = this.root;
+        while (x != null) {
+            if (key < x.getKey()) {
+                successor = x; // best so far, look for a smaller one on the left
+                x = x.getLeft();
+            }
+            else {
+                x = x.getRight();
+            }
+        }
+        return successor;
+    }
+
+    /**
+     * Returns the PersistentNode holding the greatest key less than the specified
+     * key, which does not need to be in the BST itself.
+     *
+     * @param int key - the key we start from.
+     *
+     * @return the predecessor (null if there is none)
+     */
+    public PersistentNode getPredecessor(int key) {
+        PersistentNode predecessor = null;
+        PersistentNode x = this.root;
+        while (x != null) {
+            if (key > x.getKey()) {
+                predecessor = x; // best so far, look for a larger one on the right
+                x = x.getRight();
+            }
+            else {
+                x = x.getLeft();
+            }
+        }
+        return predecessor;
+    }
+
+    /**
+     * Traverses the current version in order, passing every PersistentNode to an
+     * action. Since the version cannot change, the walk is consistent even while
+     * other threads write to this handle.
+     *
+     * @param java.util.function.Consumer<PersistentNode> action - called once per
+     *                                                    PersistentNode, in key order.
+     */
+    public void inOrderWalk(java.util.function.Consumer<PersistentNode> action) {
+        // the tree is balanced, so the stack never holds more than ~1.44*log(n) entries
+        java.util.ArrayDeque<PersistentNode> stack = new java.util.ArrayDeque<>();
+        PersistentNode x = this.root;
+        while (x != null || !stack.isEmpty()) {
+            while (x != null) {
+                stack.push(x);
+                x = x.getLeft();
+            }
+            x = stack.pop();
+            action.accept(x);
+            x = x.getRight();
+        }
+    }
+
+    /**
+     * Traverses the current version in order, storing each PersistentNode's
+     * toString in the list.
+     *
+     * @param java.util.ArrayList<String> list - the list where the strings are
+     *                                    stored.
+     */
+    public void inOrderWalk(java.util.ArrayList<String> list) {
+        inOrderWalk(x -> list.add(x.toString()));
+    }
+
+    /**
+     * Returns the root of a version with a key added, copying only the path down to
+     * where it goes. The version passed in is not changed.
+     *
+     * @param PersistentNode x - the root of the version to start from (may be null).
+     * @param int            key - specifies the key to be added.
+     * @param Object         data - specifies the internal data held with the key.
+     *
+     * @return the root of the new version, x itself if the key was already there
+     */
+    public static PersistentNode insert(PersistentNode x, int key, Object data) {
+        if (x == null) {
+            return new PersistentNode(key, data, null, null);
+        }
+        if (key < x.getKey()) {
+            PersistentNode l = insert(x.getLeft(), key, data);
+            return l == x.getLeft() ? x : balance(x.getKey(), x.getData(), l, x.getRight());
+        }
+        if (key > x.getKey()) {
+            PersistentNode r = insert(x.getRight(), key, data);
+            return r == x.getRight() ? x : balance(x.getKey(), x.getData(), x.getLeft(), r);
+        }
+        return x;
+    }
+
+    /**
+     * Returns the root of a version where a key holds new internal data, copying
+     * only the path down to it. The version passed in is not changed.
+     *
+     * @param PersistentNode x - the root of the version to start from (may be null).
+     * @param int            key - specifies which key to update.
+     * @param Object         data - specifies the new internal data.
+     *
+     * @return the root of the new version, x itself if the key was not there
+     */
+    public static PersistentNode update(PersistentNode x, int key, Object data) {
+        if (x == null) {
+            return null;
+        }
+        if (key < x.getKey()) {
+            PersistentNode l = update(x.getLeft(), key, data);
+            return l == x.getLeft() ? x : new PersistentNode(x.getKey(), x.getData(), l, x.getRight());
+        }
+        if (key > x.getKey()) {
+            PersistentNode r = update(x.getRight(), key, data);
+            return r == x.getRight() ? x : new PersistentNode(x.getKey(), x.getData(), x.getLeft(), r);
+        }
+        return new PersistentNode(key, data, x.getLeft(), x.getRight());
+    }
+
+    /**
+     * Returns the root of a version with a key removed, copying only the path down
+     * to it (and to its successor, if that takes its place). The version passed in
+     * is not changed.
+     *
+     * @param PersistentNode x - the root of the version to start from (may be null).
+     * @param int            key - the key to be removed.
+     *
+     * @return the root of the new version, x itself if the key was not there
+     */
+    public static PersistentNode delete(PersistentNode x, int key) {
+        if (x == null) {
+            return null;
+        }
+        if (key < x.getKey()) {
+            PersistentNode l = delete(x.getLeft(), key);
+            return l == x.getLeft() ? x : balance(x.getKey(), x.getData(), l, x.getRight());
+        }
+        if (key > x.getKey()) {
+            PersistentNode r = delete(x.getRight(), key);
+            return r == x.getRight() ? x : balance(x.getKey(), x.getData(), x.getLeft(), r);
+        }
+
+        if (x.getLeft() == null) {
+            return x.getRight();
+        }
+        if (x.getRight() == null) {
+            return x.getLeft();
+        }
+        // the successor takes x's place, like in vural_BinarySearchTree.deleteNode
+        PersistentNode y = x.getRight();
+        while (y.getLeft() != null) {
+            y = y.getLeft();
+        }
+        return balance(y.getKey(), y.getData(), x.getLeft(), deleteMin(x.getRight()));
+    }
+
+    private static PersistentNode deleteMin(PersistentNode x) {
+        if (x.getLeft() == null) {
+            return x.getRight();
+        }
+        return balance(x.getKey(), x.getData(), deleteMin(x.getLeft()), x.getRight());
+    }
+
+    /**
+     * Creates the PersistentNode for (key, data) over two subtrees whose heights
+     * differ by at most two, rotating (by creating new PersistentNodes) when they
+     * differ by exactly two.
+     */
+    private static PersistentNode balance(int key, Object data, PersistentNode l, PersistentNode r) {
+        int hl = PersistentNode.heightOf(l);
+        int hr = PersistentNode.heightOf(r);
+
+        if (hl > hr + 1) {
+            PersistentNode ll = l.getLeft();
+            PersistentNode lr = l.getRight();
+            if (PersistentNode.heightOf(ll) >= PersistentNode.heightOf(lr)) {
+                // single right rotation
+                return new PersistentNode(l.getKey(), l.getData(), ll, new PersistentNode(key, data, lr, r));
+            }
+            // left-right double rotation
+            return new PersistentNode(lr.getKey(), lr.getData(),
+                    new PersistentNode(l.getKey(), l.getData(), ll, lr.getLeft()),
+                    new PersistentNode(key, data, lr.getRight(), r));
+        }
+        if (hr > hl + 1) {
+            PersistentNode rl = r.getLeft();
+            PersistentNode rr = r.getRight();
+            if (PersistentNode.heightOf(rr) >= PersistentNode.heightOf(rl)) {
+                // single left rotation
+                return new PersistentNode(r.getKey(), r.getData(), new PersistentNode(key, data, l, rl), rr);
+            }
+            // right-left double rotation
+            return new PersistentNode(rl.getKey(), rl.getData(),
+                    new PersistentNode(key, data, l, rl.getLeft()),
+                    new PersistentNode(r.getKey(), r.getData(), rl.getRight(), rr));
+        }
+        return new PersistentNode(key, data, l, r);
+    }
+}
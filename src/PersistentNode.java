@@ -0,0 +1,143 @@
+/**
+ * The building block of PersistentBinarySearchTree.
+ *
+ * Unlike Node, a PersistentNode never changes once it has been created, and it
+ * has no parent link: the same PersistentNode can be shared by many versions of
+ * a tree, each of which would want a different parent. Changing a tree means
+ * creating new PersistentNodes for the path from the root down to the change,
+ * while all the other subtrees are reused as they are.
+ *
+ * The key value dictates where a PersistentNode will reside in the BST, exactly
+ * like it does for Node. The height and size of its subtree are worked out once
+ * in the constructor.
+ */
+public final class PersistentNode {
+	private final int key; // dictates where the PersistentNode will be placed within a BST.
+	private final Object data; // points to some internal data held within this PersistentNode.
+	private final PersistentNode left; // the relative root of our left subtree.
+	private final PersistentNode right; // the relative root of our right subtree.
+	private final int height; // height of the subtree rooted here, a leaf has height 0.
+	private final int size; // number of PersistentNodes in the subtree rooted here, including ourselves.
+
+	/**
+	 * Value constructor which creates a PersistentNode with the given children.
+	 * The children must already be ordered around the key.
+	 *
+	 * @param int            key - specifies the key value held by this PersistentNode.
+	 * @param Object         data - specifies the internal data held by this PersistentNode.
+	 * @param PersistentNode left - specifies the left child (may be null).
+	 * @param PersistentNode right - specifies the right child (may be null).
+	 */
+	public PersistentNode(int key, Object data, PersistentNode left, PersistentNode right) {
+		this.key = key;
+		this.data = data;
+		this.left = left;
+		this.right = right;
+		this.height = Math.max(heightOf(left), heightOf(right)) + 1;
+		this.size = sizeOf(left) + sizeOf(right) + 1;
+	}
+
+	/**
+	 * Returns the key value stored within the current PersistentNode.
+	 *
+	 * @return the internally held key value
+	 */
+	public int getKey() {
+		return this.key;
+	}
+
+	/**
+	 * Getter for the internal data held within the current PersistentNode.
+	 *
+	 * @return the internally held data
+	 */
+	public Object getData() {
+		return this.data;
+	}
+
+	/**
+	 * Returns the PersistentNode which is the left child of the current one.
+	 *
+	 * @return the left child (may be null)
+	 */
+	public PersistentNode getLeft() {
+		return this.left;
+	}
+
+	/**
+	 * Returns the PersistentNode which is the right child of the current one.
+	 *
+	 * @return the right child (may be null)
+	 */
+	public PersistentNode getRight() {
+		return this.right;
+	}
+
+	/**
+	 * Returns the height of the subtree rooted at the current PersistentNode.
+	 *
+	 * @return the height of the subtree, 0 for a leaf
+	 */
+	public int getHeight() {
+		return this.height;
+	}
+
+	/**
+	 * Returns the number of PersistentNodes in the subtree rooted at the current
+	 * one, counting the current one itself.
+	 *
+	 * @return the subtree size
+	 */
+	public int getSize() {
+		return this.size;
+	}
+
+	/**
+	 * Returns a string representation of the current PersistentNode's state, of
+	 * the form "(x,z,w)", where:
+	 *
+	 * - x is the current PersistentNode's key value.
+	 * - z is the left child's key value.
+	 * - w is the right child's key value.
+	 *
+	 * A missing child is represented via an empty String, as in Node.toString. There
+	 * is no parent to show.
+	 *
+	 * @return String representation of the current PersistentNode
+	 */
+	@Override
+	public String toString() {
+		StringBuilder ret = new StringBuilder(20);
+		ret.append('(').append(this.key).append(',');
+		if (this.left != null) {
+			ret.append(this.left.key);
+		}
+		ret.append(',');
+		if (this.right != null) {
+			ret.append(this.right.key);
+		}
+		return ret.append(')').toString();
+	}
+
+	/**
+	 * Returns the height of a possibly empty subtree.
+	 *
+	 * @param PersistentNode x - the relative root (may be null).
+	 *
+	 * @return the height of the subtree, -1 if it is empty
+	 */
+	static int heightOf(PersistentNode x) {
+		return x == null ? -1 : x.height;
+	}
+
+	/**
+	 * Returns the size of a possibly empty subtree.
+	 *
+	 * @param PersistentNode x - the relative root (may be null).
+	 *
+	 * @return the number of PersistentNodes in the subtree, 0 if it is empty
+	 */
+	static int sizeOf(PersistentNode x) {
+		return x == null ? 0 : x.size;
+	}
+}
@@ -0,0 +1,309 @@
+/**
+ * A red-black flavour of our Binary Search Tree.
+ *
+ * Every Node is colored red or black, and the tree keeps the following rules:
+ * 1. the root is black
+ * 2. a red Node never has a red child
+ * 3. every path from a Node down to a missing (null) child passes through the
+ * same number of black Nodes
+ *
+ * Together these rules keep the height below 2*log(n+1), so getNode, insertNode
+ * and deleteNode stay O(log n) even when the keys arrive already sorted.
+ *
+ * Lookups, walks, successor / predecessor and so on are inherited unchanged from
+ * vural_BinarySearchTree, only the operations which change the shape are
+ * replaced.
+ */
+public class RedBlackBinarySearchTree extends vural_BinarySearchTree {
+
+    /**
+     * Default constructor.
+     * Creates an empty red-black tree, represented by the root node being null
+     * initially.
+     */
+    public RedBlackBinarySearchTree() {
+        super();
+    }
+
+    /**
+     * Inserts a Node into the tree and then recolors / rotates on the way back up
+     * until the red-black rules hold again.
+     * If a Node exists in the tree with the same key as Node z, then we should not
+     * add z.
+     *
+     * @param Node z - specifies the new Node to be added to the tree.
+     *
+     * @return true if z was added, false if its key was already in the tree
+     */
+    @Override
+    public boolean insertNode(Node z) {
+        if (!super.insertNode(z)) {
+            return false;
+        }
+
+        z.setRed(true);
+        insertFixup(z);
+        return true;
+    }
+
+    /**
+     * Attempts to find and delete a Node from the tree.
+     * If the specified Node cannot be found in the tree, then this function should
+     * not alter the tree.
+     *
+     * This follows the same splicing as vural_BinarySearchTree.deleteNode, but
+     * remembers the color that disappeared from the tree and where, so that the
+     * black height can be repaired afterwards.
+     *
+     * @param Node z - the node to be found and then removed from the tree.
+     */
+    @Override
+    public void deleteNode(Node z) {
+        if (z == null) {
+            return;
+        }
+        if (this.getNode(this.getRoot(), z.getKey()) == null) {
+            return;
+        }
+
+        boolean removedRed = z.isRed();
+        Node x; // the Node which moved into the hole, may be null
+        Node xParent; // x's parent, needed because x itself may be null
+
+        if (z.getLeft() == null) {
+            x = z.getRight();
+            xParent = z.getParent();
+            shiftNode(z, x);
+        }
+        else if (z.getRight() == null) {
+            x = z.getLeft();
+            xParent = z.getParent();
+            shiftNode(z, x);
+        }
+        else {
+            Node y = getMin(z.getRight());
+            removedRed = y.isRed();
+            x = y.getRight();
+            if (y.getParent() == z) {
+                xParent = y;
+            }
+            else {
+                xParent = y.getParent();
+                shiftNode(y, y.getRight());
+                y.setRight(z.getRight());
+                y.getRight().setParent(y);
+            }
+            shiftNode(z, y);
+            y.setLeft(z.getLeft());
+            y.getLeft().setParent(y);
+            y.setRed(z.isRed());
+            y.setSize(z.getSize());
+        }
+        shrinkPath(xParent);
+
+        if (!removedRed) {
+            deleteFixup(x, xParent);
+        }
+        fireNodeDeleted(z.getKey());
+    }
+
+    /**
+     * Returns a new, empty red-black tree, used by split.
+     *
+     * @return an empty red-black tree
+     */
+    @Override
+    protected vural_BinarySearchTree newEmptyTree() {
+        return new RedBlackBinarySearchTree();
+    }
+
+    /**
+     * Joins l, m and r into one red-black tree.
+     * Both roots are made black first. If their black heights match, m becomes the
+     * black root; otherwise m goes in red on the inner spine of the blacker
+     * subtree, above the first black Node whose black height matches the other
+     * subtree, and insertFixup repairs any red-red pair from there up.
+     *
+     * The black heights are counted down the left spines, so a join costs
+     * O(log n); split does O(log n) joins and so costs O(log^2 n) in the worst case.
+     *
+     * @param Node l - the subtree of smaller keys (may be null).
+     * @param Node m - the Node going in between.
+     * @param Node r - the subtree of larger keys (may be null).
+     */
+    @Override
+    protected void joinRoots(Node l, Node m, Node r) {
+        if (l != null) {
+            l.setRed(false);
+        }
+        if (r != null) {
+            r.setRed(false);
+        }
+        int bl = blackHeight(l);
+        int br = blackHeight(r);
+
+        if (bl == br) {
+            super.joinRoots(l, m, r);
+            m.setRed(false);
+            return;
+        }
+
+        Node p = null;
+        if (bl > br) {
+            setRoot(l);
+            Node y = l;
+            int b = bl; // black height of y
+            while (isRed(y) || b > br) {
+                if (!isRed(y)) {
+                    b--;
+                }
+                p = y;
+                y = y.getRight();
+            }
+            link(y, m, r);
+            p.setRight(m);
+            growPath(p, sizeOf(r) + 1);
+        }
+        else {
+            setRoot(r);
+            Node y = r;
+            int b = br;
+            while (isRed(y) || b > bl) {
+                if (!isRed(y)) {
+                    b--;
+                }
+                p = y;
+                y = y.getLeft();
+            }
+            link(l, m, y);
+            p.setLeft(m);
+            growPath(p, sizeOf(l) + 1);
+        }
+        m.setParent(p);
+        m.setRed(true);
+        insertFixup(m);
+    }
+
+    private static int blackHeight(Node x) {
+        int b = 0;
+        for (; x != null; x = x.getLeft()) {
+            if (!x.isRed()) {
+                b++;
+            }
+        }
+        return b;
+    }
+
+    private static boolean isRed(Node n) {
+        return n != null && n.isRed();
+    }
+
+    private void insertFixup(Node z) {
+        while (isRed(z.getParent())) {
+            Node p = z.getParent();
+            Node g = p.getParent(); // never null, a red Node is never the root
+
+            if (p == g.getLeft()) {
+                Node uncle = g.getRight();
+                if (isRed(uncle)) {
+                    p.setRed(false);
+                    uncle.setRed(false);
+                    g.setRed(true);
+                    z = g;
+                }
+                else {
+                    if (z == p.getRight()) {
+                        z = p;
+                        rotateLeft(z);
+                        p = z.getParent();
+                    }
+                    p.setRed(false);
+                    g.setRed(true);
+                    rotateRight(g);
+                }
+            }
+            else {
+                Node uncle = g.getLeft();
+                if (isRed(uncle)) {
+                    p.setRed(false);
+                    uncle.setRed(false);
+                    g.setRed(true);
+                    z = g;
+                }
+                else {
+                    if (z == p.getLeft()) {
+                        z = p;
+                        rotateRight(z);
+                        p = z.getParent();
+                    }
+                    p.setRed(false);
+                    g.setRed(true);
+                    rotateLeft(g);
+                }
+            }
+        }
+        getRoot().setRed(false);
+    }
+
+    private void deleteFixup(Node x, Node parent) {
+        while (x != getRoot() && !isRed(x)) {
+            if (x == parent.getLeft()) {
+                Node w = parent.getRight();
+                if (isRed(w)) {
+                    w.setRed(false);
+                    parent.setRed(true);
+                    rotateLeft(parent);
+                    w = parent.getRight();
+                }
+                if (!isRed(w.getLeft()) && !isRed(w.getRight())) {
+                    w.setRed(true);
+                    x = parent;
+                    parent = x.getParent();
+                }
+                else {
+                    if (!isRed(w.getRight())) {
+                        w.getLeft().setRed(false);
+                        w.setRed(true);
+                        rotateRight(w);
+                        w = parent.getRight();
+                    }
+                    w.setRed(parent.isRed());
+                    parent.setRed(false);
+                    w.getRight().setRed(false);
+                    rotateLeft(parent);
+                    x = getRoot();
+                }
+            }
+            else {
+                Node w = parent.getLeft();
+                if (isRed(w)) {
+                    w.setRed(false);
+                    parent.setRed(true);
+                    rotateRight(parent);
+                    w = parent.getLeft();
+                }
+                if (!isRed(w.getLeft()) && !isRed(w.getRight())) {
+                    w.setRed(true);
+                    x = parent;
+                    parent = x.getParent();
+                }
+                else {
+                    if (!isRed(w.getLeft())) {
+                        w.getRight().setRed(false);
+                        w.setRed(true);
+                        rotateLeft(w);
+                        w = parent.getLeft();
+                    }
+                    w.setRed(parent.isRed());
+                    parent.setRed(false);
+                    w.getLeft().setRed(false);
+                    rotateRight(parent);
+                    x = getRoot();
+                }
+            }
+        }
+        if (x != null) {
+            x.setRed(false);
+        }
+    }
+}
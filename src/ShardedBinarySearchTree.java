@@ -0,0 +1,488 @@
+/**
+ * A Binary Search Tree which many threads can write to at once, made of several
+ * smaller trees ("shards"), each owning one range of the int key space and
+ * guarded by its own read/write lock.
+ *
+ * An operation on one key only locks the shard whose range holds the key, so
+ * writers working in different ranges never wait for each other and write
+ * throughput grows with the number of shards (and cores). The shards are kept in
+ * an array sorted by range which is swapped as a whole whenever the shards
+ * change, so finding a shard is a lock-free binary search.
+ *
+ * The shards reshape themselves as they are used:
+ * - a shard holding more than maxShardSize keys, or one whose lock keeps being
+ * found taken by other writers ("hot"), is split in two at its median key
+ * - two neighbouring shards which together hold few keys are merged back, as
+ * long as there are more shards than the tree started with
+ * Both use split and join of vural_BinarySearchTree, so they cost O(log n) with
+ * the balanced variants instead of re-inserting every key.
+ *
+ * getMin, getMax, getSuccessor, getPredecessor and rangeWalk move from shard to
+ * shard when they run off the end of one. Each shard is read consistently, but
+ * the walk as a whole is not atomic: changes made to shards it has not reached
+ * yet while it runs may or may not be seen.
+ *
+ * The Nodes returned are detached copies holding a key and its data, their
+ * parent and child links are always null.
+ */
+public class ShardedBinarySearchTree {
+    /**
+     * How many times a writer may find a shard's lock taken before the shard counts
+     * as hot and is split.
+     */
+    public static final int HOT_CONTENTION = 1 << 10;
+
+    private static final long KEY_SPACE = 1L << 32;
+
+    private final int maxShardSize;
+    private final int minShards; // merging stops at the number of shards we started with
+    private final Object restructure = new Object(); // held while shards are split or merged
+
+    private volatile Shard[] shards; // sorted by range, together covering every int
+
+    /**
+     * Creates an empty tree of red-black shards, with the key space cut into 16
+     * equal ranges to start with.
+     */
+    public ShardedBinarySearchTree() {
+        this(16, 1 << 16, RedBlackBinarySearchTree::new);
+    }
+
+    /**
+     * Creates an empty tree with the key space cut into the specified number of
+     * equal ranges to start with.
+     *
+     * @param int                                                   shards - the
+     *                                                              number of shards
+     *                                                              to start with.
+     * @param int                                                   maxShardSize -
+     *                                                              the number of
+     *                                                              keys above which
+     *                                                              a shard is split.
+     * @param java.util.function.Supplier<vural_BinarySearchTree>   factory - creates
+     *                                                              the (empty) tree
+     *                                                              of each shard.
+     *
+     * @throws IllegalArgumentException if shards or maxShardSize is not positive
+     */
+    public ShardedBinarySearchTree(int shards, int maxShardSize,
+            java.util.function.Supplier<vural_BinarySearchTree> factory) {
+        if (shards < 1 || maxShardSize < 1) {
+            throw new IllegalArgumentException("shards and maxShardSize must be positive");
+        }
+        this.maxShardSize = maxShardSize;
+        this.minShards = shards;
+
+        Shard[] initial = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            long lo = Integer.MIN_VALUE + KEY_SPACE * i / shards;
+            long hi = Integer.MIN_VALUE + KEY_SPACE * (i + 1) / shards;
+            initial[i] = new Shard(lo, hi, factory.get());
+        }
+        this.shards = initial;
+    }
+
+    /**
+     * Inserts a Node's key and data into the tree.
+     * If the key is already in the tree, then the tree is left unchanged.
+     *
+     * @param Node z - specifies the key and data to be added. The tree keeps its own
+     *             Node, z itself is not linked in.
+     *
+     * @return true if the key was added, false if it was already in the tree
+     */
+    public boolean insertNode(Node z) {
+        Shard s = lockForWrite(z.getKey());
+        boolean inserted;
+        boolean split;
+        try {
+            inserted = s.tree.insertNode(new Node(z.getKey(), z.getData()));
+            split = inserted && needsSplit(s);
+        } finally {
+            s.lock.writeLock().unlock();
+        }
+        if (split) {
+            split(s);
+        }
+        return inserted;
+    }
+
+    /**
+     * Replaces the data held with an existing key.
+     * If there is no such key in the tree, then this update is ignored.
+     *
+     * @param Node z - specifies the key to update and its new data.
+     */
+    public void updateNode(Node z) {
+        Shard s = lockForWrite(z.getKey());
+        try {
+            s.tree.updateNode(z);
+        } finally {
+            s.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Attempts to find and delete a key from the tree.
+     * If the key cannot be found, then the tree is left unchanged.
+     *
+     * @param int key - the key to be removed.
+     *
+     * @return true if the key was removed, false if it was not in the tree
+     */
+    public boolean deleteNode(int key) {
+        Shard s = lockForWrite(key);
+        boolean merge;
+        try {
+            Node z = s.tree.getNode(s.tree.getRoot(), key);
+            if (z == null) {
+                return false;
+            }
+            s.tree.deleteNode(z);
+            merge = s.tree.size() < maxShardSize / 8;
+        } finally {
+            s.lock.writeLock().unlock();
+        }
+        if (merge) {
+            merge(s);
+        }
+        return true;
+    }
+
+    /**
+     * Attempts to find the key in the tree.
+     *
+     * @param int key - the key value we are looking for.
+     *
+     * @return a detached Node holding the key and its data (null if not found)
+     */
+    public Node getNode(int key) {
+        Shard s = lockForRead(key);
+        try {
+            return copy(s.tree.getNode(s.tree.getRoot(), key));
+        } finally {
+            s.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns whether the key is held in the tree.
+     *
+     * @param int key - the key value we are looking for.
+     *
+     * @return true if found, false otherwise
+     */
+    public boolean contains(int key) {
+        return getNode(key) != null;
+    }
+
+    /**
+     * Returns the smallest key in the tree.
+     *
+     * @return a detached Node holding the minimum key (null if the tree is empty)
+     */
+    public Node getMin() {
+        return ceiling(Integer.MIN_VALUE, true);
+    }
+
+    /**
+     * Returns the largest key in the tree.
+     *
+     * @return a detached Node holding the maximum key (null if the tree is empty)
+     */
+    public Node getMax() {
+        return floor(Integer.MAX_VALUE, true);
+    }
+
+    /**
+     * Returns the smallest key greater than the specified key, looking into the
+     * following shards if this key's shard holds none.
+     * The key itself does not need to be in the tree.
+     *
+     * @param int key - the key we start from.
+     *
+     * @return a detached Node holding the successor (null if there is none)
+     */
+    public Node getSuccessor(int key) {
+        return ceiling(key, false);
+    }
+
+    /**
+     * Returns the largest key smaller than the specified key, looking into the
+     * preceding shards if this key's shard holds none.
+     * The key itself does not need to be in the tree.
+     *
+     * @param int key - the key we start from.
+     *
+     * @return a detached Node holding the predecessor (null if there is none)
+     */
+    public Node getPredecessor(int key) {
+        return floor(key, false);
+    }
+
+    /**
+     * Visits, in ascending key order, every Node whose key is within [lo, hi],
+     * going through the shards covering the range one after another. Each shard
+     * is read locked while its part of the range is visited, so the visitor must
+     * not keep or change the Nodes it is given, nor write to this tree.
+     *
+     * @param int                                lo - the smallest key to visit.
+     * @param int                                hi - the largest key to visit.
+     * @param java.util.function.Consumer<Node>  visitor - called once per Node in
+     *                                           the range.
+     */
+    public void rangeWalk(int lo, int hi, java.util.function.Consumer<Node> visitor) {
+        long from = lo;
+        while (from <= hi) {
+            Shard s = lockForRead((int) from);
+            try {
+                s.tree.rangeWalk((int) from, (int) Math.min(hi, s.hi - 1), visitor);
+            } finally {
+                s.lock.readLock().unlock();
+            }
+            from = s.hi;
+        }
+    }
+
+    /**
+     * Returns the number of keys in the tree, summed over the shards one at a
+     * time. Each shard is counted under its read lock, but not all of them at
+     * once, so while other threads write the result is only approximate: it may
+     * count a change to one shard and miss one made earlier to another.
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        int size = 0;
+        for (Shard s : shards) {
+            size += sizeOf(s);
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of shards the key space is currently cut into.
+     *
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    private Node ceiling(long from, boolean inclusive) {
+        while (from <= Integer.MAX_VALUE) {
+            Shard s = lockForRead((int) from);
+            try {
+                Node x = s.tree.getCeiling((int) from, inclusive);
+                if (x != null) {
+                    return copy(x);
+                }
+            } finally {
+                s.lock.readLock().unlock();
+            }
+            from = s.hi; // nothing left in this shard, carry on with the next one
+            inclusive = true;
+        }
+        return null;
+    }
+
+    private Node floor(long from, boolean inclusive) {
+        while (from >= Integer.MIN_VALUE) {
+            Shard s = lockForRead((int) from);
+            try {
+                Node x = s.tree.getFloor((int) from, inclusive);
+                if (x != null) {
+                    return copy(x);
+                }
+            } finally {
+                s.lock.readLock().unlock();
+            }
+            from = s.lo - 1;
+            inclusive = true;
+        }
+        return null;
+    }
+
+    private static Node copy(Node x) {
+        return x == null ? null : new Node(x.getKey(), x.getData());
+    }
+
+    /**
+     * Returns the shard currently owning a key, without locking.
+     */
+    private Shard route(int key) {
+        Shard[] current = shards;
+        int lo = 0;
+        int hi = current.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (current[mid].lo <= key) {
+                lo = mid;
+            }
+            else {
+                hi = mid - 1;
+            }
+        }
+        return current[lo];
+    }
+
+    /**
+     * Read locks the shard owning a key. A shard may be split or merged away
+     * between finding it and locking it, in which case we look again.
+     */
+    private Shard lockForRead(int key) {
+        while (true) {
+            Shard s = route(key);
+            s.lock.readLock().lock();
+            if (!s.retired) {
+                return s;
+            }
+            s.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Write locks the shard owning a key, counting how often the lock was already
+     * taken so that hot shards can be split.
+     */
+    private Shard lockForWrite(int key) {
+        while (true) {
+            Shard s = route(key);
+            java.util.concurrent.locks.Lock w = s.lock.writeLock();
+            if (!w.tryLock()) {
+                s.contention.increment();
+                w.lock();
+            }
+            if (!s.retired) {
+                return s;
+            }
+            w.unlock();
+        }
+    }
+
+    /**
+     * A shard is split once it is too big, or once it is hot and big enough that
+     * its halves will not be merged straight back. The caller holds its lock.
+     */
+    private boolean needsSplit(Shard s) {
+        int size = s.tree.size();
+        if (size > maxShardSize) {
+            return true;
+        }
+        return size >= 2 && size >= maxShardSize / 4 && s.contention.sum() > HOT_CONTENTION;
+    }
+
+    /**
+     * Splits a shard at its median key, if it still exists and still needs it.
+     */
+    private void split(Shard s) {
+        synchronized (restructure) {
+            s.lock.writeLock().lock();
+            try {
+                if (s.retired || !needsSplit(s)) {
+                    return;
+                }
+                int size = s.tree.size();
+                int median = s.tree.select(size / 2).getKey();
+                vural_BinarySearchTree[] halves = s.tree.split(median);
+                replace(s, null, new Shard(s.lo, median, halves[0]), new Shard(median, s.hi, halves[1]));
+            } finally {
+                s.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Merges a small shard with its smaller neighbour, if they still exist and are
+     * still small enough together.
+     */
+    private void merge(Shard s) {
+        synchronized (restructure) {
+            Shard[] current = shards;
+            int i = java.util.Arrays.asList(current).indexOf(s);
+            if (i < 0 || current.length <= minShards) {
+                return;
+            }
+            // pick the smaller neighbour, then order the pair by range
+            Shard left;
+            Shard right;
+            if (i == 0 || (i + 1 < current.length && sizeOf(current[i + 1]) < sizeOf(current[i - 1]))) {
+                left = s;
+                right = current[i + 1];
+            }
+            else {
+                left = current[i - 1];
+                right = s;
+            }
+
+            left.lock.writeLock().lock();
+            right.lock.writeLock().lock();
+            try {
+                if (left.tree.size() + right.tree.size() >= maxShardSize / 4) {
+                    return;
+                }
+                vural_BinarySearchTree joined = vural_BinarySearchTree.join(left.tree, right.tree);
+                replace(left, right, new Shard(left.lo, right.hi, joined), null);
+            } finally {
+                right.lock.writeLock().unlock();
+                left.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of keys in a shard, read under its read lock.
+     */
+    private static int sizeOf(Shard s) {
+        s.lock.readLock().lock();
+        try {
+            return s.tree.size();
+        } finally {
+            s.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Publishes a new shard array where old (and the one after it, oldNext, if not
+     * null) are replaced by first (and second, if not null), then retires the old
+     * shards. The caller holds restructure and the old shards' write locks.
+     */
+    private void replace(Shard old, Shard oldNext, Shard first, Shard second) {
+        Shard[] current = shards;
+        int i = java.util.Arrays.asList(current).indexOf(old);
+        int removed = oldNext == null ? 1 : 2;
+        int added = second == null ? 1 : 2;
+
+        Shard[] next = new Shard[current.length - removed + added];
+        System.arraycopy(current, 0, next, 0, i);
+        next[i] = first;
+        if (second != null) {
+            next[i + 1] = second;
+        }
+        System.arraycopy(current, i + removed, next, i + added, current.length - i - removed);
+
+        shards = next;
+        old.retired = true;
+        if (oldNext != null) {
+            oldNext.retired = true;
+        }
+    }
+
+    /**
+     * One range of the key space, [lo, hi), and the tree holding its keys.
+     */
+    private static final class Shard {
+        final long lo;
+        final long hi;
+        final vural_BinarySearchTree tree;
+        final java.util.concurrent.locks.ReentrantReadWriteLock lock = new java.util.concurrent.locks.ReentrantReadWriteLock();
+        final java.util.concurrent.atomic.LongAdder contention = new java.util.concurrent.atomic.LongAdder();
+        volatile boolean retired; // set once the shard has been split or merged away
+
+        Shard(long lo, long hi, vural_BinarySearchTree tree) {
+            this.lo = lo;
+            this.hi = hi;
+            this.tree = tree;
+        }
+    }
+}
@@ -0,0 +1,499 @@
+/**
+ * A thread safe facade around one of our (single threaded) BSTs, for workloads
+ * which mostly read.
+ *
+ * getNode, getMin, getMax, getSuccessor and getPredecessor first run without
+ * taking any lock, using StampedLock's optimistic reads: the lock's stamp is
+ * read before the search and validated after it, and only if a writer got in
+ * between is the search repeated (a few times optimistically, then under the
+ * read lock). Readers therefore never write to shared memory on the happy path
+ * and scale with the number of cores.
+ *
+ * Because an optimistic search can look at a tree that is halfway through a
+ * change, it never trusts what it saw until the stamp validates, it gives up if
+ * it walks more steps than the tree has Nodes, and it treats any exception as
+ * a failed validation.
+ *
+ * Writes (insertNode, updateNode, deleteNode, ...) take the exclusive lock, and
+ * the walks and getHeight take the read lock since they run for a long time.
+ *
+ * The returned Nodes are the tree's own Nodes, their keys never change but their
+ * links may be changed by later writes.
+ */
+public class StampedBinarySearchTree implements BinarySearchTreeFunctions {
+    private static final int OPTIMISTIC_ATTEMPTS = 3;
+
+    // returned by the optimistic searches when they run out of steps
+    private static final Node GAVE_UP = new Node(0);
+
+    private final vural_BinarySearchTree tree;
+    private final java.util.concurrent.locks.StampedLock lock;
+    private volatile int nodes; // size of the tree after the last write, bounds a search
+
+    /**
+     * Creates a thread safe facade around an empty vural_BinarySearchTree.
+     */
+    public StampedBinarySearchTree() {
+        this(new vural_BinarySearchTree());
+    }
+
+    /**
+     * Creates a thread safe facade around an existing tree, which may be any of the
+     * variants (red-black, AVL, ...). The tree must not be used directly any more.
+     *
+     * @param vural_BinarySearchTree tree - the tree to guard.
+     */
+    public StampedBinarySearchTree(vural_BinarySearchTree tree) {
+        this.tree = tree;
+        this.lock = new java.util.concurrent.locks.StampedLock();
+        this.nodes = tree.size();
+    }
+
+    /**
+     * Getter for the root of the entire BST.
+     * Runs as an optimistic read without taking any lock, and falls back to the
+     * read lock if a writer got in.
+     *
+     * @return the root Node
+     */
+    public Node getRoot() {
+        long stamp = lock.tryOptimisticRead();
+        Node root = tree.getRoot();
+        if (lock.validate(stamp)) {
+            return root;
+        }
+        stamp = lock.readLock();
+        try {
+            return tree.getRoot();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Setter for the root of the entire BST, under the write lock.
+     * Searches are bounded by the size the new root holds; if that is too small,
+     * optimistic searches give up early and run under the read lock.
+     *
+     * @param Node root - specifies the new root Node of the BST.
+     */
+    public void setRoot(Node root) {
+        long stamp = lock.writeLock();
+        try {
+            tree.setRoot(root);
+            nodes = tree.size();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Inserts a Node into the BST under the write lock.
+     * If a Node exists in the BST with the same key as Node z, then z is not added.
+     *
+     * @param Node z - specifies the new Node to be added to the BST.
+     *
+     * @return true if z was added, false if its key was already in the BST
+     */
+    public boolean insertNode(Node z) {
+        long stamp = lock.writeLock();
+        try {
+            boolean inserted = tree.insertNode(z);
+            if (inserted) {
+                nodes = tree.size();
+            }
+            return inserted;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Replaces the data of the Node with the same key as z, under the write lock.
+     * If there is no such Node in the tree the update is ignored.
+     *
+     * @param Node z - specifies the updated state of a Node already in the BST.
+     */
+    public void updateNode(Node z) {
+        long stamp = lock.writeLock();
+        try {
+            tree.updateNode(z);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Deletes a Node from the BST under the write lock. If the Node is not in the
+     * BST, the BST is not changed.
+     *
+     * z usually comes from an earlier getNode, and another writer may have
+     * deleted it since; deleteKey finds and deletes under a single lock.
+     *
+     * @param Node z - the node to be found and then removed from the BST.
+     */
+    public void deleteNode(Node z) {
+        long stamp = lock.writeLock();
+        try {
+            int before = tree.size();
+            tree.deleteNode(z);
+            if (tree.size() != before) {
+                nodes = tree.size();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Finds and deletes the Node holding a key, under a single write lock.
+     *
+     * @param int key - the key to be removed.
+     *
+     * @return true if a Node was removed
+     */
+    public boolean deleteKey(int key) {
+        long stamp = lock.writeLock();
+        try {
+            Node z = tree.getNode(tree.getRoot(), key);
+            if (z == null) {
+                return false;
+            }
+            tree.deleteNode(z);
+            nodes = tree.size();
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Replaces the subtree rooted at u with the one rooted at v, under the write
+     * lock. Only meant for deleteNode, see BinarySearchTreeFunctions.
+     *
+     * @param Node u - the Node being replaced.
+     * @param Node v - the Node taking its place (may be null).
+     */
+    public void shiftNode(Node u, Node v) {
+        long stamp = lock.writeLock();
+        try {
+            tree.shiftNode(u, v);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Finds the Node, starting from x, which holds the specified key.
+     * Runs as an optimistic read without taking any lock, repeated up to 3 times
+     * (OPTIMISTIC_ATTEMPTS) if a writer got in, then falls back to the read lock.
+     *
+     * @param Node x   - specifies which Node we wish to start from while searching
+     *             for the node.
+     * @param int  key - the key value indicating which Node we are attempting to
+     *             find.
+     *
+     * @return the Node whose key value matches the key we specified (may be null
+     *         if not found)
+     */
+    public Node getNode(Node x, int key) {
+        return read(budget -> find(x, key, budget), () -> tree.getNode(x, key));
+    }
+
+    /**
+     * Same as getNode(getRoot(), key), with the root read inside the same
+     * optimistic read: up to 3 lock-free attempts (OPTIMISTIC_ATTEMPTS), then the
+     * read lock.
+     *
+     * @param int key - the key value we are looking for.
+     *
+     * @return the Node holding the key (null if not found)
+     */
+    public Node getNode(int key) {
+        return read(budget -> find(tree.getRoot(), key, budget), () -> tree.getNode(tree.getRoot(), key));
+    }
+
+    /**
+     * Returns the Node with the largest key in the subtree rooted at x (x itself
+     * if it has no right child).
+     * Runs as an optimistic read without taking any lock, repeated up to 3 times
+     * (OPTIMISTIC_ATTEMPTS) if a writer got in, then falls back to the read lock.
+     *
+     * @param Node x - specifies which Node we wish to start from.
+     *
+     * @return the maximum descendant of x (which may be x)
+     */
+    public Node getMax(Node x) {
+        return read(budget -> max(x, budget), () -> tree.getMax(x));
+    }
+
+    /**
+     * Returns the Node with the smallest key in the subtree rooted at x (x itself
+     * if it has no left child).
+     * Runs as an optimistic read without taking any lock, repeated up to 3 times
+     * (OPTIMISTIC_ATTEMPTS) if a writer got in, then falls back to the read lock.
+     *
+     * @param Node x - specifies which Node we wish to start from.
+     *
+     * @return the minimum descendant of x (which may be x)
+     */
+    public Node getMin(Node x) {
+        return read(budget -> min(x, budget), () -> tree.getMin(x));
+    }
+
+    /**
+     * Returns the Node holding the next larger key after x's.
+     * Runs as an optimistic read without taking any lock, repeated up to 3 times
+     * (OPTIMISTIC_ATTEMPTS) if a writer got in, then falls back to the read lock.
+     *
+     * @param Node x - specifies which Node we wish to start from.
+     *
+     * @return the successor of x (null if x holds the largest key)
+     */
+    public Node getSuccessor(Node x) {
+        return read(budget -> successor(x, budget), () -> tree.getSuccessor(x));
+    }
+
+    /**
+     * Returns the Node holding the next smaller key before x's.
+     * Runs as an optimistic read without taking any lock, repeated up to 3 times
+     * (OPTIMISTIC_ATTEMPTS) if a writer got in, then falls back to the read lock.
+     *
+     * @param Node x - specifies which Node we wish to start from.
+     *
+     * @return the predecessor of x (null if x holds the smallest key)
+     */
+    public Node getPredecessor(Node x) {
+        return read(budget -> predecessor(x, budget), () -> tree.getPredecessor(x));
+    }
+
+    /**
+     * Returns the height of the subtree rooted at x, under the read lock since it
+     * walks the whole subtree.
+     *
+     * @param Node x - specifies which Node we wish to start from while determining
+     *             the height.
+     *
+     * @return the height of the subtree (-1 if x is null)
+     */
+    public int getHeight(Node x) {
+        long stamp = lock.readLock();
+        try {
+            return tree.getHeight(x);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Same result as getHeight, computed with vural_BinarySearchTree's
+     * parallelGetHeight under the read lock: the walk uses no recursion, so a
+     * degenerate tree cannot overflow the stack.
+     *
+     * @param Node x - specifies which Node we wish to start from while determining
+     *             the height.
+     *
+     * @return the height of the subtree (-1 if x is null)
+     */
+    public int parallelGetHeight(Node x) {
+        long stamp = lock.readLock();
+        try {
+            return tree.parallelGetHeight(x);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Prints the subtree rooted at x in pre-order, under the read lock.
+     *
+     * @param Node x - the relative root of the walk.
+     */
+    public void preOrderWalk(Node x) {
+        long stamp = lock.readLock();
+        try {
+            tree.preOrderWalk(x);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Adds the Nodes of the subtree rooted at x to list in pre-order, under the
+     * read lock.
+     *
+     * @param Node                        x    - the relative root of the walk.
+     * @param java.util.ArrayList<String> list - a list of Strings that will be
+     *                                         populated in the order the Nodes are
+     *                                         visited.
+     */
+    public void preOrderWalk(Node x, java.util.ArrayList<String> list) {
+        long stamp = lock.readLock();
+        try {
+            tree.preOrderWalk(x, list);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Prints the subtree rooted at x in in-order, under the read lock.
+     *
+     * @param Node x - the relative root of the walk.
+     */
+    public void inOrderWalk(Node x) {
+        long stamp = lock.readLock();
+        try {
+            tree.inOrderWalk(x);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Adds the Nodes of the subtree rooted at x to list in in-order, under the read
+     * lock.
+     *
+     * @param Node                        x    - the relative root of the walk.
+     * @param java.util.ArrayList<String> list - a list of Strings that will be
+     *                                         populated in the order the Nodes are
+     *                                         visited.
+     */
+    public void inOrderWalk(Node x, java.util.ArrayList<String> list) {
+        long stamp = lock.readLock();
+        try {
+            tree.inOrderWalk(x, list);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Prints the subtree rooted at x in post-order, under the read lock.
+     *
+     * @param Node x - the relative root of the walk.
+     */
+    public void postOrderWalk(Node x) {
+        long stamp = lock.readLock();
+        try {
+            tree.postOrderWalk(x);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Adds the Nodes of the subtree rooted at x to list in post-order, under the
+     * read lock.
+     *
+     * @param Node                        x    - the relative root of the walk.
+     * @param java.util.ArrayList<String> list - a list of Strings that will be
+     *                                         populated in the order the Nodes are
+     *                                         visited.
+     */
+    public void postOrderWalk(Node x, java.util.ArrayList<String> list) {
+        long stamp = lock.readLock();
+        try {
+            tree.postOrderWalk(x, list);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Runs a bounded search as an optimistic read, up to OPTIMISTIC_ATTEMPTS times
+     * while writers keep getting in, and then runs the plain search under the read
+     * lock. The bounded search is handed a budget of steps, one more than the tree
+     * has Nodes, and its result only counts once the stamp validates and it did
+     * not give up; any exception it throws counts as a failed validation.
+     */
+    private Node read(java.util.function.IntFunction<Node> bounded, java.util.function.Supplier<Node> locked) {
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp == 0L) {
+                break; // a writer holds the lock right now
+            }
+            try {
+                Node found = bounded.apply(nodes + 1);
+                if (lock.validate(stamp) && found != GAVE_UP) {
+                    return found;
+                }
+            } catch (RuntimeException e) {
+                // saw a half finished write, try again
+            }
+        }
+        long stamp = lock.readLock();
+        try {
+            return locked.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /*
+     * The searches below mirror vural_BinarySearchTree, but give up (GAVE_UP) after
+     * a fixed number of steps, so a torn read can never keep them going forever.
+     */
+
+    private static Node find(Node x, int key, int budget) {
+        while (x != null && key != x.getKey()) {
+            if (--budget < 0) {
+                return GAVE_UP;
+            }
+            x = key < x.getKey() ? x.getLeft() : x.getRight();
+        }
+        return x;
+    }
+
+    private static Node max(Node x, int budget) {
+        for (Node r = x.getRight(); r != null; r = x.getRight()) {
+            if (--budget < 0) {
+                return GAVE_UP;
+            }
+            x = r;
+        }
+        return x;
+    }
+
+    private static Node min(Node x, int budget) {
+        for (Node l = x.getLeft(); l != null; l = x.getLeft()) {
+            if (--budget < 0) {
+                return GAVE_UP;
+            }
+            x = l;
+        }
+        return x;
+    }
+
+    private static Node successor(Node x, int budget) {
+        Node r = x.getRight();
+        if (r != null) {
+            return min(r, budget);
+        }
+        Node y = x.getParent();
+        while (y != null && x == y.getRight()) {
+            if (--budget < 0) {
+                return GAVE_UP;
+            }
+            x = y;
+            y = y.getParent();
+        }
+        return y;
+    }
+
+    private static Node predecessor(Node x, int budget) {
+        Node l = x.getLeft();
+        if (l != null) {
+            return max(l, budget);
+        }
+        Node y = x.getParent();
+        while (y != null && x == y.getLeft()) {
+            if (--budget < 0) {
+                return GAVE_UP;
+            }
+            x = y;
+            y = y.getParent();
+        }
+        return y;
+    }
+}
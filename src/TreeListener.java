@@ -0,0 +1,27 @@
+/**
+ * The TreeListener interface is told about every key added to or removed from a
+ * BST by insertNode and deleteNode, once the call has linked the Node in or out.
+ *
+ * Listeners are called on the thread which changed the tree, while that thread
+ * is still inside the call, so they should only record the key and return; a
+ * balanced tree may not have finished rebalancing yet when nodeInserted is
+ * called.
+ * Changes made in bulk (setRoot, bulkLoad, split, join) and updateNode are not
+ * reported.
+ */
+interface TreeListener
+{
+    /**
+     * Called once a Node with a new key has been added to the tree.
+     *
+     * @param int key - the key value of the added Node.
+     */
+    public void nodeInserted(int key);
+
+    /**
+     * Called once the Node holding a key has been removed from the tree.
+     *
+     * @param int key - the key value of the removed Node.
+     */
+    public void nodeDeleted(int key);
+}
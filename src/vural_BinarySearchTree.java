@@ -8,8 +8,9 @@
  * some element within the BST becomes more time efficient than a linear search,
  * it actually becomes O(log n).
  */
-public class vural_BinarySearchTree implements BinarySearchTreeFunctions {
+public class vural_BinarySearchTree implements BinarySearchTreeFunctions, Iterable<Node> {
     private Node root;
+    private TreeListener[] listeners; // null while there are none
 
     /**
      * Default constructor.
@@ -37,23 +38,71 @@ public class vural_BinarySearchTree implements BinarySearchTreeFunctions {
         this.root = root;
     }
 
-    private void insertHelper(Node currentRoot, Node z) {
-        if (z.getKey() > currentRoot.getKey()) {
-            if (currentRoot.getRight() == null) {
-                z.setParent(currentRoot);
-                currentRoot.setRight(z);
-            }
-            else {
-                insertHelper(currentRoot.getRight(), z);
+    /**
+     * Starts telling a listener about every key inserted into or deleted from the
+     * BST. Like every other change to the BST, this must happen on the thread that
+     * changes it (or before that thread starts).
+     *
+     * @param TreeListener listener - the listener to add.
+     */
+    public void addTreeListener(TreeListener listener) {
+        TreeListener[] l = this.listeners;
+        if (l == null) {
+            this.listeners = new TreeListener[] { listener };
+        }
+        else {
+            l = java.util.Arrays.copyOf(l, l.length + 1);
+            l[l.length - 1] = listener;
+            this.listeners = l;
+        }
+    }
+
+    /**
+     * Stops telling a listener about changes to the BST.
+     *
+     * @param TreeListener listener - the listener to remove, nothing happens if it
+     *                     was never added.
+     */
+    public void removeTreeListener(TreeListener listener) {
+        TreeListener[] l = this.listeners;
+        if (l == null) {
+            return;
+        }
+        for (int i = 0; i < l.length; i++) {
+            if (l[i] == listener) {
+                TreeListener[] rest = new TreeListener[l.length - 1];
+                System.arraycopy(l, 0, rest, 0, i);
+                System.arraycopy(l, i + 1, rest, i, rest.length - i);
+                this.listeners = (rest.length == 0) ? null : rest;
+                return;
             }
-        }    	
-    	else if (z.getKey() < currentRoot.getKey()) {
-            if (currentRoot.getLeft() == null) {
-                z.setParent(currentRoot);
-                currentRoot.setLeft(z);
+        }
+    }
+
+    /**
+     * Tells the listeners, if there are any, that a key was inserted.
+     *
+     * @param int key - the key value of the inserted Node.
+     */
+    protected final void fireNodeInserted(int key) {
+        TreeListener[] l = this.listeners;
+        if (l != null) {
+            for (TreeListener listener : l) {
+                listener.nodeInserted(key);
             }
-            else {
-                insertHelper(currentRoot.getLeft(), z);
+        }
+    }
+
+    /**
+     * Tells the listeners, if there are any, that a key was deleted.
+     *
+     * @param int key - the key value of the deleted Node.
+     */
+    protected final void fireNodeDeleted(int key) {
+        TreeListener[] l = this.listeners;
+        if (l != null) {
+            for (TreeListener listener : l) {
+                listener.nodeDeleted(key);
             }
         }
     }
@@ -63,19 +112,49 @@ public class vural_BinarySearchTree implements BinarySearchTreeFunctions {
      * If a Node exists in the BST with the same key as Node z, then we should not
      * add z.
      * 
+     * The duplicate check and the search for z's future parent happen in the same
+     * single walk down from the root, without recursion, so even a degenerate
+     * (list shaped) tree cannot overflow the stack.
+     * Subtree sizes are counted up on the way down, and handed back if z turns
+     * out to be a duplicate.
+     * 
      * @param Node z - specifies the new Node to be added to the BST.
+     * 
+     * @return true if z was added, false if its key was already in the BST
      */
-    public void insertNode(Node z) {
-        if (this.root == null) {
+    public boolean insertNode(Node z) {
+        int key = z.getKey();
+        Node parent = null;
+        Node x = this.root;
+
+        while (x != null) {
+            if (key == x.getKey()) {
+                shrinkPath(parent);
+                return false;
+            }
+            parent = x;
+            x.setSize(x.getSize() + 1);
+            if (key < x.getKey()) {
+                x = x.getLeft();
+            }
+            else {
+                x = x.getRight();
+            }
+        }
+
+        z.setSize(1);
+        z.setParent(parent);
+        if (parent == null) {
             this.root = z;
         }
-        else if ( this.getNode( this.root, z.getKey() ) != null)
-    	{
-    		return;
-    	}
+        else if (key < parent.getKey()) {
+            parent.setLeft(z);
+        }
         else {
-            insertHelper(this.root, z);
+            parent.setRight(z);
         }
+        fireNodeInserted(key);
+        return true;
     }
 
     /**
@@ -249,6 +328,283 @@ public class vural_BinarySearchTree implements BinarySearchTreeFunctions {
         }
     }
 
+    /**
+     * Traverses the subtree rooted at x with a pre-order walk, handing every Node
+     * to the visitor.
+     * 
+     * The walk follows the parent pointers instead of recursing, so it needs no
+     * stack and allocates nothing per Node, however large or deep the tree is.
+     * 
+     * @param Node        x - specifies the relative root to start the walk from.
+     * @param NodeVisitor visitor - called once per Node, in pre-order.
+     */
+    public void preOrderWalk(Node x, NodeVisitor visitor) {
+        walk(x, PRE_ORDER, visitor);
+    }
+
+    /**
+     * Traverses the subtree rooted at x with an in-order walk, handing every Node
+     * to the visitor. Like the pre-order version, no stack and no allocation.
+     * 
+     * @param Node        x - specifies the relative root to start the walk from.
+     * @param NodeVisitor visitor - called once per Node, in ascending key order.
+     */
+    public void inOrderWalk(Node x, NodeVisitor visitor) {
+        walk(x, IN_ORDER, visitor);
+    }
+
+    /**
+     * Traverses the subtree rooted at x with a post-order walk, handing every Node
+     * to the visitor. Like the pre-order version, no stack and no allocation.
+     * 
+     * @param Node        x - specifies the relative root to start the walk from.
+     * @param NodeVisitor visitor - called once per Node, in post-order.
+     */
+    public void postOrderWalk(Node x, NodeVisitor visitor) {
+        walk(x, POST_ORDER, visitor);
+    }
+
+    /**
+     * Writes the pre-order walk of the subtree rooted at x to some output, one
+     * "(x,y,z,w)" line per Node, the same lines preOrderWalk(x, list) collects.
+     * Nothing is allocated per Node, so pass a buffered output (a
+     * java.io.BufferedWriter for example) when writing large trees.
+     * 
+     * @param Node       x - specifies the relative root to start the walk from.
+     * @param Appendable out - specifies where the lines are written.
+     * 
+     * @throws java.io.IOException if the output cannot be written to
+     */
+    public void preOrderWalk(Node x, Appendable out) throws java.io.IOException {
+        walk(x, PRE_ORDER, out);
+    }
+
+    /**
+     * Writes the in-order walk of the subtree rooted at x to some output, one
+     * "(x,y,z,w)" line per Node, the same lines inOrderWalk(x, list) collects.
+     * 
+     * @param Node       x - specifies the relative root to start the walk from.
+     * @param Appendable out - specifies where the lines are written.
+     * 
+     * @throws java.io.IOException if the output cannot be written to
+     */
+    public void inOrderWalk(Node x, Appendable out) throws java.io.IOException {
+        walk(x, IN_ORDER, out);
+    }
+
+    /**
+     * Writes the post-order walk of the subtree rooted at x to some output, one
+     * "(x,y,z,w)" line per Node, the same lines postOrderWalk(x, list) collects.
+     * 
+     * @param Node       x - specifies the relative root to start the walk from.
+     * @param Appendable out - specifies where the lines are written.
+     * 
+     * @throws java.io.IOException if the output cannot be written to
+     */
+    public void postOrderWalk(Node x, Appendable out) throws java.io.IOException {
+        walk(x, POST_ORDER, out);
+    }
+
+    /**
+     * Writes the information required to draw the subtree rooted at x, the same
+     * "key path" lines preOrderWalk(x, "", list) collects, one per line as
+     * System.out.println would print them. DrawingArea reads this format.
+     *
+     * Instead of building a new path String for every Node, the walk keeps the
+     * path as a bitmask (one bit per level, 1 for a right turn) plus the depth,
+     * and writes each line from a reusable buffer. The bitmask is a single long
+     * unless the tree is deeper than 64 levels. The output is buffered here and
+     * flushed, not closed.
+     *
+     * @param Node           x - specifies the relative root to start the walk from.
+     * @param java.io.Writer out - specifies where the lines are written.
+     *
+     * @throws java.io.IOException if the output cannot be written to
+     */
+    public void writeTreeInfo(Node x, java.io.Writer out) throws java.io.IOException {
+        TreeInfoWriter writer = new TreeInfoWriter(out);
+        try {
+            walk(x, PRE_ORDER, writer);
+        } catch (java.io.UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes the same lines as writeTreeInfo(x, java.io.Writer), as ASCII bytes.
+     *
+     * @param Node                 x - specifies the relative root to start the walk
+     *                             from.
+     * @param java.io.OutputStream out - specifies where the lines are written, it
+     *                             is flushed, not closed.
+     *
+     * @throws java.io.IOException if the output cannot be written to
+     */
+    public void writeTreeInfo(Node x, java.io.OutputStream out) throws java.io.IOException {
+        java.io.Writer writer = new java.io.OutputStreamWriter(out, java.nio.charset.StandardCharsets.US_ASCII);
+        writeTreeInfo(x, writer);
+        writer.flush();
+    }
+
+    /**
+     * Visitor behind writeTreeInfo. A pre-order walk reaches every Node right
+     * after its parent, so when a Node at depth d is visited, bits 0..d-2 still
+     * hold the turns down to its parent and only bit d-1 has to be set.
+     */
+    private static final class TreeInfoWriter implements NodeVisitor {
+        private static final String NEWLINE = System.lineSeparator();
+
+        private final java.io.Writer out;
+        private final char[] buffer = new char[1 << 16];
+        private int used;
+        private long[] turns = new long[1]; // bit i is the turn from depth i to i+1
+
+        TreeInfoWriter(java.io.Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void visit(int key, Node x, int depth) {
+            try {
+                if (depth > 0) {
+                    int level = depth - 1;
+                    if (level >> 6 == this.turns.length) {
+                        this.turns = java.util.Arrays.copyOf(this.turns, this.turns.length * 2);
+                    }
+                    long bit = 1L << level;
+                    if (x == x.getParent().getRight()) {
+                        this.turns[level >> 6] |= bit;
+                    }
+                    else {
+                        this.turns[level >> 6] &= ~bit;
+                    }
+                }
+                // digits, a space and up to depth turns, then the line separator
+                if (this.used + 12 + depth + NEWLINE.length() > this.buffer.length) {
+                    drain();
+                    if (12 + depth + NEWLINE.length() > this.buffer.length) {
+                        writeLine(key, depth);
+                        return;
+                    }
+                }
+                this.used = formatLine(key, depth, this.buffer, this.used);
+            } catch (java.io.IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Formats "key path" into buf at pos, the most recent turn first, like the
+         * prepended ids of preOrderWalk(x, id, result), and returns the new end.
+         */
+        private int formatLine(int key, int depth, char[] buf, int pos) {
+            long v = key; // long, so that -Integer.MIN_VALUE does not overflow
+            if (v < 0) {
+                buf[pos++] = '-';
+                v = -v;
+            }
+            int end = pos + 1;
+            for (long rest = v / 10; rest > 0; rest /= 10) {
+                end++;
+            }
+            for (int i = end - 1; i >= pos; i--) {
+                buf[i] = (char) ('0' + (v % 10));
+                v /= 10;
+            }
+            pos = end;
+            buf[pos++] = ' ';
+            for (int level = depth - 1; level >= 0; level--) {
+                buf[pos++] = (this.turns[level >> 6] & (1L << level)) != 0 ? '1' : '0';
+            }
+            for (int i = 0; i < NEWLINE.length(); i++) {
+                buf[pos++] = NEWLINE.charAt(i);
+            }
+            return pos;
+        }
+
+        /** Writes a line too long for the buffer, from a buffer of its own. */
+        private void writeLine(int key, int depth) throws java.io.IOException {
+            char[] line = new char[12 + depth + NEWLINE.length()];
+            this.out.write(line, 0, formatLine(key, depth, line, 0));
+        }
+
+        private void drain() throws java.io.IOException {
+            this.out.write(this.buffer, 0, this.used);
+            this.used = 0;
+        }
+
+        void flush() throws java.io.IOException {
+            drain();
+            this.out.flush();
+        }
+    }
+
+    private static final int PRE_ORDER = 0;
+    private static final int IN_ORDER = 1;
+    private static final int POST_ORDER = 2;
+
+    private void walk(Node x, int order, Appendable out) throws java.io.IOException {
+        try {
+            walk(x, order, (key, n, depth) -> {
+                try {
+                    n.appendTo(out);
+                    out.append('\n');
+                } catch (java.io.IOException e) {
+                    throw new java.io.UncheckedIOException(e);
+                }
+            });
+        } catch (java.io.UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Stackless walk of the subtree rooted at x. prev remembers where we came from:
+     * from above we go on to the left child, back from the left child we go on to
+     * the right child, and back from the right child we go up again. Each Node is
+     * handed to the visitor at the step matching the requested order.
+     */
+    private void walk(Node x, int order, NodeVisitor visitor) {
+        if (x == null) {
+            return;
+        }
+        Node top = x.getParent();
+        Node prev = top;
+        int depth = 0;
+
+        while (x != top) {
+            if (prev == x.getParent() || prev == x.getLeft()) {
+                if (prev == x.getParent()) {
+                    if (order == PRE_ORDER) {
+                        visitor.visit(x.getKey(), x, depth);
+                    }
+                    if (x.getLeft() != null) {
+                        prev = x;
+                        x = x.getLeft();
+                        depth++;
+                        continue;
+                    }
+                }
+                if (order == IN_ORDER) {
+                    visitor.visit(x.getKey(), x, depth);
+                }
+                if (x.getRight() != null) {
+                    prev = x;
+                    x = x.getRight();
+                    depth++;
+                    continue;
+                }
+            }
+            if (order == POST_ORDER) {
+                visitor.visit(x.getKey(), x, depth);
+            }
+            prev = x;
+            x = x.getParent();
+            depth--;
+        }
+    }
+
     /**
      * Returns the Node which is the maximum descendant of the specified Node.
      * By maximum descendant, we mean some Node which:
@@ -264,16 +620,11 @@ public class vural_BinarySearchTree implements BinarySearchTreeFunctions {
      * @return the maximum descendant of the specified Node (which may be itself)
      */
     public Node getMax(Node x) {
-    	
-    	if (x.getRight() == null)
-    	{
-    		return x;
-    	}
-    	else
+    	while (x.getRight() != null)
     	{
-    		return getMax(x.getRight());
+    		x = x.getRight();
     	}
-
+    	return x;
     }
 
     /**
@@ -291,16 +642,11 @@ public class vural_BinarySearchTree implements BinarySearchTreeFunctions {
      * @return the minimum descendant of the specified Node (which may be itself)
      */
     public Node getMin(Node x) {
-    	
-    	if (x.getLeft() == null)
-    	{
-    		return x;
-    	}
-    	else
+    	while (x.getLeft() != null)
     	{
-    		return getMin(x.getLeft());
+    		x = x.getLeft();
     	}
-
+    	return x;
     }
 
     /**
@@ -371,19 +717,126 @@ public class vural_BinarySearchTree implements BinarySearchTreeFunctions {
      *         not found)
      */
     public Node getNode(Node x, int key) {
-    	
-    	if ( (x == null) || (key == x.getKey()) )
-    	{
-    		return x;
-    	}
-    	else if ( key < x.getKey())
-    	{
-    		return getNode(x.getLeft(), key);
-    	}
-    	else
+    	while ( (x != null) && (key != x.getKey()) )
     	{
-    		return getNode(x.getRight(), key);
+    		if ( key < x.getKey() )
+    		{
+    			x = x.getLeft();
+    		}
+    		else
+    		{
+    			x = x.getRight();
+    		}
     	}
+    	return x;
+    }
+
+    /**
+     * Returns the Node holding the smallest key which is greater than (or, when
+     * inclusive, equal to) the specified key, in one walk down from the root.
+     * 
+     * @param int     key - the lower bound.
+     * @param boolean inclusive - whether a Node holding key itself qualifies.
+     * 
+     * @return the ceiling Node (null if every key is below the bound)
+     */
+    public Node getCeiling(int key, boolean inclusive) {
+        Node best = null;
+        Node x = this.root;
+        while (x != null) {
+            if (key < x.getKey() || (inclusive && key == x.getKey())) {
+                best = x;
+                x = x.getLeft();
+            }
+            else {
+                x = x.getRight();
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the Node holding the largest key which is less than (or, when
+     * inclusive, equal to) the specified key, in one walk down from the root.
+     * 
+     * @param int     key - the upper bound.
+     * @param boolean inclusive - whether a Node holding key itself qualifies.
+     * 
+     * @return the floor Node (null if every key is above the bound)
+     */
+    public Node getFloor(int key, boolean inclusive) {
+        Node best = null;
+        Node x = this.root;
+        while (x != null) {
+            if (key > x.getKey() || (inclusive && key == x.getKey())) {
+                best = x;
+                x = x.getRight();
+            }
+            else {
+                x = x.getLeft();
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Visits, in ascending key order, every Node whose key is within [lo, hi].
+     * 
+     * @param int                                lo - the smallest key to visit.
+     * @param int                                hi - the largest key to visit.
+     * @param java.util.function.Consumer<Node>  visitor - called once per Node in
+     *                                           the range.
+     */
+    public void rangeWalk(int lo, int hi, java.util.function.Consumer<Node> visitor) {
+        rangeWalk(lo, true, hi, true, visitor);
+    }
+
+    /**
+     * Visits, in ascending key order, every Node whose key is between lo and hi.
+     * 
+     * Only the path down to the first Node in range and the Nodes in range are
+     * touched: the walk seeks to the lower bound and then follows getSuccessor
+     * until it passes hi, so it costs O(log n + k) for k visited Nodes.
+     * 
+     * @param int                                lo - the lower bound.
+     * @param boolean                            loInclusive - whether a key equal
+     *                                           to lo is visited.
+     * @param int                                hi - the upper bound.
+     * @param boolean                            hiInclusive - whether a key equal
+     *                                           to hi is visited.
+     * @param java.util.function.Consumer<Node>  visitor - called once per Node in
+     *                                           the range.
+     */
+    public void rangeWalk(int lo, boolean loInclusive, int hi, boolean hiInclusive,
+            java.util.function.Consumer<Node> visitor) {
+        Node x = getCeiling(lo, loInclusive);
+        while (x != null && (x.getKey() < hi || (hiInclusive && x.getKey() == hi))) {
+            visitor.accept(x);
+            x = getSuccessor(x);
+        }
+    }
+
+    /**
+     * Visits, in descending key order, every Node whose key is between lo and hi.
+     * This is the mirror image of rangeWalk: it seeks to the upper bound and then
+     * follows getPredecessor until it passes lo.
+     * 
+     * @param int                                lo - the lower bound.
+     * @param boolean                            loInclusive - whether a key equal
+     *                                           to lo is visited.
+     * @param int                                hi - the upper bound.
+     * @param boolean                            hiInclusive - whether a key equal
+     *                                           to hi is visited.
+     * @param java.util.function.Consumer<Node>  visitor - called once per Node in
+     *                                           the range.
+     */
+    public void descendingRangeWalk(int lo, boolean loInclusive, int hi, boolean hiInclusive,
+            java.util.function.Consumer<Node> visitor) {
+        Node x = getFloor(hi, hiInclusive);
+        while (x != null && (x.getKey() > lo || (loInclusive && x.getKey() == lo))) {
+            visitor.accept(x);
+            x = getPredecessor(x);
+        }
     }
 
     /**
@@ -411,6 +864,324 @@ public class vural_BinarySearchTree implements BinarySearchTreeFunctions {
 		return rightHeight + 1;
     }
 
+    /**
+     * Same result as getHeight, but computed on all cores with the fork-join pool.
+     * Subtrees with more than PARALLEL_THRESHOLD Nodes are split between tasks,
+     * smaller ones are measured sequentially.
+     * 
+     * @param Node x - specifies which Node we wish to start from while determining
+     *             the height.
+     * 
+     * @return the height of the subtree which starts from the relative root
+     */
+    public int parallelGetHeight(Node x) {
+        return parallelGetHeight(x, PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Same as parallelGetHeight(x), with a chosen split threshold.
+     * 
+     * @param Node x - specifies which Node we wish to start from.
+     * @param int  threshold - subtrees of at most this many Nodes are not split.
+     * 
+     * @return the height of the subtree which starts from the relative root
+     */
+    public int parallelGetHeight(Node x, int threshold) {
+        if (x == null) {
+            return -1;
+        }
+        return invoke(new HeightTask(x, Math.max(threshold, 1)));
+    }
+
+    /**
+     * Folds every Node of the subtree rooted at x into one value, on all cores.
+     * 
+     * This follows the contract of Stream.reduce(identity, accumulator, combiner):
+     * the combiner must be associative, identity must be neutral for it, and
+     * combiner.apply(u, accumulator.apply(identity, n)) must equal
+     * accumulator.apply(u, n). Nodes are folded in ascending key order.
+     * 
+     * For example, the sum of all keys:
+     * parallelFold(root, 0L, (sum, n) -> sum + n.getKey(), Long::sum)
+     * 
+     * @param Node                                  x - the relative root.
+     * @param T                                     identity - the value of an
+     *                                              empty subtree.
+     * @param java.util.function.BiFunction<T,Node,T> accumulator - folds one more
+     *                                              Node into a partial result.
+     * @param java.util.function.BinaryOperator<T>  combiner - joins two partial
+     *                                              results.
+     * 
+     * @return the folded value (identity if x is null)
+     */
+    public <T> T parallelFold(Node x, T identity, java.util.function.BiFunction<T, Node, T> accumulator,
+            java.util.function.BinaryOperator<T> combiner) {
+        return parallelFold(x, identity, accumulator, combiner, PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Same as parallelFold(x, identity, accumulator, combiner), with a chosen split
+     * threshold.
+     * 
+     * @param Node                                  x - the relative root.
+     * @param T                                     identity - the value of an
+     *                                              empty subtree.
+     * @param java.util.function.BiFunction<T,Node,T> accumulator - folds one more
+     *                                              Node into a partial result.
+     * @param java.util.function.BinaryOperator<T>  combiner - joins two partial
+     *                                              results.
+     * @param int                                   threshold - subtrees of at most
+     *                                              this many Nodes are not split.
+     * 
+     * @return the folded value (identity if x is null)
+     */
+    public <T> T parallelFold(Node x, T identity, java.util.function.BiFunction<T, Node, T> accumulator,
+            java.util.function.BinaryOperator<T> combiner, int threshold) {
+        if (x == null) {
+            return identity;
+        }
+        return invoke(new FoldTask<T>(x, identity, accumulator, combiner, Math.max(threshold, 1)));
+    }
+
+    /**
+     * Subtrees with at most this many Nodes are handled by a single task.
+     */
+    public static final int PARALLEL_THRESHOLD = 1 << 14;
+
+    /**
+     * Runs the task in the current fork-join pool when already inside one (so a
+     * caller can pick the pool), otherwise in the common pool.
+     */
+    private static <T> T invoke(java.util.concurrent.ForkJoinTask<T> task) {
+        if (java.util.concurrent.ForkJoinTask.inForkJoinPool()) {
+            return task.invoke();
+        }
+        return java.util.concurrent.ForkJoinPool.commonPool().invoke(task);
+    }
+
+    private int sequentialHeight(Node x) {
+        int[] height = new int[1];
+        walk(x, PRE_ORDER, (key, n, depth) -> {
+            if (depth > height[0]) {
+                height[0] = depth;
+            }
+        });
+        return height[0];
+    }
+
+    private <T> T sequentialFold(Node x, T identity, java.util.function.BiFunction<T, Node, T> accumulator) {
+        java.util.ArrayList<T> result = new java.util.ArrayList<>(1);
+        result.add(identity);
+        walk(x, IN_ORDER, (key, n, depth) -> result.set(0, accumulator.apply(result.get(0), n)));
+        return result.get(0);
+    }
+
+    /**
+     * Both tasks only fork when both children are big. Otherwise they handle the
+     * small child themselves and keep going down the big one in a loop, so a
+     * skinny tree does not turn into a deep chain of nested tasks.
+     */
+    private class HeightTask extends java.util.concurrent.RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final Node start;
+        private final int threshold;
+
+        HeightTask(Node start, int threshold) {
+            this.start = start;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected Integer compute() {
+            Node x = start;
+            int depth = 0; // depth of x below start
+            int height = 0; // tallest path found so far, measured from start
+
+            while (true) {
+                Node l = x.getLeft();
+                Node r = x.getRight();
+                if (x.getSize() <= threshold || (l == null && r == null)) {
+                    return Math.max(height, depth + sequentialHeight(x));
+                }
+                if (sizeOf(l) > threshold && sizeOf(r) > threshold) {
+                    HeightTask left = new HeightTask(l, threshold);
+                    left.fork();
+                    int rightHeight = new HeightTask(r, threshold).compute();
+                    return Math.max(height, depth + 1 + Math.max(left.join(), rightHeight));
+                }
+                Node big = sizeOf(l) >= sizeOf(r) ? l : r;
+                Node small = big == l ? r : l;
+                height = Math.max(height, depth);
+                if (small != null) {
+                    height = Math.max(height, depth + 1 + sequentialHeight(small));
+                }
+                depth++;
+                x = big;
+            }
+        }
+    }
+
+    private class FoldTask<T> extends java.util.concurrent.RecursiveTask<T> {
+        private static final long serialVersionUID = 1L;
+
+        private final Node start;
+        private final T identity;
+        private final java.util.function.BiFunction<T, Node, T> accumulator;
+        private final java.util.function.BinaryOperator<T> combiner;
+        private final int threshold;
+
+        FoldTask(Node start, T identity, java.util.function.BiFunction<T, Node, T> accumulator,
+                java.util.function.BinaryOperator<T> combiner, int threshold) {
+            this.start = start;
+            this.identity = identity;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected T compute() {
+            Node x = start;
+            T prefix = identity; // everything left of x's subtree already folded
+            T suffix = identity; // everything right of x's subtree already folded
+
+            while (true) {
+                Node l = x.getLeft();
+                Node r = x.getRight();
+                if (x.getSize() <= threshold || (l == null && r == null)) {
+                    T middle = sequentialFold(x, identity, accumulator);
+                    return combiner.apply(combiner.apply(prefix, middle), suffix);
+                }
+                T self = accumulator.apply(identity, x);
+                if (sizeOf(l) > threshold && sizeOf(r) > threshold) {
+                    FoldTask<T> left = new FoldTask<T>(l, identity, accumulator, combiner, threshold);
+                    left.fork();
+                    T rightValue = new FoldTask<T>(r, identity, accumulator, combiner, threshold).compute();
+                    T middle = combiner.apply(combiner.apply(left.join(), self), rightValue);
+                    return combiner.apply(combiner.apply(prefix, middle), suffix);
+                }
+                if (sizeOf(l) >= sizeOf(r)) {
+                    T rightValue = r == null ? identity : sequentialFold(r, identity, accumulator);
+                    suffix = combiner.apply(combiner.apply(self, rightValue), suffix);
+                    x = l;
+                }
+                else {
+                    T leftValue = l == null ? identity : sequentialFold(l, identity, accumulator);
+                    prefix = combiner.apply(prefix, combiner.apply(leftValue, self));
+                    x = r;
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the contents of the BST with a perfectly balanced tree holding the
+     * specified keys, linking it in O(n) instead of calling insertNode per key.
+     * 
+     * The keys must be in ascending order. Repeated keys are only added once,
+     * keeping the data of the first one. Every Node has its parent pointer set, and
+     * its cached height and color set so that the red-black and AVL variants are
+     * valid straight after loading.
+     * 
+     * @param int[]    sortedKeys - the keys to load, in ascending order.
+     * @param Object[] data - the internal data for each key, matched by index
+     *                 (may be null for no data).
+     * 
+     * @throws IllegalArgumentException if the keys are not in ascending order or
+     *                                  data is shorter than the keys
+     */
+    public void bulkLoad(int[] sortedKeys, Object[] data) {
+        if (data != null && data.length < sortedKeys.length) {
+            throw new IllegalArgumentException("data is shorter than sortedKeys");
+        }
+
+        int unique = 0;
+        for (int i = 0; i < sortedKeys.length; i++) {
+            if (i > 0 && sortedKeys[i] < sortedKeys[i - 1]) {
+                throw new IllegalArgumentException("sortedKeys is not in ascending order at index " + i);
+            }
+            if (i == 0 || sortedKeys[i] != sortedKeys[i - 1]) {
+                unique++;
+            }
+        }
+
+        int[] keys = sortedKeys;
+        Object[] values = data;
+        if (unique != sortedKeys.length) {
+            keys = new int[unique];
+            values = data == null ? null : new Object[unique];
+            int j = 0;
+            for (int i = 0; i < sortedKeys.length; i++) {
+                if (i == 0 || sortedKeys[i] != sortedKeys[i - 1]) {
+                    keys[j] = sortedKeys[i];
+                    if (values != null) {
+                        values[j] = data[i];
+                    }
+                    j++;
+                }
+            }
+        }
+
+        // the bottom level is red unless it is full, which keeps every path at the
+        // same black height
+        int redDepth = -1;
+        if (unique > 0 && ((unique + 1) & unique) != 0) {
+            redDepth = 31 - Integer.numberOfLeadingZeros(unique);
+        }
+
+        this.root = buildBalanced(keys, values, 0, unique - 1, null, 0, redDepth);
+    }
+
+    /**
+     * Same as bulkLoad, but the keys may be in any order.
+     * The keys are sorted first (in parallel), carrying their data along with
+     * them.
+     * 
+     * @param int[]    keys - the keys to load, in any order.
+     * @param Object[] data - the internal data for each key, matched by index
+     *                 (may be null for no data).
+     */
+    public void bulkLoadUnsorted(int[] keys, Object[] data) {
+        if (data != null && data.length < keys.length) {
+            throw new IllegalArgumentException("data is shorter than keys");
+        }
+
+        // key in the high half, original index in the low half, so sorting also
+        // keeps the first of any repeated keys first
+        long[] packed = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            packed[i] = ((long) keys[i] << 32) | i;
+        }
+        java.util.Arrays.parallelSort(packed);
+
+        int[] sortedKeys = new int[keys.length];
+        Object[] sortedData = data == null ? null : new Object[keys.length];
+        for (int i = 0; i < packed.length; i++) {
+            sortedKeys[i] = (int) (packed[i] >> 32);
+            if (sortedData != null) {
+                sortedData[i] = data[(int) packed[i]];
+            }
+        }
+        bulkLoad(sortedKeys, sortedData);
+    }
+
+    private Node buildBalanced(int[] keys, Object[] data, int lo, int hi, Node parent, int depth, int redDepth) {
+        if (lo > hi) {
+            return null;
+        }
+        int mid = (lo + hi) >>> 1;
+        Node x = new Node(keys[mid], data == null ? null : data[mid]);
+        x.setParent(parent);
+        x.setRed(depth == redDepth);
+        x.setSize(hi - lo + 1);
+        x.setLeft(buildBalanced(keys, data, lo, mid - 1, x, depth + 1, redDepth));
+        x.setRight(buildBalanced(keys, data, mid + 1, hi, x, depth + 1, redDepth));
+        x.setHeight(Math.max(x.getLeft() == null ? -1 : x.getLeft().getHeight(),
+                x.getRight() == null ? -1 : x.getRight().getHeight()) + 1);
+        return x;
+    }
+
     /**
      * Helper method which replaces one Node, namely u, with another Node, namely v.
      * This method is only used by the deleteNode function.
@@ -443,6 +1214,49 @@ public class vural_BinarySearchTree implements BinarySearchTreeFunctions {
     	}
     }
 
+    /**
+     * Rotates the subtree rooted at x to the left, so that x's right child takes
+     * x's place and x becomes its left child.
+     * The search property is unchanged, this is the building block used by the
+     * balanced variants of the BST.
+     *
+     * @param Node x - the relative root of the subtree to rotate, must have a right
+     *             child.
+     */
+    protected void rotateLeft(Node x) {
+        Node y = x.getRight();
+        x.setRight(y.getLeft());
+        if (y.getLeft() != null) {
+            y.getLeft().setParent(x);
+        }
+        shiftNode(x, y);
+        y.setLeft(x);
+        x.setParent(y);
+        y.setSize(x.getSize());
+        x.setSize(sizeOf(x.getLeft()) + sizeOf(x.getRight()) + 1);
+    }
+
+    /**
+     * Rotates the subtree rooted at x to the right, so that x's left child takes
+     * x's place and x becomes its right child.
+     * The search property is unchanged.
+     *
+     * @param Node x - the relative root of the subtree to rotate, must have a left
+     *             child.
+     */
+    protected void rotateRight(Node x) {
+        Node y = x.getLeft();
+        x.setLeft(y.getRight());
+        if (y.getRight() != null) {
+            y.getRight().setParent(x);
+        }
+        shiftNode(x, y);
+        y.setRight(x);
+        x.setParent(y);
+        y.setSize(x.getSize());
+        x.setSize(sizeOf(x.getLeft()) + sizeOf(x.getRight()) + 1);
+    }
+
     /**
      * Attempts to find and delete a Node from the BST.
      * If the specified Node cannot be found in the BST, then this function should
@@ -472,8 +1286,7 @@ public class vural_BinarySearchTree implements BinarySearchTreeFunctions {
     		return;
     	}
     	
-    	//
-    	
+    	Node lowest = z.getParent(); // deepest Node whose subtree loses a Node
     	
     	if (z.getLeft() == null) // one or no child node
     	{
@@ -488,8 +1301,10 @@ public class vural_BinarySearchTree implements BinarySearchTreeFunctions {
     		else // two children case
     		{
     			Node y = getSuccessor(z);
+    			lowest = y;
     			if (z.getRight() != y)
     			{
+    				lowest = y.getParent();
     				shiftNode(y, y.getRight());
     				y.setRight(z.getRight());
     				y.getRight().setParent(y);
@@ -497,7 +1312,422 @@ public class vural_BinarySearchTree implements BinarySearchTreeFunctions {
     			shiftNode(z,y);
     			y.setLeft(z.getLeft());
     			y.getLeft().setParent(y);
+    			y.setSize(z.getSize());
     		}
     	}
+    	shrinkPath(lowest);
+    	fireNodeDeleted(z.getKey());
+    }
+
+    /**
+     * Decrements the subtree size of x and of every one of its ancestors, used once
+     * a Node below x has been removed.
+     * 
+     * @param Node x - the deepest Node whose subtree lost a Node (may be null)
+     */
+    protected void shrinkPath(Node x) {
+        while (x != null) {
+            x.setSize(x.getSize() - 1);
+            x = x.getParent();
+        }
+    }
+
+    /**
+     * Returns the number of Nodes in the BST.
+     * Every Node keeps the size of its subtree, so this runs in O(1).
+     * 
+     * @return the number of Nodes in the BST
+     */
+    public int size() {
+        return sizeOf(this.root);
+    }
+
+    /**
+     * Returns the rank of a key, which is the number of keys in the BST that are
+     * strictly smaller than it. The key does not need to be in the BST.
+     * 
+     * @param int key - the key to rank.
+     * 
+     * @return the number of smaller keys
+     */
+    public int rank(int key) {
+        return countBelow(key, false);
+    }
+
+    /**
+     * Returns the Node holding the k-th smallest key, counting from 0.
+     * In other words select(rank(x.getKey())) is x for every x in the BST.
+     * 
+     * @param int k - the rank of the Node we want.
+     * 
+     * @return the Node with rank k (null if k is not between 0 and size()-1)
+     */
+    public Node select(int k) {
+        if (k < 0 || k >= size()) {
+            return null;
+        }
+        Node x = this.root;
+        while (true) {
+            int leftSize = sizeOf(x.getLeft());
+            if (k < leftSize) {
+                x = x.getLeft();
+            }
+            else if (k > leftSize) {
+                k = k - leftSize - 1;
+                x = x.getRight();
+            }
+            else {
+                return x;
+            }
+        }
+    }
+
+    /**
+     * Returns how many keys of the BST fall within [lo, hi], both ends included.
+     * 
+     * @param int lo - the smallest key of the range.
+     * @param int hi - the largest key of the range.
+     * 
+     * @return the number of keys in the range (0 if lo > hi)
+     */
+    public int countRange(int lo, int hi) {
+        if (lo > hi) {
+            return 0;
+        }
+        return countBelow(hi, true) - countBelow(lo, false);
+    }
+
+    /**
+     * Returns a Node picked uniformly at random from the BST.
+     * 
+     * @param java.util.Random random - the source of randomness.
+     * 
+     * @return a random Node (null if the BST is empty)
+     */
+    public Node sample(java.util.Random random) {
+        int n = size();
+        if (n == 0) {
+            return null;
+        }
+        return select(random.nextInt(n));
+    }
+
+    /**
+     * Splits the BST around a key, moving every Node into one of two new trees of
+     * the same kind: one with the keys smaller than key, one with the keys greater
+     * than or equal to it. This BST is left empty.
+     * 
+     * Only the Nodes on the search path for key are relinked. Going back up that
+     * path, each Node takes its subtree on the far side of the path with it and is
+     * joined (with joinRoots) onto the tree being built on that side. This costs
+     * O(height) here; the balanced variants rebalance inside joinRoots and stay
+     * O(log n) tall, with parent pointers, sizes, heights and colors all kept up to
+     * date.
+     * 
+     * @param int key - the smallest key of the second tree.
+     * 
+     * @return {keys smaller than key, keys greater than or equal to key}
+     */
+    public vural_BinarySearchTree[] split(int key) {
+        vural_BinarySearchTree less = newEmptyTree();
+        vural_BinarySearchTree atLeast = newEmptyTree();
+
+        java.util.ArrayList<Node> path = new java.util.ArrayList<>();
+        for (Node x = this.root; x != null; x = key <= x.getKey() ? x.getLeft() : x.getRight()) {
+            path.add(x);
+        }
+        this.root = null;
+
+        for (int i = path.size() - 1; i >= 0; i--) {
+            Node x = path.get(i);
+            if (key <= x.getKey()) {
+                // x and its right subtree are larger than everything gathered so far
+                Node r = x.getRight();
+                if (r != null) {
+                    r.setParent(null);
+                }
+                atLeast.joinRoots(atLeast.root, x, r);
+            }
+            else {
+                Node l = x.getLeft();
+                if (l != null) {
+                    l.setParent(null);
+                }
+                less.joinRoots(l, x, less.root);
+            }
+        }
+        return new vural_BinarySearchTree[] {less, atLeast};
+    }
+
+    /**
+     * Joins two trees of the same kind, where every key of left is smaller than
+     * every key of right, into one.
+     * The smallest Node of right is taken out and placed between the two, so this
+     * costs a delete plus one joinRoots, O(log n) for the balanced variants.
+     * 
+     * All the Nodes end up in left, which is returned; right is left empty.
+     * 
+     * @param vural_BinarySearchTree left - the tree holding the smaller keys.
+     * @param vural_BinarySearchTree right - the tree holding the larger keys.
+     * 
+     * @return left, now holding the keys of both trees
+     * 
+     * @throws IllegalArgumentException if the trees are of different kinds or
+     *                                  their keys overlap
+     */
+    public static vural_BinarySearchTree join(vural_BinarySearchTree left, vural_BinarySearchTree right) {
+        if (left.getClass() != right.getClass()) {
+            throw new IllegalArgumentException("cannot join a " + left.getClass().getName()
+                    + " with a " + right.getClass().getName());
+        }
+        if (right.root == null) {
+            return left;
+        }
+        if (left.root == null) {
+            left.root = right.root;
+            right.root = null;
+            return left;
+        }
+
+        Node m = right.getMin(right.root);
+        if (left.getMax(left.root).getKey() >= m.getKey()) {
+            throw new IllegalArgumentException("every key of left must be smaller than every key of right");
+        }
+        right.deleteNode(m);
+        Node r = right.root;
+        right.root = null;
+        left.joinRoots(left.root, m, r);
+        return left;
+    }
+
+    /**
+     * Returns a new, empty tree of the same kind as this one, used by split.
+     * 
+     * @return an empty tree
+     */
+    protected vural_BinarySearchTree newEmptyTree() {
+        return new vural_BinarySearchTree();
+    }
+
+    /**
+     * Makes this BST hold the keys of l, then m, then r: every key of l must be
+     * smaller than m's key and every key of r larger. l and r are whole subtrees
+     * whose roots have no parent (either may be null), m is a single Node whose old
+     * links are ignored.
+     * 
+     * Here m simply becomes the root above l and r. The balanced variants override
+     * this to hang m further down the taller side and rebalance from there.
+     * 
+     * @param Node l - the subtree of smaller keys (may be null).
+     * @param Node m - the Node going in between.
+     * @param Node r - the subtree of larger keys (may be null).
+     */
+    protected void joinRoots(Node l, Node m, Node r) {
+        link(l, m, r);
+        m.setParent(null);
+        this.root = m;
+    }
+
+    /**
+     * Makes l and r the children of m, and works out m's size and height from
+     * theirs. m's parent is left for the caller to set.
+     * 
+     * @param Node l - the new left child of m (may be null).
+     * @param Node m - the Node getting the children.
+     * @param Node r - the new right child of m (may be null).
+     */
+    protected static void link(Node l, Node m, Node r) {
+        m.setLeft(l);
+        m.setRight(r);
+        if (l != null) {
+            l.setParent(m);
+        }
+        if (r != null) {
+            r.setParent(m);
+        }
+        m.setSize(sizeOf(l) + sizeOf(r) + 1);
+        m.setHeight(Math.max(l == null ? -1 : l.getHeight(), r == null ? -1 : r.getHeight()) + 1);
+    }
+
+    /**
+     * Adds to the subtree size of x and of every one of its ancestors, used once
+     * Nodes have been hung below x.
+     * 
+     * @param Node x - the deepest Node whose subtree grew (may be null)
+     * @param int  count - how many Nodes were added.
+     */
+    protected void growPath(Node x, int count) {
+        while (x != null) {
+            x.setSize(x.getSize() + count);
+            x = x.getParent();
+        }
+    }
+
+    /**
+     * Returns an iterator over the Nodes of the BST in ascending key order.
+     * Each step is one getSuccessor call, O(1) amortized, with no recursion and
+     * nothing materialized up front. remove() deletes the last returned Node.
+     * 
+     * @return an ascending iterator
+     */
+    @Override
+    public java.util.Iterator<Node> iterator() {
+        return new NodeIterator(this.root == null ? null : getMin(this.root), false);
+    }
+
+    /**
+     * Returns an iterator over the Nodes of the BST in descending key order, the
+     * mirror image of iterator() built on getPredecessor.
+     * 
+     * @return a descending iterator
+     */
+    public java.util.Iterator<Node> descendingIterator() {
+        return new NodeIterator(this.root == null ? null : getMax(this.root), true);
+    }
+
+    /**
+     * Returns a Spliterator over the Nodes of the BST in ascending key order.
+     * 
+     * Splitting uses the subtree sizes to cut the remaining range in half by rank,
+     * so both halves know their exact size (SIZED and SUBSIZED) and a parallel
+     * stream spreads evenly. The BST must not be changed while it is being
+     * traversed.
+     * 
+     * @return a sorted, distinct, sized Spliterator
+     */
+    @Override
+    public java.util.Spliterator<Node> spliterator() {
+        return new NodeSpliterator(this.root == null ? null : getMin(this.root), 0, size());
+    }
+
+    /**
+     * Returns a sequential stream of the Nodes in ascending key order.
+     * Call parallel() on it to spread the work over all cores.
+     * 
+     * @return a stream of the Nodes
+     */
+    public java.util.stream.Stream<Node> stream() {
+        return java.util.stream.StreamSupport.stream(spliterator(), false);
+    }
+
+    private class NodeIterator implements java.util.Iterator<Node> {
+        private Node next;
+        private Node last;
+        private final boolean descending;
+
+        NodeIterator(Node first, boolean descending) {
+            this.next = first;
+            this.last = null;
+            this.descending = descending;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Node next() {
+            if (next == null) {
+                throw new java.util.NoSuchElementException();
+            }
+            last = next;
+            next = descending ? getPredecessor(next) : getSuccessor(next);
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            // deleteNode relinks Nodes rather than copying keys, so next stays valid
+            deleteNode(last);
+            last = null;
+        }
+    }
+
+    private class NodeSpliterator implements java.util.Spliterator<Node> {
+        private Node current; // next Node to hand out
+        private int index; // rank of current
+        private final int end; // rank one past the last Node to hand out
+
+        NodeSpliterator(Node current, int index, int end) {
+            this.current = current;
+            this.index = index;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(java.util.function.Consumer<? super Node> action) {
+            if (index >= end) {
+                return false;
+            }
+            Node x = current;
+            current = getSuccessor(x);
+            index++;
+            action.accept(x);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(java.util.function.Consumer<? super Node> action) {
+            while (index < end) {
+                Node x = current;
+                current = getSuccessor(x);
+                index++;
+                action.accept(x);
+            }
+        }
+
+        @Override
+        public java.util.Spliterator<Node> trySplit() {
+            if (end - index < 2) {
+                return null;
+            }
+            int mid = (index + end) >>> 1;
+            NodeSpliterator prefix = new NodeSpliterator(current, index, mid);
+            current = select(mid);
+            index = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SORTED | DISTINCT | NONNULL | SIZED | SUBSIZED;
+        }
+
+        @Override
+        public java.util.Comparator<? super Node> getComparator() {
+            return java.util.Comparator.comparingInt(Node::getKey);
+        }
+    }
+
+    static int sizeOf(Node x) {
+        return x == null ? 0 : x.getSize();
+    }
+
+    /**
+     * Counts the keys smaller than key, or smaller than or equal to it when
+     * inclusive is set, in one walk down from the root.
+     */
+    private int countBelow(int key, boolean inclusive) {
+        int count = 0;
+        Node x = this.root;
+        while (x != null) {
+            if (key < x.getKey() || (key == x.getKey() && !inclusive)) {
+                x = x.getLeft();
+            }
+            else {
+                count += sizeOf(x.getLeft()) + 1;
+                x = x.getRight();
+            }
+        }
+        return count;
     }
 }
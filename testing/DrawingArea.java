@@ -1,9 +1,59 @@
+/**
+ * Draws the tree described by a treeInfo file ("key path" lines, as written by
+ * preOrderWalk(x, "", list) or writeTreeInfo).
+ *
+ * Nothing is drawn up front: the area is cut into tiles, and only the tiles
+ * under the visible part of the scroll pane are rendered, by background threads,
+ * then kept in a small cache. Each tile walks the Nodes in pre-order and skips
+ * every subtree whose bounding box misses it, so a tile costs about as much as
+ * what it shows. When zoomed out, a subtree too narrow to read is drawn as one
+ * triangle (with its Node count when there is room) instead of Node by Node.
+ * Zooming out only squeezes the levels down to a few pixels apart, so that deep
+ * trees keep their shape while their width shrinks.
+ *
+ * There are three layouts:
+ * - classic: every level is split into 2^height columns, as wide as a full tree
+ * of that height whatever the number of Nodes
+ * - tidy: each subtree is packed against its sibling as closely as their
+ * contours allow (Reingold-Tilford), so the width follows the number of Nodes
+ * - in-order: each Node gets its own column, by its rank in key order
+ * The classic layout is used as long as it is no wider than Swing allows.
+ *
+ * A live view follows a tree while it changes instead: either a running
+ * vural_BinarySearchTree, through a TreeListener, or an event file appended to
+ * by some other process and watched with a WatchService. The view keeps its own
+ * copy of the tree; changes are queued as they come and applied in one batch per
+ * frame, at most FRAMES_PER_SECOND times a second, and only then are the tiles
+ * in view drawn again. A live view always uses the in-order layout, whose
+ * positions follow from the subtree sizes which the copy keeps up to date by
+ * itself, so a change costs O(log n) instead of a new layout.
+ *
+ * An event file holds one change per line: "insert key", "delete key" or
+ * "clear". A treeInfo line inserts its key, which rebuilds the same tree since
+ * the lines are in pre-order.
+ *
+ * Keys: R reloads the file (a live view of an event file reads it again from
+ * the top), L switches layouts, + and - zoom in and out, 0 fits the whole tree.
+ */
 public class DrawingArea extends javax.swing.JPanel implements java.awt.event.KeyListener
 {
-	private int maxWidth, maxHeight;
-	private java.awt.image.BufferedImage bi;
-	private java.awt.Color backgroundColor, foregroundColor;
-	private java.awt.Graphics2D biG;
+	private static final int TILE_SIZE = 256;
+	private static final int MAX_TILES = 128;
+	private static final int MAX_EXTENT = 1 << 28; // keeps Swing's int coordinates safe
+	private static final double MAX_ZOOM = 8.0;
+	private static final double MIN_ZOOM_Y = 0.25; // rows stay 9 pixels apart however wide the tree is
+	private static final int COLLAPSE_PIXELS = 12; // subtrees narrower than this become a triangle
+	private static final int MIN_LABEL_PIXELS = 14; // Nodes smaller than this are drawn without their key
+
+	private static final int CLASSIC = 0;
+	private static final int TIDY = 1;
+	private static final int IN_ORDER = 2;
+	private static final int LAYOUTS = 3;
+	private static final int MAX_CLASSIC_HEIGHT = 1000; // 2^height must still fit in a double
+
+	private static final int FRAMES_PER_SECOND = 30;
+
+	private java.awt.Color backgroundColor, foregroundColor, glyphColor;
 	private int rowHeight = 36;
 	private int colWidth = 36;
 	private int halfNodeSize = 12;
@@ -11,194 +61,1197 @@ public class DrawingArea extends javax.swing.JPanel implements java.awt.event.Ke
 	private int offsetY = 20;
 	private int offsetX = 20;
 	private String filename;
-	
+
+	// only touched on the event dispatch thread
+	private TreeLayout layout;
+	private int layoutMode = -1; // until one is picked with L
+	private double treeWidth, treeHeight; // of the tree shown, at zoom 1
+	private volatile double zoom = 1.0; // also read by the frame thread
+	private java.util.LinkedHashMap<Long, java.awt.image.BufferedImage> tiles = new java.util.LinkedHashMap<Long, java.awt.image.BufferedImage>(16, 0.75f, true)
+	{
+		protected boolean removeEldestEntry(java.util.Map.Entry<Long, java.awt.image.BufferedImage> eldest)
+		{
+			return size() > MAX_TILES;
+		}
+	};
+	private java.util.HashSet<Long> pendingTiles = new java.util.HashSet<>();
+
+	// read by the rendering threads to drop work which is no longer wanted
+	private volatile int generation;
+	private volatile java.awt.Rectangle visible = new java.awt.Rectangle();
+
+	private final java.util.concurrent.ExecutorService renderer;
+	private final java.util.concurrent.ExecutorService loader;
+
+	// live view: the copy of the tree, which only the frame thread touches, and
+	// the changes queued for the next frame
+	private final vural_BinarySearchTree mirror;
+	private final boolean follow; // whether the changes are read from the file
+	private final java.util.concurrent.ScheduledExecutorService frames;
+	private final Object eventLock = new Object();
+	private long[] events = new long[1024]; // guarded by eventLock, as is eventCount
+	private int eventCount;
+	private long[] spareEvents = new long[1024];
+	private java.awt.Rectangle frameArea = new java.awt.Rectangle(); // what the last frame drew
+	private int frameGeneration = -1;
+	private volatile boolean rewind; // set when R asks for the file to be read again
+
+	/**
+	 * Draws the tree described by a treeInfo file.
+	 *
+	 * @param String filename - the treeInfo file.
+	 */
 	public DrawingArea(String filename)
+	{
+		this(filename, null, false);
+		readFileAndDrawTree();
+	}
+
+	/**
+	 * Draws a running tree live. The tree is copied here, so this must be called
+	 * on the thread which changes the tree, or before that thread starts.
+	 *
+	 * @param vural_BinarySearchTree tree - the tree to follow.
+	 */
+	public DrawingArea(vural_BinarySearchTree tree)
+	{
+		this(null, copyOf(tree), false);
+		tree.addTreeListener(new TreeListener()
+		{
+			public void nodeInserted(int key)
+			{
+				post(LiveMirror.event(key, LiveMirror.INSERT));
+			}
+
+			public void nodeDeleted(int key)
+			{
+				post(LiveMirror.event(key, LiveMirror.DELETE));
+			}
+		});
+		frames.scheduleAtFixedRate(this::nextFrame, 0, 1000/FRAMES_PER_SECOND, java.util.concurrent.TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Draws live the tree built by the changes in an event file, following the
+	 * file as more of them are appended.
+	 *
+	 * @param String                 filename - the event file.
+	 * @param vural_BinarySearchTree tree - an empty tree of the kind which made the
+	 *                               changes, so that it takes the same shape; the
+	 *                               view fills it and owns it from now on.
+	 */
+	public DrawingArea(String filename, vural_BinarySearchTree tree)
+	{
+		this(filename, tree, true);
+		loader.execute(this::followFile);
+		frames.scheduleAtFixedRate(this::nextFrame, 0, 1000/FRAMES_PER_SECOND, java.util.concurrent.TimeUnit.MILLISECONDS);
+	}
+
+	private DrawingArea(String filename, vural_BinarySearchTree mirror, boolean follow)
 	{
 		this.filename = filename;
-		java.awt.Dimension maxDim = java.awt.Toolkit.getDefaultToolkit().getScreenSize();
-		maxWidth = (int) Math.max(2592, maxDim.getWidth());
-		maxHeight = (int) Math.max(1944, maxDim.getHeight());
-		setPreferredSize(new java.awt.Dimension(maxWidth, maxHeight));
-		bi = java.awt.GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration().createCompatibleImage(maxWidth, maxHeight, java.awt.image.BufferedImage.TYPE_INT_ARGB);
-		biG = bi.createGraphics();
-		
+		this.mirror = mirror;
+		this.follow = follow;
 		foregroundColor = new java.awt.Color(0, 0, 0, 255);
 		backgroundColor = new java.awt.Color(255, 255, 255, 255);
-		
-		readFileAndDrawTree();
+		glyphColor = new java.awt.Color(200, 200, 200, 255);
+		setBackground(backgroundColor);
+
+		java.util.concurrent.ThreadFactory daemons = r ->
+		{
+			Thread t = new Thread(r, "DrawingArea");
+			t.setDaemon(true);
+			return t;
+		};
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors()-1);
+		renderer = java.util.concurrent.Executors.newFixedThreadPool(threads, daemons);
+		loader = java.util.concurrent.Executors.newSingleThreadExecutor(daemons);
+		frames = (mirror == null) ? null : java.util.concurrent.Executors.newSingleThreadScheduledExecutor(daemons);
 	}
-	
+
+	/**
+	 * Reads the file and lays the tree out in the background, then shows it.
+	 */
 	private void readFileAndDrawTree()
 	{
-		java.util.ArrayList<String> treeInfo = new java.util.ArrayList<>();
-		try
+		int mode = layoutMode;
+		loader.execute(() ->
 		{
-			java.io.BufferedReader input = new java.io.BufferedReader(new java.io.InputStreamReader(new java.io.FileInputStream(filename)));
-			String inn;
-			while( (inn = input.readLine()) != null )
+			TreeLayout next = null;
+			try
+			{
+				next = layoutTree(TreeInfoFile.read(filename), mode);
+			}
+			catch(Exception e)
 			{
-				if( !inn.startsWith("#") )
+				System.out.println(e.toString());
+				System.exit(0);
+			}
+			TreeLayout shown = next;
+			javax.swing.SwingUtilities.invokeLater(() -> showLayout(shown));
+		});
+	}
+
+	/**
+	 * The Nodes of a tree in pre-order, with their positions (at zoom 1, before
+	 * the offsets) and, for every subtree, its size, its deepest level and the
+	 * range of x its Nodes span.
+	 */
+	private static final class TreeLayout
+	{
+		TreeInfoFile info; // for the ids, and to lay the Nodes out again
+		int mode;
+		int n;
+		int[] depth;
+		int[] parent; // the nearest ancestor in the file, -1 for the root
+		boolean[] linked; // whether the parent is the real one, rather than one further up
+		double[] x;
+		int[] size;
+		int[] maxDepth;
+		double[] minX, maxX;
+		double width, height;
+	}
+
+	/**
+	 * Lays the Nodes out in O(n).
+	 *
+	 * @param TreeInfoFile info - the Nodes.
+	 * @param int          mode - CLASSIC, TIDY or IN_ORDER, or -1 to pick the
+	 *                     classic layout unless it is too wide.
+	 */
+	private TreeLayout layoutTree(TreeInfoFile info, int mode)
+	{
+		int n = info.n;
+		for( int i = 1; i < n; i++ )
+		{
+			if( info.compare(i-1, i) >= 0 )
+			{
+				info = info.sorted(); // the tiles rely on pre-order
+				break;
+			}
+		}
+
+		int treeHeight = info.maxDepth();
+		if( mode < 0 )
+		{
+			mode = (Math.scalb((double) colWidth, Math.min(treeHeight, MAX_CLASSIC_HEIGHT)) <= MAX_EXTENT) ? CLASSIC : TIDY;
+		}
+		if( mode == CLASSIC && treeHeight > MAX_CLASSIC_HEIGHT )
+		{
+			mode = TIDY;
+		}
+
+		TreeLayout l = new TreeLayout();
+		l.info = info;
+		l.mode = mode;
+		l.n = n;
+		l.depth = info.depth;
+		l.parent = new int[n];
+		l.linked = new boolean[n];
+		l.x = new double[n];
+		l.size = new int[n];
+		l.maxDepth = new int[n];
+		l.minX = new double[n];
+		l.maxX = new double[n];
+
+		// in pre-order, the ancestors of a Node are the ones on the path down to the Node before it
+		int[] left = new int[n];
+		int[] right = new int[n];
+		java.util.Arrays.fill(left, -1);
+		java.util.Arrays.fill(right, -1);
+		int[] ancestors = new int[treeHeight+1];
+		int top = 0;
+		for( int i = 0; i < n; i++ )
+		{
+			int d = info.depth[i];
+			top = Math.min(top, d);
+			while( top > 0 && !info.isAncestor(ancestors[top-1], i) )
+			{
+				top--;
+			}
+			int p = (top > 0) ? ancestors[top-1] : -1;
+			l.parent[i] = p;
+			// when the parent is missing from the file, the subtree hangs off a Node further up
+			l.linked[i] = (p >= 0 && info.depth[p] == d-1);
+			if( l.linked[i] )
+			{
+				if( info.step(i, d-1) )
+				{
+					right[p] = i;
+				}
+				else
 				{
-					treeInfo.add(inn);
+					left[p] = i;
 				}
 			}
-			input.close();
+			ancestors[top++] = i;
 		}
-		catch(Exception e)
+
+		// subtrees with all of their descendants in the file, for drawing them
+		for( int i = 0; i < n; i++ )
 		{
-			System.out.println(e.toString());
-			System.exit(0);
+			l.size[i] = 1;
+			l.maxDepth[i] = info.depth[i];
+		}
+		for( int i = n-1; i > 0; i-- )
+		{
+			int p = l.parent[i];
+			if( p >= 0 )
+			{
+				l.size[p] += l.size[i];
+				l.maxDepth[p] = Math.max(l.maxDepth[p], l.maxDepth[i]);
+			}
+		}
+
+		if( mode == CLASSIC )
+		{
+			placeClassic(l, treeHeight);
+		}
+		else
+		{
+			// subtrees with only the descendants they are linked to, for placing them
+			int[] size = new int[n];
+			int[] height = new int[n];
+			for( int i = n-1; i >= 0; i-- )
+			{
+				size[i] = 1+((left[i] >= 0) ? size[left[i]] : 0)+((right[i] >= 0) ? size[right[i]] : 0);
+				height[i] = 1+Math.max((left[i] >= 0) ? height[left[i]] : -1, (right[i] >= 0) ? height[right[i]] : -1);
+			}
+			if( mode == TIDY )
+			{
+				placeTidy(l, left, right, height);
+			}
+			else
+			{
+				placeInOrder(l, left, right, size);
+			}
+			placeSideBySide(l);
+		}
+		spanSubtrees(l);
+
+		l.width = 0;
+		for( int i = 0; i < n; i++ )
+		{
+			l.width = Math.max(l.width, l.x[i]+nodeSize);
+		}
+		l.height = treeHeight*rowHeight+nodeSize;
+		return l;
+	}
+
+	/**
+	 * Sets minX and maxX of every subtree from the positions of its Nodes.
+	 */
+	private static void spanSubtrees(TreeLayout l)
+	{
+		System.arraycopy(l.x, 0, l.minX, 0, l.n);
+		System.arraycopy(l.x, 0, l.maxX, 0, l.n);
+		for( int i = l.n-1; i > 0; i-- )
+		{
+			int p = l.parent[i];
+			if( p >= 0 )
+			{
+				l.minX[p] = Math.min(l.minX[p], l.minX[i]);
+				l.maxX[p] = Math.max(l.maxX[p], l.maxX[i]);
+			}
 		}
-		
-		drawTree(treeInfo);
 	}
-		
-	private void drawTree(java.util.ArrayList<String> treeInfo)
+
+	/**
+	 * Every level gets 2^treeHeight columns: a Node is placed from its parent,
+	 * which comes before it in pre-order, by one step to the left or the right,
+	 * so every position is computed once, and edges reuse the parent's.
+	 */
+	private void placeClassic(TreeLayout l, int treeHeight)
 	{
-		String[] id = new String[treeInfo.size()];
-		String[] path = new String[treeInfo.size()];
-				
-		int treeHeight = 0;
-		
-		for( int i = 0; i < treeInfo.size(); i++ )
+		// a step down to level d moves 2^(treeHeight-d) half columns to either side
+		double halfDelta = colWidth/2;
+		double[] stepWidth = new double[treeHeight+1];
+		for( int d = 0; d <= treeHeight; d++ )
 		{
-			java.util.StringTokenizer st = new java.util.StringTokenizer(treeInfo.get(i));
-			id[i] = st.nextToken();
-			if( st.hasMoreTokens() )
+			stepWidth[d] = Math.scalb(halfDelta, treeHeight-d);
+		}
+		double center = Math.scalb((double) colWidth, treeHeight)/2;
+
+		TreeInfoFile info = l.info;
+		for( int i = 0; i < l.n; i++ )
+		{
+			int d = l.depth[i];
+			if( l.linked[i] )
 			{
-				path[i] = st.nextToken();
+				l.x[i] = l.x[l.parent[i]]+(info.step(i, d-1) ? stepWidth[d] : -stepWidth[d]);
 			}
 			else
 			{
-				path[i] = "";
-			}
-			
-			if( path[i].length() > treeHeight )
-			{
-				treeHeight = path[i].length();
-			}
-		}
-		
-		int treeWidth = 1;
-		for( int i = 0; i < treeHeight; i++ )
-		{
-			treeWidth = treeWidth*2;
-		}
-		
-		biG.setColor(backgroundColor);
-		biG.fillRect(0, 0, maxWidth, maxHeight);
-		biG.setColor(foregroundColor);
-		
-		int width = treeWidth*colWidth;
-		int height = treeHeight*rowHeight;
-		int center = width/2;
-		int delta = width/treeWidth;
-		int halfDelta = delta/2;
-		delta = halfDelta*2;
-		
-		for( int i = 0; i < id.length; i++ )
-		{
-			int[] coord = getCoordinates(path[i], treeHeight, center, rowHeight, halfDelta);
-			int x = coord[0];
-			int y = coord[1];
-			biG.drawOval(x+offsetX, y+offsetY, nodeSize, nodeSize);
-			int deltaX = (2*halfNodeSize)/3;
-			if( id[i].length() > 1 )
-			{
-				deltaX = halfNodeSize/2;
-			}
-			if( id[i].length() > 2 )
-			{
-				deltaX = halfNodeSize/3;
-			}
-			biG.drawString(id[i], x+offsetX+deltaX, y+offsetY+halfNodeSize+(halfNodeSize/3));
-			
-			if( path[i].length() > 0 )
-			{
-				int[] parentCoord = getCoordinates(path[i].substring(1), treeHeight, center, rowHeight, halfDelta);
-				int pX = parentCoord[0];
-				int pY = parentCoord[1];
-				
-				double x0 = x+halfNodeSize;
-				double y0 = y+halfNodeSize;
-				double x1 = pX+halfNodeSize;
-				double y1 = pY+halfNodeSize;
-				
-				double d = getLength(x0, y0, x1, y1);
-				double d1 = halfNodeSize;
-				double r = d1/d;
-				
-				int x2 = (int) ((x0*(1.0-r))+(x1*r));
-				int y2 = (int) ((y0*(1.0-r))+(y1*r));
-				
-				int x3 = (int) ((x1*(1.0-r))+(x0*r));
-				int y3 = (int) ((y1*(1.0-r))+(y0*r));
-				
-				biG.drawLine(x2+offsetX, y2+offsetY, x3+offsetX, y3+offsetY);
-			}
-		}
-		repaint(0);
-	}
-	
-	private double getLength(double x0, double y0, double x1, double y1)
-	{
-		return Math.sqrt(((x1-x0)*(x1-x0)) + ((y1-y0)*(y1-y0)));
+				double x = center;
+				for( int j = 0; j < d; j++ )
+				{
+					x += info.step(i, j) ? stepWidth[j+1] : -stepWidth[j+1];
+				}
+				l.x[i] = x;
+			}
+		}
 	}
-	
-	private int[] getCoordinates(String path, int treeHeight, int center, int rowHeight, int halfDelta)
+
+	/**
+	 * Reingold-Tilford, see TidyLayout: only the offsets from the parents come
+	 * out of it, which are added up from the top here.
+	 */
+	private void placeTidy(TreeLayout l, int[] left, int[] right, int[] height)
 	{
-		byte[] bReverse = path.getBytes();
-		byte[] b = new byte[bReverse.length];
-		for( int j = 0; j < b.length; j++ )
+		double[] offset = TidyLayout.offsets(left, right, height, colWidth);
+		for( int i = 0; i < l.n; i++ )
 		{
-			b[(b.length-1)-j] = bReverse[j];
+			l.x[i] = l.linked[i] ? l.x[l.parent[i]]+offset[i] : 0;
 		}
-		
-		int x = center;
-		int y = b.length*rowHeight;
-		for( int j = 0; j < b.length; j++ )
+	}
+
+	/**
+	 * Each Node gets its own half column, in key order. Nodes next to each other
+	 * in key order are always on different levels, so Nodes on the same level
+	 * are at least a whole column apart.
+	 */
+	private void placeInOrder(TreeLayout l, int[] left, int[] right, int[] size)
+	{
+		double halfDelta = colWidth/2;
+		int[] rank = new int[l.n]; // within the tree it is linked into
+		for( int i = 0; i < l.n; i++ )
 		{
-			int stepsFromRoot = path.length();
-			int m = 1;
-			for( int k = 1; k < (treeHeight-j); k++ )
+			int p = l.parent[i];
+			int sizeLeft = (left[i] >= 0) ? size[left[i]] : 0;
+			int sizeRight = (right[i] >= 0) ? size[right[i]] : 0;
+			if( !l.linked[i] )
 			{
-				m = m*2;
+				rank[i] = sizeLeft;
 			}
-			if( b[j] == '0' )
+			else if( i == left[p] )
 			{
-				x = x-(m*halfDelta);
+				rank[i] = rank[p]-sizeRight-1;
 			}
 			else
 			{
-				x = x+(m*halfDelta);
+				rank[i] = rank[p]+sizeLeft+1;
+			}
+			l.x[i] = rank[i]*halfDelta;
+		}
+	}
+
+	/**
+	 * Moves every tree (the whole tree, and any subtree whose parent is missing,
+	 * each placed around 0 so far) to the right of the previous one, a column
+	 * apart.
+	 */
+	private void placeSideBySide(TreeLayout l)
+	{
+		int n = l.n;
+		int[] root = new int[n]; // of the linked tree of each Node
+		double[] lo = new double[n];
+		double[] hi = new double[n];
+		for( int i = 0; i < n; i++ )
+		{
+			root[i] = l.linked[i] ? root[l.parent[i]] : i;
+			lo[i] = l.x[i];
+			hi[i] = l.x[i];
+		}
+		for( int i = n-1; i >= 0; i-- )
+		{
+			int r = root[i];
+			lo[r] = Math.min(lo[r], l.x[i]);
+			hi[r] = Math.max(hi[r], l.x[i]);
+		}
+
+		double next = 0;
+		double[] shift = new double[n];
+		for( int i = 0; i < n; i++ )
+		{
+			if( root[i] == i )
+			{
+				shift[i] = next-lo[i];
+				next += hi[i]-lo[i]+colWidth;
 			}
+			l.x[i] += shift[root[i]];
+		}
+	}
+
+	/**
+	 * Swaps in a new layout, on the event dispatch thread, dropping every tile of
+	 * the old one.
+	 */
+	private void showLayout(TreeLayout next)
+	{
+		layout = next;
+		treeWidth = next.width;
+		treeHeight = next.height;
+		zoom = Math.min(1.0, maxZoomFor());
+		javax.swing.JViewport viewport = (javax.swing.JViewport) javax.swing.SwingUtilities.getAncestorOfClass(javax.swing.JViewport.class, this);
+		if( zoom < 1.0 && viewport != null )
+		{
+			// too wide to be scrolled through at full size, start with all of it in view
+			zoom = Math.min(zoom, fitZoom(viewport));
+		}
+		clearTiles();
+		revalidate();
+		repaint();
+	}
+
+	private double maxZoomFor()
+	{
+		double extent = Math.max(treeWidth, treeHeight)+2*Math.max(offsetX, offsetY);
+		return Math.min(MAX_ZOOM, MAX_EXTENT/extent);
+	}
+
+	private void clearTiles()
+	{
+		generation++;
+		tiles.clear();
+		pendingTiles.clear();
+	}
+
+	@Override
+	public java.awt.Dimension getPreferredSize()
+	{
+		if( !hasTree() )
+		{
+			return new java.awt.Dimension(1, 1);
 		}
-		return new int[] {x, y};
+		int w = (int) Math.ceil((treeWidth+2*offsetX)*zoom);
+		int h = (int) Math.ceil((treeHeight+2*offsetY)*zoomY(zoom));
+		return new java.awt.Dimension(w, h);
 	}
-	
+
+	/**
+	 * Zooms to a new scale, keeping the point at the center of the view where it
+	 * is.
+	 */
+	private void setZoom(double newZoom)
+	{
+		javax.swing.JViewport viewport = (javax.swing.JViewport) javax.swing.SwingUtilities.getAncestorOfClass(javax.swing.JViewport.class, this);
+		if( !hasTree() || viewport == null )
+		{
+			return;
+		}
+		newZoom = Math.max(Math.min(newZoom, maxZoomFor()), fitZoom(viewport)/2);
+		if( newZoom == zoom )
+		{
+			return;
+		}
+
+		java.awt.Rectangle view = viewport.getViewRect();
+		java.awt.Point origin = javax.swing.SwingUtilities.convertPoint(this, 0, 0, viewport.getView());
+		double cx = (view.getCenterX()-origin.x)/zoom;
+		double cy = (view.getCenterY()-origin.y)/zoomY(zoom);
+
+		zoom = newZoom;
+		clearTiles();
+		revalidate();
+		javax.swing.SwingUtilities.invokeLater(() ->
+		{
+			int vx = (int) (cx*zoom+origin.x-view.width/2);
+			int vy = (int) (cy*zoomY(zoom)+origin.y-view.height/2);
+			java.awt.Dimension extent = viewport.getView().getSize();
+			vx = Math.max(0, Math.min(vx, extent.width-view.width));
+			vy = Math.max(0, Math.min(vy, extent.height-view.height));
+			viewport.setViewPosition(new java.awt.Point(vx, vy));
+			repaint();
+		});
+	}
+
+	private double fitZoom(javax.swing.JViewport viewport)
+	{
+		java.awt.Dimension extent = viewport.getExtentSize();
+		return Math.min(extent.width/(treeWidth+2*offsetX), Math.max(MIN_ZOOM_Y, extent.height/(treeHeight+2*offsetY)));
+	}
+
+	private boolean hasTree()
+	{
+		return layout != null || mirror != null;
+	}
+
+	private static double zoomY(double zoom)
+	{
+		return Math.max(zoom, MIN_ZOOM_Y);
+	}
+
 	public void keyPressed(java.awt.event.KeyEvent e)
 	{
 	}
-	
+
 	public void keyReleased(java.awt.event.KeyEvent e)
 	{
 		if( e.getKeyCode() == java.awt.event.KeyEvent.VK_R )
 		{
-			readFileAndDrawTree();
+			if( mirror == null )
+			{
+				readFileAndDrawTree();
+			}
+			else if( follow )
+			{
+				rewind = true;
+			}
 		}
 	}
-	
+
 	public void keyTyped(java.awt.event.KeyEvent e)
 	{
+		char c = e.getKeyChar();
+		if( (c == 'l' || c == 'L') && layout != null )
+		{
+			TreeInfoFile info = layout.info;
+			int mode = (layout.mode+1)%LAYOUTS;
+			if( mode == CLASSIC && info.maxDepth() > MAX_CLASSIC_HEIGHT )
+			{
+				mode = TIDY;
+			}
+			layoutMode = mode;
+			int picked = mode;
+			loader.execute(() ->
+			{
+				TreeLayout next = layoutTree(info, picked);
+				javax.swing.SwingUtilities.invokeLater(() -> showLayout(next));
+			});
+		}
+		else if( c == '+' || c == '=' )
+		{
+			setZoom(zoom*2);
+		}
+		else if( c == '-' )
+		{
+			setZoom(zoom/2);
+		}
+		else if( c == '0' )
+		{
+			javax.swing.JViewport viewport = (javax.swing.JViewport) javax.swing.SwingUtilities.getAncestorOfClass(javax.swing.JViewport.class, this);
+			if( hasTree() && viewport != null )
+			{
+				setZoom(Math.min(1.0, fitZoom(viewport)));
+			}
+		}
 	}
-			
+
+	/**
+	 * Draws the cached tiles under the clip and asks the background threads for
+	 * the missing ones, which repaint their own area once they are ready. A live
+	 * view only draws the tiles of its last frame, the next frame brings the
+	 * missing ones.
+	 */
 	public void paintComponent(java.awt.Graphics g)
 	{
 		super.paintComponent(g);
-		if( bi == null )
+		if( !hasTree() )
 		{
+			g.setColor(foregroundColor);
+			g.drawString("loading " + filename, offsetX, offsetY+halfNodeSize);
 			return;
 		}
-		g.drawImage(bi, 0, 0, null);
+
+		visible = getVisibleRect();
+		java.awt.Rectangle clip = g.getClipBounds();
+		if( clip == null )
+		{
+			clip = visible;
+		}
+		int tx0 = clip.x/TILE_SIZE;
+		int ty0 = clip.y/TILE_SIZE;
+		int tx1 = (clip.x+clip.width-1)/TILE_SIZE;
+		int ty1 = (clip.y+clip.height-1)/TILE_SIZE;
+		for( int ty = ty0; ty <= ty1; ty++ )
+		{
+			for( int tx = tx0; tx <= tx1; tx++ )
+			{
+				long key = ((long) tx << 32) | (ty & 0xFFFFFFFFL);
+				java.awt.image.BufferedImage tile = tiles.get(key);
+				if( tile != null )
+				{
+					g.drawImage(tile, tx*TILE_SIZE, ty*TILE_SIZE, null);
+				}
+				else if( mirror == null && pendingTiles.add(key) )
+				{
+					requestTile(key, tx, ty);
+				}
+			}
+		}
+	}
+
+	private void requestTile(long key, int tx, int ty)
+	{
+		TreeLayout l = layout;
+		double z = zoom;
+		int gen = generation;
+		renderer.execute(() ->
+		{
+			// scrolled or zoomed away while this was queued
+			java.awt.Rectangle area = new java.awt.Rectangle(tx*TILE_SIZE, ty*TILE_SIZE, TILE_SIZE, TILE_SIZE);
+			java.awt.image.BufferedImage tile = null;
+			if( gen == generation && area.intersects(visible) )
+			{
+				tile = renderTile(l, new View(z, area.x, area.y));
+			}
+			java.awt.image.BufferedImage done = tile;
+			javax.swing.SwingUtilities.invokeLater(() ->
+			{
+				if( gen != generation )
+				{
+					return;
+				}
+				pendingTiles.remove(key);
+				if( done != null )
+				{
+					tiles.put(key, done);
+					repaint(area);
+				}
+			});
+		});
+	}
+
+	/**
+	 * Copies a tree, shape (and colors) included, through a snapshot.
+	 */
+	private static vural_BinarySearchTree copyOf(vural_BinarySearchTree tree)
+	{
+		try
+		{
+			java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+			BinarySearchTreeSnapshot.write(tree, bytes, false);
+			vural_BinarySearchTree copy = tree.newEmptyTree();
+			BinarySearchTreeSnapshot.read(new java.io.ByteArrayInputStream(bytes.toByteArray()), copy);
+			return copy;
+		}
+		catch( java.io.IOException e )
+		{
+			throw new java.io.UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Queues a change for the next frame, on whichever thread made it.
+	 */
+	private void post(long event)
+	{
+		synchronized( eventLock )
+		{
+			if( eventCount == events.length )
+			{
+				events = java.util.Arrays.copyOf(events, 2*eventCount);
+			}
+			events[eventCount++] = event;
+		}
+	}
+
+	/**
+	 * Reads the event file as it grows and queues the change on every whole line.
+	 * It waits for the WatchService to report a change, but no longer than a
+	 * frame, since some file systems report late or never. The file is read again
+	 * from the top when it shrinks or when R is pressed.
+	 */
+	private void followFile()
+	{
+		java.nio.file.Path path = java.nio.file.Paths.get(filename).toAbsolutePath();
+		try( java.nio.file.WatchService watcher = path.getFileSystem().newWatchService() )
+		{
+			path.getParent().register(watcher, java.nio.file.StandardWatchEventKinds.ENTRY_CREATE, java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY);
+			java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocate(1 << 16);
+			StringBuilder line = new StringBuilder();
+			long offset = 0;
+			while( true )
+			{
+				long size = java.nio.file.Files.exists(path) ? java.nio.file.Files.size(path) : 0;
+				if( rewind || size < offset )
+				{
+					rewind = false;
+					offset = 0;
+					line.setLength(0);
+					post(LiveMirror.event(0, LiveMirror.CLEAR));
+				}
+				if( size > offset )
+				{
+					try( java.nio.channels.FileChannel in = java.nio.channels.FileChannel.open(path, java.nio.file.StandardOpenOption.READ) )
+					{
+						in.position(offset);
+						int read;
+						while( (read = in.read(buffer)) > 0 )
+						{
+							offset += read;
+							buffer.flip();
+							while( buffer.hasRemaining() )
+							{
+								char c = (char) (buffer.get() & 0xFF);
+								if( c == '\n' )
+								{
+									parseEvent(line);
+									line.setLength(0);
+								}
+								else
+								{
+									line.append(c);
+								}
+							}
+							buffer.clear();
+						}
+					}
+				}
+				java.nio.file.WatchKey key = watcher.poll(1000/FRAMES_PER_SECOND, java.util.concurrent.TimeUnit.MILLISECONDS);
+				if( key != null )
+				{
+					key.pollEvents();
+					key.reset();
+				}
+			}
+		}
+		catch( java.io.IOException | InterruptedException e )
+		{
+			System.out.println(e.toString());
+		}
+	}
+
+	/**
+	 * Queues the change on one line of an event file: "insert key", "delete key",
+	 * "clear", or a treeInfo line ("key path"), which inserts its key.
+	 */
+	private void parseEvent(CharSequence text)
+	{
+		String line = text.toString().trim();
+		if( line.isEmpty() || line.startsWith("#") )
+		{
+			return;
+		}
+		String[] words = line.split("\\s+");
+		try
+		{
+			if( words[0].equals("clear") )
+			{
+				post(LiveMirror.event(0, LiveMirror.CLEAR));
+			}
+			else if( words[0].equals("insert") && words.length > 1 )
+			{
+				post(LiveMirror.event(Integer.parseInt(words[1]), LiveMirror.INSERT));
+			}
+			else if( words[0].equals("delete") && words.length > 1 )
+			{
+				post(LiveMirror.event(Integer.parseInt(words[1]), LiveMirror.DELETE));
+			}
+			else
+			{
+				post(LiveMirror.event(Integer.parseInt(words[0]), LiveMirror.INSERT));
+			}
+		}
+		catch( NumberFormatException e )
+		{
+			System.out.println("bad event: " + line);
+		}
+	}
+
+	/**
+	 * Runs on the frame thread, FRAMES_PER_SECOND times a second: applies every
+	 * change queued since the last frame, then, if anything changed or the view
+	 * moved, renders the tiles in view (with the rendering threads, while the copy
+	 * of the tree stands still) and hands them to the event dispatch thread.
+	 */
+	private void nextFrame()
+	{
+		try
+		{
+			long[] batch;
+			int count;
+			synchronized( eventLock )
+			{
+				batch = events;
+				count = eventCount;
+				events = spareEvents;
+				eventCount = 0;
+			}
+			for( int k = 0; k < count; k++ )
+			{
+				LiveMirror.apply(mirror, batch[k]);
+			}
+			spareEvents = batch;
+
+			java.awt.Rectangle area = visible;
+			int gen = generation;
+			if( count == 0 && gen == frameGeneration && area.equals(frameArea) )
+			{
+				return;
+			}
+			frameArea = area;
+			frameGeneration = gen;
+
+			Node root = mirror.getRoot();
+			int n = (root == null) ? 0 : root.getSize();
+			double width = (n == 0) ? 0 : (n-1)*(colWidth/2)+nodeSize;
+			double height = (n == 0) ? 0 : root.getHeight()*rowHeight+nodeSize;
+
+			double z = zoom;
+			java.util.ArrayList<Long> keys = new java.util.ArrayList<>();
+			java.util.ArrayList<java.util.concurrent.Callable<java.awt.image.BufferedImage>> jobs = new java.util.ArrayList<>();
+			if( !area.isEmpty() )
+			{
+				for( int ty = area.y/TILE_SIZE; ty <= (area.y+area.height-1)/TILE_SIZE; ty++ )
+				{
+					for( int tx = area.x/TILE_SIZE; tx <= (area.x+area.width-1)/TILE_SIZE; tx++ )
+					{
+						View v = new View(z, tx*TILE_SIZE, ty*TILE_SIZE);
+						keys.add(((long) tx << 32) | (ty & 0xFFFFFFFFL));
+						jobs.add(() -> renderLiveTile(root, v));
+					}
+				}
+			}
+			java.util.List<java.util.concurrent.Future<java.awt.image.BufferedImage>> done = renderer.invokeAll(jobs);
+			java.util.HashMap<Long, java.awt.image.BufferedImage> frame = new java.util.HashMap<>();
+			for( int k = 0; k < keys.size(); k++ )
+			{
+				frame.put(keys.get(k), done.get(k).get());
+			}
+			javax.swing.SwingUtilities.invokeLater(() -> showFrame(frame, gen, width, height));
+		}
+		catch( Exception e )
+		{
+			// thrown out of here, it would silently cancel every later frame
+			System.out.println(e.toString());
+		}
+	}
+
+	/**
+	 * Swaps in the tiles of a live frame, on the event dispatch thread, unless the
+	 * view has been zoomed since they were rendered.
+	 */
+	private void showFrame(java.util.HashMap<Long, java.awt.image.BufferedImage> frame, int gen, double width, double height)
+	{
+		if( width != treeWidth || height != treeHeight )
+		{
+			treeWidth = width;
+			treeHeight = height;
+			if( zoom > maxZoomFor() )
+			{
+				zoom = maxZoomFor();
+				clearTiles();
+			}
+			revalidate();
+		}
+		if( gen != generation )
+		{
+			return;
+		}
+		tiles.clear();
+		tiles.putAll(frame);
+		repaint();
+	}
+
+	/**
+	 * Maps layout coordinates onto a tile at some zoom.
+	 */
+	private final class View
+	{
+		final double zx, zy, z; // z scales the Nodes themselves, so that they stay round
+		final int tileX, tileY;
+		final double left, right, top, bottom; // the tile in layout coordinates, grown by a Node so that Nodes centered just outside still show
+
+		View(double zoom, int tileX, int tileY)
+		{
+			this.zx = zoom;
+			this.zy = zoomY(zoom);
+			this.z = Math.min(zx, zy);
+			this.tileX = tileX;
+			this.tileY = tileY;
+			this.left = tileX/zx-offsetX-nodeSize;
+			this.right = (tileX+TILE_SIZE)/zx-offsetX+nodeSize;
+			this.top = tileY/zy-offsetY-nodeSize;
+			this.bottom = (tileY+TILE_SIZE)/zy-offsetY+nodeSize;
+		}
+
+		double sx(double x)
+		{
+			return (x+offsetX)*zx-tileX;
+		}
+
+		double sy(double y)
+		{
+			return (y+offsetY)*zy-tileY;
+		}
+	}
+
+	/**
+	 * Renders one tile, walking the Nodes in pre-order and skipping every subtree
+	 * (along with the edge to its parent) whose bounding box misses the tile.
+	 */
+	private java.awt.image.BufferedImage renderTile(TreeLayout l, View v)
+	{
+		java.awt.image.BufferedImage tile = new java.awt.image.BufferedImage(TILE_SIZE, TILE_SIZE, java.awt.image.BufferedImage.TYPE_INT_RGB);
+		java.awt.Graphics2D g = createTileGraphics(tile, v);
+		boolean labels = nodeSize*v.z >= MIN_LABEL_PIXELS;
+
+		int n = l.n;
+		int i = 0;
+		while( i < n )
+		{
+			int p = l.linked[i] ? l.parent[i] : -1; // the Node at the other end of the edge up
+			double lo = l.minX[i];
+			double hi = l.maxX[i];
+			double y0 = (p >= 0 ? l.depth[i]-1 : l.depth[i])*rowHeight;
+			if( p >= 0 )
+			{
+				lo = Math.min(lo, l.x[p]);
+				hi = Math.max(hi, l.x[p]);
+			}
+			if( hi < v.left || lo > v.right || l.maxDepth[i]*rowHeight < v.top || y0 > v.bottom )
+			{
+				i += l.size[i];
+				continue;
+			}
+
+			if( p >= 0 )
+			{
+				drawEdge(g, v, l.x[i], l.depth[i]*rowHeight, l.x[p], (l.depth[i]-1)*rowHeight);
+			}
+			if( l.size[i] > 1 && (l.maxX[i]-l.minX[i])*v.zx < COLLAPSE_PIXELS )
+			{
+				drawGlyph(g, v, l.x[i], l.depth[i], l.maxDepth[i], l.minX[i], l.maxX[i], l.size[i]);
+				i += l.size[i];
+				continue;
+			}
+			drawNode(g, v, l.x[i], l.depth[i]*rowHeight);
+			if( labels )
+			{
+				drawLabel(g, v, l.info.id(i), l.x[i], l.depth[i]*rowHeight);
+			}
+			i++;
+		}
+		g.dispose();
+		return tile;
+	}
+
+	/**
+	 * Renders one tile of a live tree, in the in-order layout. The walk goes down
+	 * from the root working out the rank of each Node from the subtree sizes, so
+	 * no layout is kept, and skips every subtree whose box misses the tile, as
+	 * renderTile does.
+	 */
+	private java.awt.image.BufferedImage renderLiveTile(Node root, View v)
+	{
+		java.awt.image.BufferedImage tile = new java.awt.image.BufferedImage(TILE_SIZE, TILE_SIZE, java.awt.image.BufferedImage.TYPE_INT_RGB);
+		java.awt.Graphics2D g = createTileGraphics(tile, v);
+		boolean labels = nodeSize*v.z >= MIN_LABEL_PIXELS;
+		double halfDelta = colWidth/2;
+
+		// Nodes still to visit, with the lowest rank in their subtree, their depth and where their parent is
+		int capacity = (root == null) ? 1 : root.getHeight()+2;
+		Node[] stack = new Node[capacity];
+		int[] stackLo = new int[capacity];
+		int[] stackDepth = new int[capacity];
+		double[] stackParentX = new double[capacity];
+		int top = 0;
+		if( root != null )
+		{
+			stack[top++] = root;
+		}
+		while( top > 0 )
+		{
+			top--;
+			Node x = stack[top];
+			int lo = stackLo[top];
+			int d = stackDepth[top];
+			double pX = stackParentX[top];
+
+			int rank = lo+((x.getLeft() == null) ? 0 : x.getLeft().getSize());
+			double nodeX = rank*halfDelta;
+			double minX = lo*halfDelta;
+			double maxX = (lo+x.getSize()-1)*halfDelta;
+			int maxDepth = d+x.getHeight();
+			double boxLo = (d > 0) ? Math.min(minX, pX) : minX;
+			double boxHi = (d > 0) ? Math.max(maxX, pX) : maxX;
+			double y0 = ((d > 0) ? d-1 : d)*rowHeight;
+			if( boxHi < v.left || boxLo > v.right || maxDepth*rowHeight < v.top || y0 > v.bottom )
+			{
+				continue;
+			}
+
+			if( d > 0 )
+			{
+				drawEdge(g, v, nodeX, d*rowHeight, pX, (d-1)*rowHeight);
+			}
+			if( x.getSize() > 1 && (maxX-minX)*v.zx < COLLAPSE_PIXELS )
+			{
+				drawGlyph(g, v, nodeX, d, maxDepth, minX, maxX, x.getSize());
+				continue;
+			}
+			drawNode(g, v, nodeX, d*rowHeight);
+			if( labels )
+			{
+				drawLabel(g, v, Integer.toString(x.getKey()), nodeX, d*rowHeight);
+			}
+
+			if( top+2 > stack.length )
+			{
+				stack = java.util.Arrays.copyOf(stack, 2*stack.length);
+				stackLo = java.util.Arrays.copyOf(stackLo, stack.length);
+				stackDepth = java.util.Arrays.copyOf(stackDepth, stack.length);
+				stackParentX = java.util.Arrays.copyOf(stackParentX, stack.length);
+			}
+			if( x.getRight() != null )
+			{
+				stack[top] = x.getRight();
+				stackLo[top] = rank+1;
+				stackDepth[top] = d+1;
+				stackParentX[top++] = nodeX;
+			}
+			if( x.getLeft() != null )
+			{
+				stack[top] = x.getLeft();
+				stackLo[top] = lo;
+				stackDepth[top] = d+1;
+				stackParentX[top++] = nodeX;
+			}
+		}
+		g.dispose();
+		return tile;
+	}
+
+	/**
+	 * Clears a new tile and sets up its graphics, with the font scaled along with
+	 * the Nodes.
+	 */
+	private java.awt.Graphics2D createTileGraphics(java.awt.image.BufferedImage tile, View v)
+	{
+		java.awt.Graphics2D g = tile.createGraphics();
+		g.setColor(backgroundColor);
+		g.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+		g.setRenderingHint(java.awt.RenderingHints.KEY_ANTIALIASING, java.awt.RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setColor(foregroundColor);
+		if( nodeSize*v.z >= MIN_LABEL_PIXELS )
+		{
+			g.setFont(getFont().deriveFont((float) (getFont().getSize2D()*v.z)));
+		}
+		return g;
+	}
+
+	private void drawNode(java.awt.Graphics2D g, View v, double x, double y)
+	{
+		// centered where the Node is, however much it has been shrunk
+		double sx = v.sx(x+halfNodeSize)-halfNodeSize*v.z;
+		double sy = v.sy(y+halfNodeSize)-halfNodeSize*v.z;
+		g.draw(new java.awt.geom.Ellipse2D.Double(sx, sy, nodeSize*v.z, nodeSize*v.z));
+	}
+
+	private void drawLabel(java.awt.Graphics2D g, View v, String id, double x, double y)
+	{
+		double sx = v.sx(x+halfNodeSize)-halfNodeSize*v.z;
+		double sy = v.sy(y+halfNodeSize)-halfNodeSize*v.z;
+		int deltaX = (2*halfNodeSize)/3;
+		if( id.length() > 1 )
+		{
+			deltaX = halfNodeSize/2;
+		}
+		if( id.length() > 2 )
+		{
+			deltaX = halfNodeSize/3;
+		}
+		g.drawString(id, (float) (sx+deltaX*v.z), (float) (sy+(halfNodeSize+(halfNodeSize/3))*v.z));
+	}
+
+	/**
+	 * Draws the edge between the centers of a Node and its parent, stopping at
+	 * both circles.
+	 */
+	private void drawEdge(java.awt.Graphics2D g, View v, double x, double y, double pX, double pY)
+	{
+		double x0 = v.sx(x+halfNodeSize);
+		double y0 = v.sy(y+halfNodeSize);
+		double x1 = v.sx(pX+halfNodeSize);
+		double y1 = v.sy(pY+halfNodeSize);
+
+		double d = getLength(x0, y0, x1, y1);
+		double d1 = halfNodeSize*v.z;
+		double r = d1/d;
+
+		double x2 = (x0*(1.0-r))+(x1*r);
+		double y2 = (y0*(1.0-r))+(y1*r);
+
+		double x3 = (x1*(1.0-r))+(x0*r);
+		double y3 = (y1*(1.0-r))+(y0*r);
+
+		drawClipped(g, x2, y2, x3, y3);
+	}
+
+	/**
+	 * Draws a line cut down to (about) the tile first. Far out zooms can leave
+	 * endpoints millions of pixels away, which Java2D would otherwise rasterize.
+	 */
+	private static void drawClipped(java.awt.Graphics2D g, double x0, double y0, double x1, double y1)
+	{
+		double lo = -2;
+		double hi = TILE_SIZE+2;
+		double t0 = 0;
+		double t1 = 1;
+		double dx = x1-x0;
+		double dy = y1-y0;
+		// Liang-Barsky: narrow [t0, t1] against each side of the tile
+		double[] p = {-dx, dx, -dy, dy};
+		double[] q = {x0-lo, hi-x0, y0-lo, hi-y0};
+		for( int k = 0; k < 4; k++ )
+		{
+			if( p[k] == 0 )
+			{
+				if( q[k] < 0 )
+				{
+					return;
+				}
+			}
+			else
+			{
+				double t = q[k]/p[k];
+				if( p[k] < 0 )
+				{
+					t0 = Math.max(t0, t);
+				}
+				else
+				{
+					t1 = Math.min(t1, t);
+				}
+			}
+		}
+		if( t0 <= t1 )
+		{
+			g.draw(new java.awt.geom.Line2D.Double(x0+t0*dx, y0+t0*dy, x0+t1*dx, y0+t1*dy));
+		}
+	}
+
+	/**
+	 * Draws a whole subtree as a triangle from its root down to its deepest level,
+	 * as wide as its Nodes spread.
+	 */
+	private void drawGlyph(java.awt.Graphics2D g, View v, double x, int depth, int maxDepth, double minX, double maxX, int size)
+	{
+		double apexX = v.sx(x+halfNodeSize);
+		double apexY = v.sy(depth*rowHeight+halfNodeSize);
+		double baseY = v.sy(maxDepth*rowHeight+halfNodeSize)+halfNodeSize*v.z;
+		double baseL = v.sx(minX+halfNodeSize)-halfNodeSize*v.z;
+		double baseR = v.sx(maxX+halfNodeSize)+halfNodeSize*v.z;
+
+		java.awt.geom.Path2D.Double triangle = new java.awt.geom.Path2D.Double();
+		triangle.moveTo(apexX, apexY);
+		triangle.lineTo(baseR, baseY);
+		triangle.lineTo(baseL, baseY);
+		triangle.closePath();
+		java.awt.Shape shape = triangle;
+		if( !new java.awt.Rectangle(-TILE_SIZE, -TILE_SIZE, 3*TILE_SIZE, 3*TILE_SIZE).contains(triangle.getBounds2D()) )
+		{
+			// same reason as drawClipped, cut it down to the tile and its border
+			java.awt.geom.Area area = new java.awt.geom.Area(triangle);
+			area.intersect(new java.awt.geom.Area(new java.awt.Rectangle(-2, -2, TILE_SIZE+4, TILE_SIZE+4)));
+			shape = area;
+		}
+		g.setColor(glyphColor);
+		g.fill(shape);
+		g.setColor(foregroundColor);
+		g.draw(shape);
+
+		String count = Integer.toString(size);
+		java.awt.FontMetrics fm = g.getFontMetrics();
+		if( baseR-baseL > fm.stringWidth(count)+4 && baseY-apexY > 2*fm.getHeight() )
+		{
+			g.drawString(count, (float) ((baseL+baseR-fm.stringWidth(count))/2), (float) (baseY-fm.getDescent()-2));
+		}
+	}
+
+	private double getLength(double x0, double y0, double x1, double y1)
+	{
+		return Math.sqrt(((x1-x0)*(x1-x0)) + ((y1-y0)*(y1-y0)));
 	}
 }
@@ -0,0 +1,104 @@
+/**
+ * The changes a live DrawingArea applies to its copy of a tree, apart from
+ * Swing so that they can be tested on their own.
+ *
+ * A change is a long, (key << 2) | what happened, so that the queue of changes
+ * waiting for the next frame is a plain long[]. The copy keeps its subtree sizes
+ * up to date by itself, and the cached heights, which the live view uses for
+ * the height of the drawing, are kept up to date here.
+ */
+final class LiveMirror
+{
+	static final int INSERT = 0;
+	static final int DELETE = 1;
+	static final int CLEAR = 2;
+
+	private LiveMirror()
+	{
+	}
+
+	/**
+	 * Encodes a change.
+	 *
+	 * @param int key - the key inserted or deleted (ignored by CLEAR).
+	 * @param int what - INSERT, DELETE or CLEAR.
+	 *
+	 * @return the change, for apply
+	 */
+	static long event(int key, int what)
+	{
+		return ((long) key << 2) | what;
+	}
+
+	/**
+	 * Applies one change to the copy of a tree. Only AVL trees keep the heights of
+	 * their Nodes up to date, so they are brought up to date here for every kind
+	 * of tree, below the lowest Node which changed.
+	 *
+	 * @param vural_BinarySearchTree mirror - the copy of the tree.
+	 * @param long                   event - the change, made by event.
+	 */
+	static void apply(vural_BinarySearchTree mirror, long event)
+	{
+		int key = (int) (event >> 2);
+		int what = (int) (event & 3);
+		if( what == INSERT )
+		{
+			Node z = new Node(key);
+			if( mirror.insertNode(z) )
+			{
+				fixHeights(z);
+			}
+		}
+		else if( what == DELETE )
+		{
+			Node z = mirror.getNode(mirror.getRoot(), key);
+			if( z == null )
+			{
+				return;
+			}
+			// the same lowest Node as deleteNode: the successor's parent, or the successor, or z's parent
+			Node lowest = z.getParent();
+			if( z.getLeft() != null && z.getRight() != null )
+			{
+				Node y = mirror.getMin(z.getRight());
+				lowest = (y.getParent() == z) ? y : y.getParent();
+			}
+			mirror.deleteNode(z);
+			fixHeights(lowest);
+		}
+		else
+		{
+			mirror.setRoot(null);
+		}
+	}
+
+	/**
+	 * Sets the height of x, of every ancestor of x, and of their children, from
+	 * the bottom up. Rotations only ever change the children of Nodes on that path
+	 * or of their children, whose own children they leave alone.
+	 */
+	private static void fixHeights(Node x)
+	{
+		while( x != null )
+		{
+			updateHeight(x.getLeft());
+			updateHeight(x.getRight());
+			updateHeight(x);
+			x = x.getParent();
+		}
+	}
+
+	private static void updateHeight(Node x)
+	{
+		if( x != null )
+		{
+			x.setHeight(Math.max(heightOf(x.getLeft()), heightOf(x.getRight()))+1);
+		}
+	}
+
+	private static int heightOf(Node x)
+	{
+		return (x == null) ? -1 : x.getHeight();
+	}
+}
@@ -0,0 +1,121 @@
+/**
+ * The tidy layout of DrawingArea, apart from Swing so that it can be tested on
+ * its own.
+ *
+ * Reingold-Tilford: children come before their parent going backwards through
+ * pre-order, so each subtree is done before its parent joins it to its
+ * sibling, as close as the right contour of the left one and the left contour
+ * of the right one allow. A contour goes down through the outermost child and
+ * jumps over to the deeper sibling subtree by a thread once a subtree runs
+ * out, so that walking contours costs O(n) in all. Only the offsets from the
+ * parents are kept.
+ *
+ * The result: Nodes on the same level are at least the separation apart, a
+ * parent is midway between its two children (a single child goes half the
+ * separation over to its side), and the width grows with the number of Nodes
+ * rather than with 2^height.
+ */
+final class TidyLayout
+{
+	private TidyLayout()
+	{
+	}
+
+	/**
+	 * Lays out the trees made of the Nodes 0 to n-1, in O(n).
+	 *
+	 * @param int[]  left - the left child of each Node, -1 for none; every child
+	 *               comes after its parent, as in pre-order.
+	 * @param int[]  right - the right child of each Node, -1 for none.
+	 * @param int[]  height - the height of the subtree of each Node, 0 for a leaf.
+	 * @param double separation - how far apart Nodes on the same level must be.
+	 *
+	 * @return the offset of each Node from its parent (0 for a root)
+	 */
+	static double[] offsets(int[] left, int[] right, int[] height, double separation)
+	{
+		int n = left.length;
+		double[] offset = new double[n]; // from the parent
+		int[] thread = new int[n];
+		double[] threadOffset = new double[n]; // from the Node to its thread
+		int[] lowLeft = new int[n]; // the outermost Nodes on the deepest level
+		int[] lowRight = new int[n];
+		double[] lowLeftOffset = new double[n]; // from the root of the subtree
+		double[] lowRightOffset = new double[n];
+		java.util.Arrays.fill(thread, -1);
+
+		for( int v = n-1; v >= 0; v-- )
+		{
+			int a = left[v];
+			int b = right[v];
+			if( a < 0 && b < 0 )
+			{
+				lowLeft[v] = v;
+				lowRight[v] = v;
+				continue;
+			}
+			if( a < 0 || b < 0 )
+			{
+				// a single child goes half a column over to its side
+				int c = (a >= 0) ? a : b;
+				offset[c] = (a >= 0) ? -separation/2 : separation/2;
+				lowLeft[v] = lowLeft[c];
+				lowRight[v] = lowRight[c];
+				lowLeftOffset[v] = lowLeftOffset[c]+offset[c];
+				lowRightOffset[v] = lowRightOffset[c]+offset[c];
+				continue;
+			}
+
+			// walk down the facing contours, keeping how far apart the roots must be
+			int u = a; // on the right contour of a
+			int w = b; // on the left contour of b
+			double ux = 0; // from a
+			double wx = 0; // from b
+			double distance = separation;
+			while( true )
+			{
+				int nu = (right[u] >= 0) ? right[u] : (left[u] >= 0) ? left[u] : thread[u];
+				int nw = (left[w] >= 0) ? left[w] : (right[w] >= 0) ? right[w] : thread[w];
+				if( nu < 0 || nw < 0 )
+				{
+					break;
+				}
+				ux += (nu == thread[u]) ? threadOffset[u] : offset[nu];
+				wx += (nw == thread[w]) ? threadOffset[w] : offset[nw];
+				u = nu;
+				w = nw;
+				distance = Math.max(distance, ux-wx+separation);
+			}
+			offset[a] = -distance/2;
+			offset[b] = distance/2;
+
+			// the deeper subtree carries on the contours of the shallower one
+			int ha = height[a];
+			int hb = height[b];
+			if( ha > hb )
+			{
+				// from the bottom of b's right contour over to a's, one level further down
+				int bottom = lowRight[b];
+				int nu = (right[u] >= 0) ? right[u] : (left[u] >= 0) ? left[u] : thread[u];
+				double nux = ux+((nu == thread[u]) ? threadOffset[u] : offset[nu]);
+				thread[bottom] = nu;
+				threadOffset[bottom] = (offset[a]+nux)-(offset[b]+lowRightOffset[b]);
+			}
+			else if( hb > ha )
+			{
+				int bottom = lowLeft[a];
+				int nw = (left[w] >= 0) ? left[w] : (right[w] >= 0) ? right[w] : thread[w];
+				double nwx = wx+((nw == thread[w]) ? threadOffset[w] : offset[nw]);
+				thread[bottom] = nw;
+				threadOffset[bottom] = (offset[b]+nwx)-(offset[a]+lowLeftOffset[a]);
+			}
+			int deepLeft = (ha >= hb) ? a : b;
+			int deepRight = (hb >= ha) ? b : a;
+			lowLeft[v] = lowLeft[deepLeft];
+			lowLeftOffset[v] = lowLeftOffset[deepLeft]+offset[deepLeft];
+			lowRight[v] = lowRight[deepRight];
+			lowRightOffset[v] = lowRightOffset[deepRight]+offset[deepRight];
+		}
+		return offset;
+	}
+}
@@ -0,0 +1,435 @@
+/**
+ * The Nodes of a treeInfo file ("key path" lines), read all at once.
+ *
+ * The file is memory-mapped and cut into chunks at line breaks, which are parsed
+ * in parallel, each in a single pass over its bytes into arrays of its own.
+ * The chunks are then copied one after the other into the shared arrays. No
+ * String is created per line.
+ *
+ * A path is kept as bits, one per step (1 for a right turn), in the order of
+ * the file: the last step first, like the prepended ids of preOrderWalk. All
+ * the paths share one pool of bits, and every chunk starts its part on a fresh
+ * long.
+ */
+final class TreeInfoFile
+{
+	private static final int SEGMENT_BITS = 30; // the file is mapped 1 GiB at a time
+	private static final long MIN_CHUNK = 1 << 20;
+	private static final long MAX_CHUNK = 1 << 26;
+
+	final int n;
+	final int[] key;
+	final int[] depth;
+	final long[] pathStart; // where the steps of each path start in bits
+	final long[] bits;
+	private final java.util.Map<Integer, String> otherIds; // ids which are not plain ints, by line
+
+	private TreeInfoFile(int n, int[] key, int[] depth, long[] pathStart, long[] bits, java.util.Map<Integer, String> otherIds)
+	{
+		this.n = n;
+		this.key = key;
+		this.depth = depth;
+		this.pathStart = pathStart;
+		this.bits = bits;
+		this.otherIds = otherIds;
+	}
+
+	/**
+	 * Returns the length of the longest path.
+	 */
+	int maxDepth()
+	{
+		int max = 0;
+		for( int i = 0; i < n; i++ )
+		{
+			max = Math.max(max, depth[i]);
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the id of a Node as written in the file.
+	 */
+	String id(int i)
+	{
+		String other = otherIds.get(i);
+		return (other != null) ? other : Integer.toString(key[i]);
+	}
+
+	/**
+	 * Returns step j (0 for the one from the root) of the path of Node i: false for
+	 * left, true for right.
+	 */
+	boolean step(int i, int j)
+	{
+		long b = pathStart[i]+depth[i]-1-j;
+		return (bits[(int) (b >>> 6)] & (1L << (b & 63))) != 0;
+	}
+
+	/**
+	 * Returns count (at most 64) steps of the path of Node i from step j on, as
+	 * the bits of a long with step j the highest, so that comparing two of them
+	 * compares the steps in order.
+	 */
+	private long steps(int i, int j, int count)
+	{
+		long lo = pathStart[i]+depth[i]-j-count;
+		int word = (int) (lo >>> 6);
+		int shift = (int) (lo & 63);
+		long v = bits[word] >>> shift;
+		if( shift+count > 64 )
+		{
+			v |= bits[word+1] << (64-shift);
+		}
+		return (count == 64) ? v : v & ((1L << count)-1);
+	}
+
+	/**
+	 * Whether the path of Node p is the path of Node i without its last step.
+	 */
+	boolean isParent(int p, int i)
+	{
+		return depth[i] == depth[p]+1 && isAncestor(p, i);
+	}
+
+	/**
+	 * Whether the path of Node p is a proper start of the path of Node i.
+	 */
+	boolean isAncestor(int p, int i)
+	{
+		int d = depth[p];
+		if( depth[i] <= d )
+		{
+			return false;
+		}
+		for( int j = 0; j < d; j += 64 )
+		{
+			int count = Math.min(64, d-j);
+			if( steps(p, j, count) != steps(i, j, count) )
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compares the paths of Nodes i and j in pre-order: step by step from the root,
+	 * left before right, a path before the longer ones it starts.
+	 */
+	int compare(int i, int j)
+	{
+		int d = Math.min(depth[i], depth[j]);
+		for( int k = 0; k < d; k += 64 )
+		{
+			int count = Math.min(64, d-k);
+			int c = Long.compareUnsigned(steps(i, k, count), steps(j, k, count));
+			if( c != 0 )
+			{
+				return c;
+			}
+		}
+		return Integer.compare(depth[i], depth[j]);
+	}
+
+	/**
+	 * Returns the same Nodes sorted into pre-order.
+	 */
+	TreeInfoFile sorted()
+	{
+		Integer[] order = new Integer[n];
+		for( int i = 0; i < n; i++ )
+		{
+			order[i] = i;
+		}
+		java.util.Arrays.sort(order, (a, b) -> compare(a, b));
+
+		int[] sortedKey = new int[n];
+		int[] sortedDepth = new int[n];
+		long[] sortedStart = new long[n];
+		java.util.HashMap<Integer, String> sortedIds = new java.util.HashMap<>();
+		for( int i = 0; i < n; i++ )
+		{
+			int o = order[i];
+			sortedKey[i] = key[o];
+			sortedDepth[i] = depth[o];
+			sortedStart[i] = pathStart[o]; // the bits stay where they are
+			if( otherIds.containsKey(o) )
+			{
+				sortedIds.put(i, otherIds.get(o));
+			}
+		}
+		return new TreeInfoFile(n, sortedKey, sortedDepth, sortedStart, bits, sortedIds);
+	}
+
+	/**
+	 * Reads a treeInfo file. Lines starting with '#' and blank lines are skipped.
+	 *
+	 * @param String filename - the file to read.
+	 *
+	 * @return its Nodes, in the order of the file
+	 *
+	 * @throws java.io.IOException if the file cannot be read
+	 */
+	static TreeInfoFile read(String filename) throws java.io.IOException
+	{
+		long size = java.nio.file.Files.size(java.nio.file.Paths.get(filename));
+		int parallelism = java.util.concurrent.ForkJoinPool.getCommonPoolParallelism();
+		return read(filename, Math.min(MAX_CHUNK, Math.max(MIN_CHUNK, size/(4*parallelism)+1)));
+	}
+
+	/**
+	 * Reads a treeInfo file in chunks of the given size, which only the tests
+	 * make smaller than MIN_CHUNK.
+	 *
+	 * @param String filename - the file to read.
+	 * @param long chunkSize - the bytes per chunk, at least 1.
+	 *
+	 * @return its Nodes, in the order of the file
+	 *
+	 * @throws java.io.IOException if the file cannot be read
+	 */
+	static TreeInfoFile read(String filename, long chunkSize) throws java.io.IOException
+	{
+		try( java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(java.nio.file.Paths.get(filename), java.nio.file.StandardOpenOption.READ) )
+		{
+			long size = channel.size();
+			java.nio.MappedByteBuffer[] segments = new java.nio.MappedByteBuffer[(int) ((size+(1L << SEGMENT_BITS)-1) >>> SEGMENT_BITS)];
+			for( int s = 0; s < segments.length; s++ )
+			{
+				long start = (long) s << SEGMENT_BITS;
+				segments[s] = channel.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, start, Math.min(1L << SEGMENT_BITS, size-start));
+			}
+
+			int chunks = (int) ((size+chunkSize-1)/chunkSize);
+			Chunk[] chunk = new Chunk[chunks];
+			for( int c = 0; c < chunks; c++ )
+			{
+				chunk[c] = new Chunk(segments, size, c*chunkSize, Math.min(size, (c+1)*chunkSize));
+			}
+			java.util.stream.IntStream.range(0, chunks).parallel().forEach(c -> chunk[c].parse());
+
+			// lay the chunks out one after the other
+			long lines = 0;
+			long words = 0;
+			int[] firstLine = new int[chunks];
+			int[] firstWord = new int[chunks];
+			java.util.HashMap<Integer, String> otherIds = new java.util.HashMap<>();
+			for( int c = 0; c < chunks; c++ )
+			{
+				firstLine[c] = (int) lines;
+				firstWord[c] = (int) words;
+				for( java.util.Map.Entry<Integer, String> e : chunk[c].otherIds.entrySet() )
+				{
+					otherIds.put(firstLine[c]+e.getKey(), e.getValue());
+				}
+				lines += chunk[c].lines;
+				words += chunk[c].words();
+				if( lines > Integer.MAX_VALUE-8 || words > Integer.MAX_VALUE-8 )
+				{
+					throw new java.io.IOException(filename + " is too large");
+				}
+			}
+
+			int n = (int) lines;
+			TreeInfoFile info = new TreeInfoFile(n, new int[n], new int[n], new long[n], new long[(int) words], otherIds);
+			java.util.stream.IntStream.range(0, chunks).parallel().forEach(c -> chunk[c].copyTo(info, firstLine[c], firstWord[c]));
+			return info;
+		}
+	}
+
+	/**
+	 * A run of whole lines of the file, parsed into arrays of its own: a line
+	 * belongs to the chunk its first byte is in.
+	 */
+	private static final class Chunk
+	{
+		private final java.nio.MappedByteBuffer[] segments;
+		private final long size;
+		private final long from, to;
+
+		int lines;
+		private int[] key = new int[1024];
+		private int[] depth = new int[1024];
+		private long[] pathStart = new long[1024];
+		private long[] bits = new long[1024];
+		private long used; // bits used so far
+		java.util.HashMap<Integer, String> otherIds = new java.util.HashMap<>();
+
+		// the bytes are copied out of the mapping a block at a time
+		private final byte[] buffer = new byte[1 << 16];
+		private int bufferPos, bufferLen;
+		private long next; // file position of the byte after the buffer
+
+		Chunk(java.nio.MappedByteBuffer[] segments, long size, long from, long to)
+		{
+			this.segments = segments;
+			this.size = size;
+			this.from = from;
+			this.to = to;
+		}
+
+		int words()
+		{
+			return (int) ((used+63) >>> 6);
+		}
+
+		/**
+		 * Returns the next byte of the file, -1 at its end.
+		 */
+		private int read()
+		{
+			if( bufferPos == bufferLen )
+			{
+				if( next >= size )
+				{
+					return -1;
+				}
+				java.nio.MappedByteBuffer segment = segments[(int) (next >>> SEGMENT_BITS)];
+				int offset = (int) (next & ((1L << SEGMENT_BITS)-1));
+				bufferLen = Math.min(buffer.length, segment.limit()-offset);
+				// a view of its own, so that the chunks can share the mapping
+				java.nio.ByteBuffer view = segment.duplicate();
+				view.position(offset);
+				view.get(buffer, 0, bufferLen);
+				bufferPos = 0;
+				next += bufferLen;
+			}
+			return buffer[bufferPos++] & 0xFF;
+		}
+
+		// file position of the byte read() returns next
+		private long position()
+		{
+			return next-(bufferLen-bufferPos);
+		}
+
+		private static boolean isSpace(int b)
+		{
+			return b == ' ' || b == '\t' || b == '\r';
+		}
+
+		void parse()
+		{
+			next = from;
+			int b;
+			if( from > 0 )
+			{
+				next = from-1;
+				// unless the chunk starts a line, its first line belongs to the previous chunk
+				while( (b = read()) != '\n' && b != -1 )
+				{
+				}
+			}
+
+			while( position() < to )
+			{
+				do
+				{
+					b = read();
+				}
+				while( isSpace(b) );
+				if( b == '\n' || b == -1 )
+				{
+					continue; // blank line
+				}
+				if( b == '#' )
+				{
+					while( (b = read()) != '\n' && b != -1 )
+					{
+					}
+					continue;
+				}
+
+				// the id, kept as an int if it is written the way Integer.toString writes it
+				long idStart = position()-1;
+				boolean negative = (b == '-');
+				long value = 0;
+				int digits = 0;
+				boolean plain = true;
+				if( negative )
+				{
+					b = read();
+				}
+				while( b != '\n' && b != -1 && !isSpace(b) )
+				{
+					plain &= (b >= '0' && b <= '9') && !(digits == 1 && value == 0);
+					value = value*10+(b-'0');
+					digits++;
+					b = read();
+				}
+				long idEnd = position()-(b == -1 ? 0 : 1);
+				plain &= digits > 0 && digits <= 10 && !(negative && value == 0);
+				value = negative ? -value : value;
+				plain &= value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE;
+
+				while( isSpace(b) )
+				{
+					b = read();
+				}
+
+				// the path, one bit per step in the order of the file
+				if( lines == key.length )
+				{
+					key = java.util.Arrays.copyOf(key, lines*2);
+					depth = java.util.Arrays.copyOf(depth, lines*2);
+					pathStart = java.util.Arrays.copyOf(pathStart, lines*2);
+				}
+				pathStart[lines] = used;
+				int d = 0;
+				while( b != '\n' && b != -1 && !isSpace(b) )
+				{
+					if( (used >>> 6) == bits.length )
+					{
+						bits = java.util.Arrays.copyOf(bits, bits.length*2);
+					}
+					if( b != '0' )
+					{
+						bits[(int) (used >>> 6)] |= 1L << (used & 63);
+					}
+					used++;
+					d++;
+					b = read();
+				}
+				while( b != '\n' && b != -1 )
+				{
+					b = read();
+				}
+
+				if( plain )
+				{
+					key[lines] = (int) value;
+				}
+				else
+				{
+					otherIds.put(lines, idString(idStart, idEnd));
+				}
+				depth[lines] = d;
+				lines++;
+			}
+		}
+
+		private String idString(long start, long end)
+		{
+			byte[] bytes = new byte[(int) (end-start)];
+			for( int k = 0; k < bytes.length; k++ )
+			{
+				long pos = start+k;
+				bytes[k] = segments[(int) (pos >>> SEGMENT_BITS)].get((int) (pos & ((1L << SEGMENT_BITS)-1)));
+			}
+			return new String(bytes, java.nio.charset.StandardCharsets.UTF_8);
+		}
+
+		void copyTo(TreeInfoFile info, int line, int word)
+		{
+			System.arraycopy(key, 0, info.key, line, lines);
+			System.arraycopy(depth, 0, info.depth, line, lines);
+			long base = (long) word << 6;
+			for( int i = 0; i < lines; i++ )
+			{
+				info.pathStart[line+i] = base+pathStart[i];
+			}
+			System.arraycopy(bits, 0, info.bits, word, words());
+		}
+	}
+}
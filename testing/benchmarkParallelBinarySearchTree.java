@@ -0,0 +1,75 @@
+class benchmarkParallelBinarySearchTree
+{
+	public static void main(String[] args) throws Exception
+	{
+		// number of keys, can be given on the command line
+		int n = 4000000;
+		if( args.length > 0 )
+		{
+			n = Integer.parseInt(args[0]);
+		}
+		
+		// build a balanced tree of n keys, and a skinny (zig-zag) one of up to 50000 
+		// keys, which takes O(n^2) to insert
+		int[] keys = new int[n];
+		for( int i = 0; i < n; i++ )
+		{
+			keys[i] = i;
+		}
+		vural_BinarySearchTree tree = new vural_BinarySearchTree();
+		tree.bulkLoad(keys, null);
+		
+		vural_BinarySearchTree skinny = new vural_BinarySearchTree();
+		for( int i = 0; i < Math.min(n, 50000); i++ )
+		{
+			skinny.insertNode(new Node((i % 2 == 0) ? i : n - i));
+		}
+		
+		System.out.println("keys = " + n + ", cores = " + Runtime.getRuntime().availableProcessors());
+		
+		// sequential baselines
+		long sumOfKeys = 0;
+		for( int i = 0; i < n; i++ )
+		{
+			sumOfKeys += i;
+		}
+		long start = System.nanoTime();
+		int height = tree.getHeight(tree.getRoot());
+		System.out.println("getHeight                 height = " + height + "  " + millis(start) + " ms");
+		
+		// parallel versions with a growing number of worker threads
+		for( int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads *= 2 )
+		{
+			java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(threads);
+			
+			// warm up before measuring
+			for( int i = 0; i < 3; i++ )
+			{
+				pool.submit(() -> tree.parallelGetHeight(tree.getRoot())).get();
+			}
+			
+			start = System.nanoTime();
+			int h = pool.submit(() -> tree.parallelGetHeight(tree.getRoot())).get();
+			String heightTime = millis(start);
+			
+			start = System.nanoTime();
+			long sum = pool.submit(() -> tree.parallelFold(tree.getRoot(), 0L, (s, x) -> s + x.getKey(), Long::sum)).get();
+			String foldTime = millis(start);
+			
+			start = System.nanoTime();
+			int hs = pool.submit(() -> skinny.parallelGetHeight(skinny.getRoot())).get();
+			String skinnyTime = millis(start);
+			
+			System.out.println("threads = " + threads
+					+ "  parallelGetHeight " + heightTime + " ms" + (h == height ? "" : " WRONG")
+					+ "  parallelFold(sum) " + foldTime + " ms" + (sum == sumOfKeys ? "" : " WRONG")
+					+ "  skinny height " + hs + " " + skinnyTime + " ms");
+			pool.shutdown();
+		}
+	}
+	
+	private static String millis(long start)
+	{
+		return String.format("%.1f", (System.nanoTime() - start) / 1e6);
+	}
+}
@@ -0,0 +1,92 @@
+class benchmarkShardedBinarySearchTree
+{
+	public static void main(String[] args) throws Exception
+	{
+		// number of distinct keys and seconds per run, can be given on the command line
+		int n = 1000000;
+		int seconds = 2;
+		if( args.length > 0 )
+		{
+			n = Integer.parseInt(args[0]);
+		}
+		if( args.length > 1 )
+		{
+			seconds = Integer.parseInt(args[1]);
+		}
+
+		System.out.println("keys = " + n + ", cores = " + Runtime.getRuntime().availableProcessors()
+				+ ", 50% insertNode / 50% deleteNode over the whole int range");
+
+		for( int threads = 1; threads <= 64; threads *= 2 )
+		{
+			RedBlackBinarySearchTree single = new RedBlackBinarySearchTree();
+			ShardedBinarySearchTree sharded = new ShardedBinarySearchTree();
+			int keys = n;
+
+			double locked = run(threads, seconds, key -> {
+				synchronized( single )
+				{
+					Node x = single.getNode(single.getRoot(), key);
+					if( x == null )
+					{
+						single.insertNode(new Node(key));
+					}
+					else
+					{
+						single.deleteNode(x);
+					}
+				}
+			}, keys);
+
+			double split = run(threads, seconds, key -> {
+				if( !sharded.deleteNode(key) )
+				{
+					sharded.insertNode(new Node(key));
+				}
+			}, keys);
+
+			System.out.println(String.format("threads = %2d  synchronized %,12.0f ops/s  sharded %,12.0f ops/s  (x%.2f, %d shards)",
+					threads, locked, split, split / locked, sharded.getShardCount()));
+		}
+	}
+
+	private static double run(int threads, int seconds, java.util.function.IntConsumer write, int keys) throws Exception
+	{
+		java.util.concurrent.atomic.LongAdder done = new java.util.concurrent.atomic.LongAdder();
+		java.util.concurrent.atomic.AtomicBoolean measuring = new java.util.concurrent.atomic.AtomicBoolean(false);
+		java.util.concurrent.atomic.AtomicBoolean stop = new java.util.concurrent.atomic.AtomicBoolean(false);
+		Thread[] workers = new Thread[threads];
+
+		// spread the keys over the whole int range, so that every shard gets some
+		int stride = (int) ((1L << 32) / keys);
+		for( int t = 0; t < threads; t++ )
+		{
+			workers[t] = new Thread(() -> {
+				java.util.concurrent.ThreadLocalRandom random = java.util.concurrent.ThreadLocalRandom.current();
+				long count = 0;
+				while( !stop.get() )
+				{
+					write.accept(Integer.MIN_VALUE + random.nextInt(keys) * stride);
+					if( measuring.get() )
+					{
+						count++;
+					}
+				}
+				done.add(count);
+			});
+			workers[t].start();
+		}
+
+		Thread.sleep(500); // warm up
+		measuring.set(true);
+		long start = System.nanoTime();
+		Thread.sleep(seconds * 1000L);
+		stop.set(true);
+		long elapsed = System.nanoTime() - start;
+		for( Thread w : workers )
+		{
+			w.join();
+		}
+		return done.sum() / (elapsed / 1e9);
+	}
+}
@@ -0,0 +1,140 @@
+class benchmarkStampedBinarySearchTree
+{
+	public static void main(String[] args) throws Exception
+	{
+		// number of keys and seconds per run, can be given on the command line
+		int n = 1000000;
+		int seconds = 2;
+		if( args.length > 0 )
+		{
+			n = Integer.parseInt(args[0]);
+		}
+		if( args.length > 1 )
+		{
+			seconds = Integer.parseInt(args[1]);
+		}
+
+		// keys 0, 2, 4, ... go in, odd keys are the ones the writers add and remove
+		int[] keys = new int[n];
+		for( int i = 0; i < n; i++ )
+		{
+			keys[i] = 2 * i;
+		}
+
+		System.out.println("keys = " + n + ", cores = " + Runtime.getRuntime().availableProcessors()
+				+ ", 95% getNode / 5% insertNode+deleteNode");
+
+		for( int threads = 1; threads <= 64; threads *= 2 )
+		{
+			RedBlackBinarySearchTree plain = new RedBlackBinarySearchTree();
+			plain.bulkLoad(keys, null);
+			RedBlackBinarySearchTree guarded = new RedBlackBinarySearchTree();
+			guarded.bulkLoad(keys, null);
+			StampedBinarySearchTree stamped = new StampedBinarySearchTree(guarded);
+
+			// baseline: every operation synchronized on the tree
+			double locked = run(threads, seconds, n, new Operations()
+			{
+				public boolean get(int key)
+				{
+					synchronized( plain )
+					{
+						return plain.getNode(plain.getRoot(), key) != null;
+					}
+				}
+
+				public void write(int key)
+				{
+					synchronized( plain )
+					{
+						Node x = plain.getNode(plain.getRoot(), key);
+						if( x == null )
+						{
+							plain.insertNode(new Node(key));
+						}
+						else
+						{
+							plain.deleteNode(x);
+						}
+					}
+				}
+			});
+
+			double optimistic = run(threads, seconds, n, new Operations()
+			{
+				public boolean get(int key)
+				{
+					return stamped.getNode(key) != null;
+				}
+
+				public void write(int key)
+				{
+					if( !stamped.deleteKey(key) )
+					{
+						stamped.insertNode(new Node(key));
+					}
+				}
+			});
+
+			System.out.println(String.format("threads = %2d  synchronized %,12.0f ops/s  stamped %,12.0f ops/s  (x%.2f)",
+					threads, locked, optimistic, optimistic / locked));
+		}
+	}
+
+	private static volatile boolean sink;
+
+	private interface Operations
+	{
+		public boolean get(int key);
+
+		public void write(int key);
+	}
+
+	private static double run(int threads, int seconds, int n, Operations ops) throws Exception
+	{
+		java.util.concurrent.atomic.LongAdder done = new java.util.concurrent.atomic.LongAdder();
+		java.util.concurrent.atomic.AtomicBoolean measuring = new java.util.concurrent.atomic.AtomicBoolean(false);
+		java.util.concurrent.atomic.AtomicBoolean stop = new java.util.concurrent.atomic.AtomicBoolean(false);
+		Thread[] workers = new Thread[threads];
+
+		for( int t = 0; t < threads; t++ )
+		{
+			workers[t] = new Thread(() -> {
+				java.util.concurrent.ThreadLocalRandom random = java.util.concurrent.ThreadLocalRandom.current();
+				long count = 0;
+				boolean found = false;
+				while( !stop.get() )
+				{
+					int key = random.nextInt(2 * n);
+					if( random.nextInt(100) < 5 )
+					{
+						ops.write(key | 1);
+					}
+					else
+					{
+						found ^= ops.get(key);
+					}
+					if( measuring.get() )
+					{
+						count++;
+					}
+				}
+				done.add(count);
+				sink = found; // keeps the lookups from being optimized away
+			});
+			workers[t].start();
+		}
+
+		Thread.sleep(500); // warm up
+		measuring.set(true);
+		long start = System.nanoTime();
+		Thread.sleep(seconds * 1000L);
+		stop.set(true);
+		long elapsed = System.nanoTime() - start;
+		for( Thread w : workers )
+		{
+			w.join();
+		}
+		return done.sum() / (elapsed / 1e9);
+	}
+}
@@ -0,0 +1,144 @@
+/**
+ * Draws a tree live while it changes.
+ *
+ * liveBinarySearchTree [bst|rb|avl] [ops per second]
+ *     runs random inserts and deletes on a tree and draws it
+ * liveBinarySearchTree write "event file" [bst|rb|avl] [ops per second]
+ *     runs the same changes without a window, appending them to an event file
+ * liveBinarySearchTree follow "event file" [bst|rb|avl]
+ *     draws the tree built by an event file (or a treeInfo file, with bst) and
+ *     follows the file as it grows
+ */
+class liveBinarySearchTree
+{
+	private static int defaultWidth = 600;
+	private static int defaultHeight = 600;
+	private static int defaultRate = 100000;
+	private static int keyRange = 200000; // about half of them are in the tree at any time
+
+	public static void main(String[] args) throws Exception
+	{
+		String mode = (args.length > 0 && (args[0].equals("write") || args[0].equals("follow"))) ? args[0] : "run";
+		int next = mode.equals("run") ? 0 : 1;
+		if( next == 1 && args.length < 2 )
+		{
+			System.out.println("format: liveBinarySearchTree [write|follow \"event file\"] [bst|rb|avl] [ops per second]");
+			System.exit(0);
+		}
+		String filename = (next == 1) ? args[next++] : null;
+		String kind = (args.length > next) ? args[next++] : "rb";
+		int rate = (args.length > next) ? Integer.parseInt(args[next]) : defaultRate;
+
+		if( mode.equals("follow") )
+		{
+			show(new DrawingArea(filename, newTree(kind)));
+			return;
+		}
+
+		vural_BinarySearchTree tree = newTree(kind);
+		if( mode.equals("write") )
+		{
+			java.io.Writer out = java.nio.file.Files.newBufferedWriter(java.nio.file.Paths.get(filename));
+			tree.addTreeListener(new TreeListener()
+			{
+				public void nodeInserted(int key)
+				{
+					write(out, "insert " + key + "\n");
+				}
+
+				public void nodeDeleted(int key)
+				{
+					write(out, "delete " + key + "\n");
+				}
+			});
+			change(tree, rate, out);
+			return;
+		}
+
+		// the view copies the tree, so it is made before the changes start
+		show(new DrawingArea(tree));
+		change(tree, rate, null);
+	}
+
+	private static vural_BinarySearchTree newTree(String kind)
+	{
+		if( kind.equals("bst") )
+		{
+			return new vural_BinarySearchTree();
+		}
+		if( kind.equals("avl") )
+		{
+			return new AVLBinarySearchTree();
+		}
+		return new RedBlackBinarySearchTree();
+	}
+
+	/**
+	 * Inserts and deletes random keys forever, about rate of them a second,
+	 * flushing the event file (if there is one) after every thousand.
+	 */
+	private static void change(vural_BinarySearchTree tree, int rate, java.io.Writer out) throws java.io.IOException, InterruptedException
+	{
+		java.util.Random random = new java.util.Random();
+		long start = System.nanoTime();
+		for( long ops = 0; ; ops++ )
+		{
+			int key = random.nextInt(keyRange);
+			if( random.nextBoolean() )
+			{
+				tree.insertNode(new Node(key));
+			}
+			else
+			{
+				tree.deleteNode(tree.getNode(tree.getRoot(), key));
+			}
+			if( ops%1000 == 999 )
+			{
+				if( out != null )
+				{
+					out.flush();
+				}
+				long ahead = start+(ops+1)*1000000000L/rate-System.nanoTime();
+				if( ahead > 0 )
+				{
+					Thread.sleep(ahead/1000000);
+				}
+			}
+		}
+	}
+
+	private static void write(java.io.Writer out, String line)
+	{
+		try
+		{
+			out.write(line);
+		}
+		catch( java.io.IOException e )
+		{
+			throw new java.io.UncheckedIOException(e);
+		}
+	}
+
+	private static void show(DrawingArea da)
+	{
+		javax.swing.SwingUtilities.invokeLater(() ->
+		{
+			javax.swing.JFrame f = new javax.swing.JFrame();
+			javax.swing.JPanel daPanel = new javax.swing.JPanel();
+			daPanel.setLayout(new java.awt.BorderLayout());
+			daPanel.add(da, java.awt.BorderLayout.CENTER);
+			f.addKeyListener(da);
+
+			javax.swing.JPanel mainPanel = new javax.swing.JPanel();
+			mainPanel.setLayout(new java.awt.BorderLayout());
+			mainPanel.add(new javax.swing.JScrollPane(daPanel), java.awt.BorderLayout.CENTER);
+
+			f.setPreferredSize(new java.awt.Dimension(defaultWidth, defaultHeight));
+			f.setMinimumSize(new java.awt.Dimension(defaultWidth, defaultHeight));
+			f.setDefaultCloseOperation(javax.swing.JFrame.EXIT_ON_CLOSE);
+			f.setContentPane(mainPanel);
+			f.validate();
+			f.setVisible(true);
+		});
+	}
+}
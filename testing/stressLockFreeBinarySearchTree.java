@@ -0,0 +1,152 @@
+class stressLockFreeBinarySearchTree
+{
+	public static void main(String[] args) throws Exception
+	{
+		// threads, keys and operations per thread can be given on the command line
+		int threads = Math.max(4, 2*Runtime.getRuntime().availableProcessors());
+		int keyRange = 64;
+		int opsPerThread = 200000;
+		if( args.length > 0 )
+		{
+			threads = Integer.parseInt(args[0]);
+		}
+		if( args.length > 1 )
+		{
+			keyRange = Integer.parseInt(args[1]);
+		}
+		if( args.length > 2 )
+		{
+			opsPerThread = Integer.parseInt(args[2]);
+		}
+		
+		boolean ok = true;
+		for( int round = 0; round < 10; round++ )
+		{
+			ok &= runRound(threads, keyRange, opsPerThread, round);
+		}
+		System.out.println(ok ? "PASSED" : "FAILED");
+		if( !ok )
+		{
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Every thread hammers a small key range with random inserts, deletes and
+	 * lookups, and counts its own successful inserts and deletes per key.
+	 * 
+	 * In any linearizable set, the successful inserts and deletes of one key have
+	 * to alternate, starting with an insert. So once all threads are done, for
+	 * every key the inserts minus the deletes must be 1 if the key is present and
+	 * 0 if it is not. Meanwhile a reader thread checks that successor walks only
+	 * ever see ascending keys.
+	 */
+	private static boolean runRound(int threads, int keyRange, int opsPerThread, int round) throws Exception
+	{
+		LockFreeBinarySearchTree tree = new LockFreeBinarySearchTree();
+		long[][] inserted = new long[threads][keyRange];
+		long[][] deleted = new long[threads][keyRange];
+		java.util.concurrent.atomic.AtomicBoolean done = new java.util.concurrent.atomic.AtomicBoolean(false);
+		java.util.concurrent.atomic.AtomicBoolean orderBroken = new java.util.concurrent.atomic.AtomicBoolean(false);
+		java.util.concurrent.CountDownLatch start = new java.util.concurrent.CountDownLatch(1);
+		
+		Thread[] workers = new Thread[threads];
+		for( int t = 0; t < threads; t++ )
+		{
+			final int id = t;
+			workers[t] = new Thread(() -> {
+				java.util.Random random = new java.util.Random(round * 1000 + id);
+				try
+				{
+					start.await();
+				}
+				catch( InterruptedException e )
+				{
+					return;
+				}
+				for( int i = 0; i < opsPerThread; i++ )
+				{
+					int key = random.nextInt(keyRange);
+					int op = random.nextInt(3);
+					if( op == 0 && tree.insertNode(new Node(key)) )
+					{
+						inserted[id][key]++;
+					}
+					else if( op == 1 && tree.deleteNode(key) )
+					{
+						deleted[id][key]++;
+					}
+					else
+					{
+						tree.contains(key);
+					}
+				}
+			});
+			workers[t].start();
+		}
+		
+		Thread reader = new Thread(() -> {
+			while( !done.get() )
+			{
+				Node x = tree.getMin();
+				while( x != null )
+				{
+					Node next = tree.getSuccessor(x.getKey());
+					if( next != null && next.getKey() <= x.getKey() )
+					{
+						orderBroken.set(true);
+					}
+					x = next;
+				}
+			}
+		});
+		reader.start();
+		
+		long begin = System.nanoTime();
+		start.countDown();
+		for( Thread w : workers )
+		{
+			w.join();
+		}
+		done.set(true);
+		reader.join();
+		long millis = (System.nanoTime() - begin) / 1000000;
+		
+		boolean ok = !orderBroken.get();
+		int present = 0;
+		for( int key = 0; key < keyRange; key++ )
+		{
+			long balance = 0;
+			for( int t = 0; t < threads; t++ )
+			{
+				balance += inserted[t][key] - deleted[t][key];
+			}
+			boolean contains = tree.contains(key);
+			if( balance != (contains ? 1 : 0) )
+			{
+				System.out.println("key " + key + ": inserts - deletes = " + balance + ", contains = " + contains);
+				ok = false;
+			}
+			if( contains )
+			{
+				present++;
+			}
+		}
+		
+		// the final tree must walk in order and hold exactly the present keys
+		int walked = 0;
+		for( Node x = tree.getMin(); x != null; x = tree.getSuccessor(x.getKey()) )
+		{
+			walked++;
+		}
+		if( walked != present )
+		{
+			System.out.println("successor walk saw " + walked + " keys, expected " + present);
+			ok = false;
+		}
+		
+		System.out.println("round " + round + ": " + threads + " threads, " + (long) threads * opsPerThread
+				+ " ops in " + millis + " ms" + (ok ? "" : " FAILED"));
+		return ok;
+	}
+}
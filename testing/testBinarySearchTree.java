@@ -14,14 +14,7 @@ class testBinarySearchTree
 		}
 		
 		// print out the information required to draw the tree
-		java.util.ArrayList<String> treeInfo = new java.util.ArrayList<>();
-		tree.preOrderWalk(tree.getRoot(), "", treeInfo);
-		System.out.println("#start of treeInfo");
-		for( String node : treeInfo )
-		{
-			System.out.println(node);
-		}
-		System.out.println("#end of treeInfo");
+		printTreeInfo(tree);
 		
 		// try out some functions
 		System.out.println("tree.getRoot() = " + tree.getRoot());
@@ -41,15 +34,23 @@ class testBinarySearchTree
 			// delete the node
 			tree.deleteNode(nodeToDelete);
 			
-			// get the information to draw the updated tree
-			treeInfo = new java.util.ArrayList<>();
-			tree.preOrderWalk(tree.getRoot(), "", treeInfo);
-			System.out.println("#start of treeInfo");
-			for( String node : treeInfo )
-			{
-				System.out.println(node);
-			}
-			System.out.println("#end of treeInfo");
+			// print out the information to draw the updated tree
+			printTreeInfo(tree);
+		}
+	}
+	
+	// streams the treeInfo lines straight to System.out, without collecting them first
+	private static void printTreeInfo(vural_BinarySearchTree tree)
+	{
+		System.out.println("#start of treeInfo");
+		try
+		{
+			tree.writeTreeInfo(tree.getRoot(), System.out);
 		}
+		catch( java.io.IOException e )
+		{
+			System.out.println(e.toString());
+		}
+		System.out.println("#end of treeInfo");
 	}
 }